@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 
 public class Subtask extends Task {
+    private static final int EPIC_FIELD_INDEX = FileBackedTaskManager.getCsvFieldPosition("epic");
     private Epic epic;
 
     public Subtask(String name, String description) {
@@ -68,9 +69,8 @@ public class Subtask extends Task {
     @Override
     String[] getFieldsForSerialization() {
         String[] fields = super.getFieldsForSerialization();
-        int epicFieldIndex = FileBackedTaskManager.getCsvFieldPosition("epic");
-        if (epicFieldIndex != -1) {
-            fields[epicFieldIndex] = getEpic() != null ? String.valueOf(getEpic().getId()) : "";
+        if (EPIC_FIELD_INDEX != -1) {
+            fields[EPIC_FIELD_INDEX] = getEpic() != null ? String.valueOf(getEpic().getId()) : "";
         }
         return fields;
     }
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the save action given to markDirty on a single background thread, collapsing all changes marked
+ * while a save is queued into one save of the latest state. The action is given with every change,
+ * so the owner does not pass itself to the saver in its constructor.
+ * Every future returned by markDirty and flushAsync completes once the state at the moment of the call is saved.
+ */
+class BackgroundSaver implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private Runnable saveAction;
+    private boolean scheduled;
+    private CompletableFuture<Void> queued = new CompletableFuture<>();
+    private CompletableFuture<Void> running;
+    private ManagerSaveException lastError;
+
+    BackgroundSaver(String name) {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "background-saver-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    synchronized CompletableFuture<Void> markDirty(Runnable saveAction) {
+        this.saveAction = saveAction;
+        if (executor.isShutdown()) {
+            // Changes after close are saved on the caller's thread
+            saveAction.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!scheduled) {
+            scheduled = true;
+            executor.execute(this::saveLatest);
+        }
+        return queued;
+    }
+
+    synchronized CompletableFuture<Void> flushAsync() {
+        if (scheduled) {
+            return queued;
+        }
+        if (running != null) {
+            return running;
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void saveLatest() {
+        CompletableFuture<Void> saving;
+        Runnable action;
+        synchronized (this) {
+            action = saveAction;
+            scheduled = false;
+            saving = queued;
+            queued = new CompletableFuture<>();
+            running = saving;
+        }
+        try {
+            action.run();
+            saving.complete(null);
+        } catch (ManagerSaveException e) {
+            synchronized (this) {
+                lastError = e;
+            }
+            saving.completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                if (running == saving) {
+                    running = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the queued save and stops the background thread.
+     * The error of the last failed save, if any, is rethrown.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ManagerSaveException error;
+        synchronized (this) {
+            error = lastError;
+            lastError = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot format: magic 'TKSB', varint format version, task records and the end marker (zero byte).
+ * Task record:
+ * <ul>
+ * <li>type code byte (TASK=1, SUBTASK=2, EPIC=3)</li>
+ * <li>varint ID</li>
+ * <li>status code byte (NEW=0, IN_PROGRESS=1, DONE=2)</li>
+ * <li>name and description - varint (length + 1) and UTF-8 bytes, 0 for null</li>
+ * <li>varint Epic ID, Subtasks only</li>
+ * <li>start time - presence byte (0 for null, 1 otherwise), zig-zag varint epoch second in UTC
+ * and varint nanosecond of the second</li>
+ * <li>varint duration in minutes</li>
+ * </ul>
+ * Version 1 files stored the start time as one varint (epoch second in UTC + 1, 0 for null), they are still read.
+ * Epic start time and duration are not loaded, as in CSV.
+ */
+class BinarySnapshotCodec {
+
+    private static final byte[] MAGIC = {'T', 'K', 'S', 'B'};
+    private static final int VERSION = 2;
+    private static final int SECONDS_START_TIME_VERSION = 1;
+    private static final int END_MARKER = 0;
+
+    private BinarySnapshotCodec() {
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        writeVarLong(out, VERSION);
+    }
+
+    static void writeEnd(DataOutputStream out) throws IOException {
+        out.writeByte(END_MARKER);
+    }
+
+    static void writeTask(DataOutputStream out, Task task) throws IOException {
+        out.writeByte(typeCode(task.getType()));
+        writeVarLong(out, task.getId());
+        out.writeByte(statusCode(task.getStatus()));
+        writeString(out, task.getName());
+        writeString(out, task.getDescription());
+        if (task instanceof Subtask subtask) {
+            writeVarLong(out, subtask.getEpic() != null ? subtask.getEpic().getId() : 0);
+        }
+        LocalDateTime startTime = task.getStartTime();
+        out.writeByte(startTime != null ? 1 : 0);
+        if (startTime != null) {
+            writeVarLong(out, zigZag(startTime.toEpochSecond(ZoneOffset.UTC)));
+            writeVarLong(out, startTime.getNano());
+        }
+        Duration duration = task.getDuration();
+        writeVarLong(out, duration != null ? duration.toMinutes() : 0);
+    }
+
+    /**
+     * Checks the magic and returns the format version of the file
+     */
+    static int readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Invalid binary snapshot header.");
+        }
+        long version = readVarLong(in);
+        if (version != VERSION && version != SECONDS_START_TIME_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary snapshot version: " + version);
+        }
+        return (int) version;
+    }
+
+    /**
+     * Next task or null at the end marker. Subtasks get a placeholder Epic holding only the Epic ID.
+     * Missing end marker means the file is truncated and causes EOFException.
+     */
+    static Task readTask(DataInputStream in) throws IOException {
+        return readTask(in, VERSION);
+    }
+
+    /**
+     * Next task of a file of the format version, see readHeader()
+     */
+    static Task readTask(DataInputStream in, int version) throws IOException {
+        int typeCode = in.readUnsignedByte();
+        if (typeCode == END_MARKER) {
+            return null;
+        }
+        Type type = parseType(typeCode);
+        int id = (int) readVarLong(in);
+        Status status = parseStatus(in.readUnsignedByte());
+        String name = readString(in);
+        String description = readString(in);
+        int epicId = type == Type.SUBTASK ? (int) readVarLong(in) : 0;
+        LocalDateTime startTime = version == SECONDS_START_TIME_VERSION ? readSecondsStartTime(in) : readStartTime(in);
+        Duration duration = Duration.ofMinutes(readVarLong(in));
+        return switch (type) {
+            case TASK -> Task.createForDeserialization(id, name, description, status, startTime, duration);
+            case SUBTASK -> Subtask.createForDeserialization(id, name, description, status,
+                    epicId > 0 ? Epic.createForDeserialization(epicId, null, null, Status.NEW) : null,
+                    startTime, duration);
+            case EPIC -> Epic.createForDeserialization(id, name, description, status);
+        };
+    }
+
+    private static LocalDateTime readStartTime(DataInputStream in) throws IOException {
+        int presence = in.readUnsignedByte();
+        if (presence == 0) {
+            return null;
+        }
+        if (presence != 1) {
+            throw new IOException("Invalid start time presence flag in binary snapshot: " + presence);
+        }
+        long epochSecond = unZigZag(readVarLong(in));
+        long nanos = readVarLong(in);
+        if (nanos >= 1_000_000_000L) {
+            throw new IOException("Invalid start time nanoseconds in binary snapshot: " + nanos);
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, (int) nanos, ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime readSecondsStartTime(DataInputStream in) throws IOException {
+        long startTimeCode = readVarLong(in);
+        return startTimeCode != 0 ? LocalDateTime.ofEpochSecond(startTimeCode - 1, 0, ZoneOffset.UTC) : null;
+    }
+
+    static int typeCode(Type type) {
+        return switch (type) {
+            case TASK -> 1;
+            case SUBTASK -> 2;
+            case EPIC -> 3;
+        };
+    }
+
+    static Type parseType(int typeCode) throws IOException {
+        return switch (typeCode) {
+            case 1 -> Type.TASK;
+            case 2 -> Type.SUBTASK;
+            case 3 -> Type.EPIC;
+            default -> throw new IOException("Unknown task type code in binary snapshot: " + typeCode);
+        };
+    }
+
+    static int statusCode(Status status) {
+        return switch (status) {
+            case NEW -> 0;
+            case IN_PROGRESS -> 1;
+            case DONE -> 2;
+        };
+    }
+
+    static Status parseStatus(int statusCode) throws IOException {
+        return switch (statusCode) {
+            case 0 -> Status.NEW;
+            case 1 -> Status.IN_PROGRESS;
+            case 2 -> Status.DONE;
+            default -> throw new IOException("Unknown task status code in binary snapshot: " + statusCode);
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > Integer.MAX_VALUE) {
+            throw new IOException("Invalid string length in binary snapshot: " + (length - 1));
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps signed values to unsigned ones with small absolute values staying small: 0, -1, 1, -2 to 0, 1, 2, 3
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Unsigned LEB128: 7 bits per byte, high bit set on all bytes but the last
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Malformed varint in binary snapshot");
+    }
+}
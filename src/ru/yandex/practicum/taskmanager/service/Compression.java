@@ -0,0 +1,70 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of FileBackedTaskManager snapshot and journal files
+ * <ul>
+ * <li>NONE - files are written as is</li>
+ * <li>GZIP - snapshots are written as one GZIP stream, every journal write as a separate GZIP member</li>
+ * </ul>
+ * Files are recognized by the GZIP magic number at their start on load. Snapshots are rewritten whole, so those
+ * written with another setting are still loaded. The journal is appended to, so on the first write after
+ * the setting is changed it is rewritten in the new format rather than mixing both in one file.
+ */
+public enum Compression {
+    NONE,
+    GZIP;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+    /**
+     * Compressing stream over out, finish() must be called once all data is written
+     */
+    OutputStream compress(OutputStream out) throws IOException {
+        return this == GZIP ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    /**
+     * Writes the compressed stream end without closing the underlying stream
+     */
+    static void finish(OutputStream out) throws IOException {
+        if (out instanceof DeflaterOutputStream deflaterOut) {
+            deflaterOut.finish();
+        } else {
+            out.flush();
+        }
+    }
+
+    /**
+     * Buffered stream over in, decompressed if it starts with the GZIP magic number.
+     * Concatenated GZIP members are read as one stream.
+     */
+    static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        return isGzip(buffered) ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+
+    static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 2)) {
+            return isGzip(in);
+        }
+    }
+
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        boolean gzip = in.read() == GZIP_MAGIC_FIRST && in.read() == GZIP_MAGIC_SECOND;
+        in.reset();
+        return gzip;
+    }
+}
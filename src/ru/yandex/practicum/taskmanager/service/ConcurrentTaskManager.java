@@ -0,0 +1,482 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.Serial;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe in-memory task manager without a global lock:
+ * <ul>
+ * <li>tasks are kept in ConcurrentHashMaps, stored instances are never changed after they are published,
+ * every mutation puts a new copy, so readers need no locks</li>
+ * <li>IDs are allocated in blocks per thread, see IdAllocator</li>
+ * <li>the time index is a ConcurrentSkipListMap by start time, only the intersection check and the index change
+ * of a task with start time are made under a short index lock, so they stay atomic</li>
+ * <li>Epic mutations and mutations of its Subtasks are made under a lock of the Epic, taken from a fixed array
+ * of lock stripes by Epic ID, so mutations of one Epic are serialized and mutations of Epics on different
+ * stripes run in parallel. Only the time index is shared between Epics.</li>
+ * </ul>
+ * Lock order is Epic stripe, then the time index lock, then history, so mutations cannot deadlock.
+ * History is shared by all readers and changed under its own lock. Deletions remove a task from its map before
+ * history and reads add a task to history only if it is still in its map, so a deleted task never stays in history.
+ * Bulk deletions remove tasks one by one, tasks added meanwhile may stay.
+ */
+public class ConcurrentTaskManager implements TaskManager {
+
+    private static final int DEFAULT_EPIC_LOCK_STRIPES = 64;
+
+    private final ConcurrentMap<Integer, Task> tasks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Subtask> subtasks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Epic> epics = new ConcurrentHashMap<>();
+    private final IdAllocator idAllocator = new IdAllocator(1, IdAllocator.DEFAULT_BLOCK_SIZE);
+    private final ConcurrentNavigableMap<LocalDateTime, Task> tasksByTime = new ConcurrentSkipListMap<>();
+    private final ReentrantLock timeIndexLock = new ReentrantLock();
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    private final Lock[] epicLocks;
+
+    /**
+     * Carries a checked exception out of ConcurrentHashMap.compute()
+     */
+    private static final class TaskRejectedException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private TaskRejectedException(InvalidManagerTaskException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InvalidManagerTaskException getCause() {
+            return (InvalidManagerTaskException) super.getCause();
+        }
+    }
+
+    public ConcurrentTaskManager() {
+        this(DEFAULT_EPIC_LOCK_STRIPES);
+    }
+
+    /**
+     * @param epicLockStripes number of Epic locks, Epics with the same ID modulo it share a lock
+     */
+    public ConcurrentTaskManager(int epicLockStripes) {
+        if (epicLockStripes <= 0) {
+            throw new IllegalArgumentException("Number of Epic lock stripes should be positive: " + epicLockStripes);
+        }
+        epicLocks = new Lock[epicLockStripes];
+        for (int i = 0; i < epicLockStripes; i++) {
+            epicLocks[i] = new ReentrantLock();
+        }
+    }
+
+    private int generateNextId() {
+        return idAllocator.nextId();
+    }
+
+    private void addToHistory(Task task, Map<Integer, ? extends Task> storage) {
+        synchronized (historyManager) {
+            if (storage.containsKey(task.getId())) {
+                historyManager.add(task);
+            }
+        }
+    }
+
+    private void removeFromHistory(int id) {
+        synchronized (historyManager) {
+            historyManager.remove(id);
+        }
+    }
+
+    @Override
+    public List<Task> getTasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    @Override
+    public List<Subtask> getSubtasks() {
+        return new ArrayList<>(subtasks.values());
+    }
+
+    @Override
+    public List<Epic> getEpics() {
+        return new ArrayList<>(epics.values());
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        Task task = tasks.get(id);
+        if (task == null) {
+            return Optional.empty();
+        }
+        addToHistory(task, tasks);
+        return Optional.of(task.copy());
+    }
+
+    @Override
+    public Optional<Subtask> getSubtaskById(int id) {
+        Subtask subtask = subtasks.get(id);
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        addToHistory(subtask, subtasks);
+        return Optional.of(subtask.copy());
+    }
+
+    @Override
+    public Optional<Epic> getEpicById(int id) {
+        Epic epic = epics.get(id);
+        if (epic == null) {
+            return Optional.empty();
+        }
+        addToHistory(epic, epics);
+        return Optional.of(epic.copy());
+    }
+
+    @Override
+    public Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        Subtask internalSubtask = subtasks.get(subtask.getId());
+        if (internalSubtask == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(internalSubtask.getEpic());
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        Epic epic = epics.get(epicId);
+        if (epic == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(epic.getSubtasksList());
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        synchronized (historyManager) {
+            return historyManager.getHistory();
+        }
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return new ArrayList<>(tasksByTime.values());
+    }
+
+    @Override
+    public void deleteTasks() {
+        tasks.keySet().forEach(this::deleteTaskById);
+    }
+
+    @Override
+    public void deleteSubtasks() {
+        subtasks.keySet().forEach(this::deleteSubtaskById);
+    }
+
+    @Override
+    public void deleteEpics() {
+        epics.keySet().forEach(this::deleteEpicById);
+        // Subtasks added to an Epic being deleted
+        deleteSubtasks();
+    }
+
+    public void clearAll() {
+        deleteTasks();
+        deleteEpics();
+        synchronized (historyManager) {
+            historyManager.clearHistory();
+        }
+    }
+
+    @Override
+    public int addTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy(generateNextId());
+        internalTask.setStatus(Status.NEW);
+        // A new ID is not visible to other threads until it is returned, so the Task is indexed before it is put
+        replaceInTimeIndex(null, internalTask);
+        tasks.put(internalTask.getId(), internalTask);
+        return internalTask.getId();
+    }
+
+    @Override
+    public int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Subtask internalSubtask = subtask.copy(generateNextId());
+        internalSubtask.setStatus(Status.NEW);
+        computeEpic(epic.getId(), internalEpic -> {
+            if (internalEpic == null) {
+                throw new InvalidManagerTaskException(String.format("Epic with ID=%d does not exists in manager for Subtask addition", epic.getId()));
+            }
+            replaceInTimeIndex(null, internalSubtask);
+            internalSubtask.setEpic(internalEpic.copy());
+            subtasks.put(internalSubtask.getId(), internalSubtask);
+            Epic updatedEpic = internalEpic.copy();
+            updatedEpic.addSubtasksList(internalSubtask.copy());
+            return updateEpicAggregates(updatedEpic);
+        });
+        return internalSubtask.getId();
+    }
+
+    @Override
+    public int addEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic internalEpic = epic.copy(generateNextId());
+        internalEpic.setStatus(Status.NEW);
+        epics.put(internalEpic.getId(), internalEpic);
+        return internalEpic.getId();
+    }
+
+    @Override
+    public void updateTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy();
+        try {
+            tasks.compute(task.getId(), (id, oldTask) -> {
+                if (oldTask == null) {
+                    throw new TaskRejectedException(new InvalidManagerTaskException(
+                            String.format("Task ID=%d does not exists to update.", task.getId())));
+                }
+                replaceInTimeIndexUnchecked(oldTask, internalTask);
+                return internalTask;
+            });
+        } catch (TaskRejectedException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The Subtask stays in the Epic it was added to
+     */
+    @Override
+    public void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        Subtask storedSubtask = subtasks.get(subtask.getId());
+        if (storedSubtask == null) {
+            throw new InvalidManagerTaskException(String.format("Subtask ID=%d does not exists to update.", subtask.getId()));
+        }
+        Subtask internalSubtask = subtask.copy();
+        computeEpic(storedSubtask.getEpic().getId(), internalEpic -> {
+            // Checked again under the Epic, the Subtask may be deleted meanwhile
+            Subtask oldSubtask = subtasks.get(subtask.getId());
+            if (oldSubtask == null || internalEpic == null) {
+                throw new InvalidManagerTaskException(String.format("Subtask ID=%d does not exists to update.", subtask.getId()));
+            }
+            replaceInTimeIndex(oldSubtask, internalSubtask);
+            internalSubtask.setEpic(oldSubtask.getEpic());
+            subtasks.put(internalSubtask.getId(), internalSubtask);
+            Epic updatedEpic = internalEpic.copy();
+            updatedEpic.addSubtasksList(internalSubtask);
+            return updateEpicAggregates(updatedEpic);
+        });
+    }
+
+    /**
+     * Only name and description of the Epic are updated, the rest follows its Subtasks
+     */
+    @Override
+    public void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        computeEpic(epic.getId(), internalEpic -> {
+            if (internalEpic == null) {
+                throw new InvalidManagerTaskException(String.format("Epic ID=%d does not exists to update.", epic.getId()));
+            }
+            Epic updatedEpic = internalEpic.copyWith(epic.getName(), epic.getDescription(), internalEpic.getStatus());
+            internalEpic.getSubtasksList().forEach(updatedEpic::addSubtasksList);
+            return updateEpicAggregates(updatedEpic);
+        });
+    }
+
+    @Override
+    public void deleteTaskById(int id) {
+        Task oldTask = tasks.remove(id);
+        if (oldTask == null) {
+            return;
+        }
+        removeFromTimeIndex(oldTask);
+        removeFromHistory(id);
+    }
+
+    @Override
+    public void deleteSubtaskById(int id) {
+        Subtask storedSubtask = subtasks.get(id);
+        if (storedSubtask == null) {
+            return;
+        }
+        int epicId = storedSubtask.getEpic().getId();
+        Lock epicLock = epicLock(epicId);
+        epicLock.lock();
+        try {
+            Subtask oldSubtask = subtasks.remove(id);
+            if (oldSubtask == null) {
+                return;
+            }
+            removeFromTimeIndex(oldSubtask);
+            removeFromHistory(id);
+            Epic internalEpic = epics.get(epicId);
+            if (internalEpic != null) {
+                Epic updatedEpic = internalEpic.copy();
+                updatedEpic.removeSubtask(oldSubtask);
+                epics.put(epicId, updateEpicAggregates(updatedEpic));
+            }
+        } finally {
+            epicLock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteEpicById(int id) {
+        Lock epicLock = epicLock(id);
+        epicLock.lock();
+        try {
+            Epic oldEpic = epics.remove(id);
+            if (oldEpic == null) {
+                return;
+            }
+            for (Subtask subtask : oldEpic.getSubtasksList()) {
+                Subtask oldSubtask = subtasks.remove(subtask.getId());
+                if (oldSubtask != null) {
+                    removeFromTimeIndex(oldSubtask);
+                    removeFromHistory(oldSubtask.getId());
+                }
+            }
+            removeFromHistory(id);
+        } finally {
+            epicLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface EpicUpdate {
+        Epic apply(Epic internalEpic) throws InvalidManagerTaskException;
+    }
+
+    /**
+     * Lock stripe of the Epic, guards the Epic, its Subtasks and their links
+     */
+    Lock epicLock(int epicId) {
+        return epicLocks[Math.floorMod(epicId, epicLocks.length)];
+    }
+
+    /**
+     * Replaces the Epic with the result of the update under the lock of the Epic, the update may also change
+     * its Subtasks and the time index. A rejected update leaves the Epic unchanged.
+     */
+    private void computeEpic(int epicId, EpicUpdate update) throws InvalidManagerTaskException {
+        Lock epicLock = epicLock(epicId);
+        epicLock.lock();
+        try {
+            epics.put(epicId, update.apply(epics.get(epicId)));
+        } finally {
+            epicLock.unlock();
+        }
+    }
+
+    private Epic updateEpicAggregates(Epic epic) {
+        List<Subtask> epicSubtasks = epic.getSubtasksList();
+        boolean allNew = epicSubtasks.stream().allMatch(subtask -> subtask.getStatus() == Status.NEW);
+        boolean allDone = !allNew && epicSubtasks.stream().allMatch(subtask -> subtask.getStatus() == Status.DONE);
+        epic.setStatus(allNew ? Status.NEW : allDone ? Status.DONE : Status.IN_PROGRESS);
+        epic.setStartTime(epic.calcStartTime());
+        epic.setEndTime(epic.calcEndTime());
+        epic.setDuration(epic.calcDuration());
+        return epic;
+    }
+
+    /**
+     * Checks the new task for time intersection with other indexed tasks and replaces the old task
+     * in the index by it. Under the index lock, so concurrent checks do not miss each other.
+     */
+    private void replaceInTimeIndex(Task oldTask, Task newTask) throws InvalidManagerTaskException {
+        if ((oldTask == null || oldTask.getStartTime() == null) && newTask.getStartTime() == null) {
+            return;
+        }
+        timeIndexLock.lock();
+        try {
+            if (hasTimeIntersectionWithAnyTask(newTask)) {
+                throw new InvalidManagerTaskException(newTask.getType() + " with startTime=" + newTask.getStartTime() + " has intersection with managers tasks");
+            }
+            removeFromTimeIndex(oldTask);
+            if (newTask.getStartTime() != null) {
+                tasksByTime.put(newTask.getStartTime(), newTask);
+            }
+        } finally {
+            timeIndexLock.unlock();
+        }
+    }
+
+    private void replaceInTimeIndexUnchecked(Task oldTask, Task newTask) {
+        try {
+            replaceInTimeIndex(oldTask, newTask);
+        } catch (InvalidManagerTaskException e) {
+            throw new TaskRejectedException(e);
+        }
+    }
+
+    /**
+     * The indexed task is removed only if it is the same task, not another one with the same start time
+     */
+    private void removeFromTimeIndex(Task task) {
+        if (task != null && task.getStartTime() != null) {
+            tasksByTime.remove(task.getStartTime(), task);
+        }
+    }
+
+    /**
+     * The nearest indexed tasks before and after the start time, the task itself is skipped, as it is being replaced
+     */
+    private boolean hasTimeIntersectionWithAnyTask(Task newTask) {
+        LocalDateTime startTime = newTask.getStartTime();
+        if (startTime == null) {
+            return false;
+        }
+        Map.Entry<LocalDateTime, Task> lower = tasksByTime.floorEntry(startTime);
+        if (lower != null && lower.getValue().getId() == newTask.getId()) {
+            lower = tasksByTime.lowerEntry(lower.getKey());
+        }
+        if (lower != null && hasTimeIntersectionTasks(lower.getValue(), newTask)) {
+            return true;
+        }
+        Map.Entry<LocalDateTime, Task> higher = tasksByTime.higherEntry(startTime);
+        if (higher != null && higher.getValue().getId() == newTask.getId()) {
+            higher = tasksByTime.higherEntry(higher.getKey());
+        }
+        return higher != null && hasTimeIntersectionTasks(higher.getValue(), newTask);
+    }
+
+    private boolean hasTimeIntersectionTasks(Task task1, Task task2) {
+        return !task1.getEndTime().isBefore(task2.getStartTime()) && !task2.getEndTime().isBefore(task1.getStartTime());
+    }
+}
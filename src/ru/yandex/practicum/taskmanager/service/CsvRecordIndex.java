@@ -0,0 +1,176 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.IllegalCsvFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the CSV file records: ID, type, Epic ID, start time and duration of every record with its byte range.
+ * Built by a single byte scan which only keeps the unquoted key fields, names and descriptions are skipped,
+ * so a record can be read and deserialized later by its byte range.
+ */
+class CsvRecordIndex {
+
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    private static final int ID_FIELD = 0;
+    private static final int TYPE_FIELD = 1;
+    private static final int EPIC_FIELD = 5;
+    private static final int START_TIME_FIELD = 6;
+    private static final int DURATION_FIELD = 7;
+    private static final int FIELD_COUNT = 8;
+
+    /**
+     * Byte range of the record without the line break, and its key fields
+     */
+    record Entry(int id, Type type, long offset, int length, int epicId, LocalDateTime startTime, Duration duration) {
+    }
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Integer, List<Integer>> subtaskIdsByEpic = new HashMap<>();
+    private final List<Entry> entriesByTime = new ArrayList<>();
+    private int maxId;
+
+    private CsvRecordIndex() {
+    }
+
+    static CsvRecordIndex build(Path file, String expectedHeader) throws IOException {
+        CsvRecordIndex index = new CsvRecordIndex();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index.scan(channel, expectedHeader);
+        }
+        index.entriesByTime.sort(Comparator.comparing(Entry::startTime));
+        return index;
+    }
+
+    Entry get(int id) {
+        return entries.get(id);
+    }
+
+    List<Integer> getSubtaskIds(int epicId) {
+        return subtaskIdsByEpic.getOrDefault(epicId, List.of());
+    }
+
+    /**
+     * Tasks and Subtasks with start time, ordered by start time
+     */
+    List<Entry> getEntriesByTime() {
+        return entriesByTime;
+    }
+
+    int getMaxId() {
+        return maxId;
+    }
+
+    private void scan(FileChannel channel, String expectedHeader) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        StringBuilder[] keyFields = new StringBuilder[FIELD_COUNT];
+        for (int i : new int[]{ID_FIELD, TYPE_FIELD, EPIC_FIELD, START_TIME_FIELD, DURATION_FIELD}) {
+            keyFields[i] = new StringBuilder();
+        }
+        StringBuilder header = new StringBuilder();
+        boolean headerLine = true;
+        boolean quoted = false;
+        int field = 0;
+        long recordStart = 0;
+        long position = 0;
+        long contentEnd = 0;
+
+        byte[] bytes = buffer.array();
+        int count;
+        while ((count = channel.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                byte b = bytes[i];
+                position++;
+                if (b == '"') {
+                    // Doubled quotes inside a quoted field toggle the state twice
+                    quoted = !quoted;
+                    contentEnd = position;
+                } else if (quoted) {
+                    continue;
+                } else if (b == '\n') {
+                    if (headerLine) {
+                        checkHeader(header, expectedHeader);
+                        headerLine = false;
+                    } else {
+                        addEntry(keyFields, field, recordStart, contentEnd);
+                    }
+                    clear(keyFields);
+                    field = 0;
+                    recordStart = position;
+                    contentEnd = position;
+                } else if (headerLine) {
+                    header.append((char) b);
+                } else if (b == ',') {
+                    field++;
+                    contentEnd = position;
+                } else if (b != '\r') {
+                    contentEnd = position;
+                    if (field < FIELD_COUNT && keyFields[field] != null) {
+                        keyFields[field].append((char) b);
+                    }
+                }
+            }
+            buffer.clear();
+        }
+        if (quoted) {
+            throw new IllegalCsvFormatException("Unterminated quoted field at the end of CSV file");
+        }
+        if (headerLine) {
+            checkHeader(header, expectedHeader);
+        } else {
+            addEntry(keyFields, field, recordStart, contentEnd);
+        }
+    }
+
+    private static void checkHeader(StringBuilder header, String expectedHeader) {
+        if (!header.toString().trim().equalsIgnoreCase(expectedHeader)) {
+            throw new IllegalArgumentException("Invalid CSV file header. Expected: " + expectedHeader);
+        }
+    }
+
+    private static void clear(StringBuilder[] keyFields) {
+        for (StringBuilder keyField : keyFields) {
+            if (keyField != null) {
+                keyField.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Blank lines are skipped
+     */
+    private void addEntry(StringBuilder[] keyFields, int lastField, long start, long end) {
+        if (lastField == 0 && keyFields[ID_FIELD].isEmpty()) {
+            return;
+        }
+        if (lastField != FIELD_COUNT - 1) {
+            throw new IllegalCsvFormatException("Invalid CSV format in record at byte " + start);
+        }
+        int id = TaskDeserializer.parseId(keyFields[ID_FIELD].toString());
+        Type type = TaskDeserializer.parseType(keyFields[TYPE_FIELD].toString());
+        int epicId = type == Type.SUBTASK ? TaskDeserializer.parseId(keyFields[EPIC_FIELD].toString()) : 0;
+        LocalDateTime startTime = type != Type.EPIC ? TaskDeserializer.parseDateTime(keyFields[START_TIME_FIELD].toString()) : null;
+        Duration duration = TaskDeserializer.parseDuration(keyFields[DURATION_FIELD].toString());
+        Entry entry = new Entry(id, type, start, (int) (end - start), epicId, startTime, duration);
+        entries.put(id, entry);
+        maxId = Math.max(maxId, id);
+        if (epicId > 0) {
+            subtaskIdsByEpic.computeIfAbsent(epicId, k -> new ArrayList<>()).add(id);
+        }
+        if (startTime != null) {
+            entriesByTime.add(entry);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.service.exception.IllegalCsvFormatException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Single-pass RFC 4180 CSV tokenizer: fields are separated by commas, a field starting with a quote
+ * lasts until the closing quote and may contain commas, doubled quotes and line breaks.
+ * Field array and field buffer are reused between records, so one tokenizer must not be shared between threads.
+ */
+class CsvTokenizer {
+
+    private static final int DEFAULT_FIELD_COUNT = 8;
+
+    private String[] fields = new String[DEFAULT_FIELD_COUNT];
+    private int fieldCount;
+    private final StringBuilder field = new StringBuilder();
+    private boolean quoted;
+    private boolean fieldStart;
+
+    /**
+     * Fields of the last record, only the first getFieldCount() elements belong to it
+     */
+    String[] getFields() {
+        return fields;
+    }
+
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Whether the last record is an empty line
+     */
+    boolean isEmptyRecord() {
+        return fieldCount == 1 && fields[0].isEmpty();
+    }
+
+    /**
+     * Splits the single line into fields
+     */
+    void tokenize(String line) {
+        startRecord();
+        scan(line);
+        if (quoted) {
+            throw new IllegalCsvFormatException("Unterminated quoted field in CSV line: " + line);
+        }
+        endField();
+    }
+
+    /**
+     * Reads the next record, joining lines while a quoted field is open.
+     * Returns false at the end of the input.
+     */
+    boolean next(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+        startRecord();
+        scan(line);
+        while (quoted) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IllegalCsvFormatException("Unterminated quoted field at the end of CSV file");
+            }
+            field.append('\n');
+            scan(line);
+        }
+        endField();
+        return true;
+    }
+
+    private void startRecord() {
+        fieldCount = 0;
+        field.setLength(0);
+        quoted = false;
+        fieldStart = true;
+    }
+
+    private void scan(String line) {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < length && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == ',') {
+                endField();
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else {
+                field.append(c);
+                fieldStart = false;
+            }
+        }
+    }
+
+    private void endField() {
+        if (fieldCount == fields.length) {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+        fields[fieldCount++] = field.isEmpty() ? "" : field.toString();
+        field.setLength(0);
+        fieldStart = true;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.taskmanager.service;
+
+/**
+ * Durability modes of FileBackedTaskManager saves
+ * <ul>
+ * <li>FLUSH - every save is written to the operating system on the caller's thread, without fsync</li>
+ * <li>FSYNC - every save is written and forced to the disk on the caller's thread</li>
+ * <li>GROUP_COMMIT - journal records are buffered and written with one fsync per flush interval</li>
+ * <li>ASYNC - journal records are buffered and written without fsync once per flush interval</li>
+ * </ul>
+ * GROUP_COMMIT and ASYNC may lose records appended within the last flush interval on a crash.
+ * GROUP_COMMIT and ASYNC are supported in JOURNAL storage mode only,
+ * other storage modes and LsmTaskManager support FLUSH and FSYNC only.
+ */
+public enum Durability {
+    FLUSH,
+    FSYNC,
+    GROUP_COMMIT,
+    ASYNC,
+}
@@ -8,37 +8,248 @@ import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskExcep
 import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
 import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
 
-public class FileBackedTaskManager extends InMemoryTaskManager {
+public class FileBackedTaskManager extends InMemoryTaskManager implements AutoCloseable {
 
     /**
      * CSV file header 'id,type,name,status,description,epic,start_time,duration'
      */
-    private static final String CSV_HEADER = "id,type,name,status,description,epic,start_time,duration";
+    static final String CSV_HEADER = "id,type,name,status,description,epic,start_time,duration";
+    private static final List<String> CSV_HEADER_FIELDS = List.of(CSV_HEADER.split(","));
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String ID_MARK_SUFFIX = ".ids";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
     private final Path storage;
-    private final TaskManagerHelper helper;
+    private final StorageOptions options;
+    private final boolean readOnly;
+    private final TaskJournal journal;
+    private final BackgroundSaver saver;
+    private final SegmentStore segments;
+    private final SnapshotStore snapshots;
+    private final StorageLock storageLock;
+    private long snapshotGeneration;
+    private final Set<Integer> dirtySegments = new TreeSet<>();
     private List<Exception> loadErrorList;
+    private boolean replaying;
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private ExecutorService compactionExecutor;
+    private volatile ManagerSaveException compactionError;
+    private final Object idMarkLock = new Object();
+    private int persistedIdMark;
+    /**
+     * Serialized CSV lines of internal tasks by internal map and ID, a line is dropped as soon as its task changes,
+     * so a save after a single update serializes only the changed records
+     */
+    private final Map<Type, Map<Integer, String>> csvLineCache = new EnumMap<>(Map.of(
+            Type.TASK, new HashMap<>(), Type.SUBTASK, new HashMap<>(), Type.EPIC, new HashMap<>()));
 
     public FileBackedTaskManager(Path storage) {
+        this(storage, StorageMode.SNAPSHOT);
+    }
+
+    public FileBackedTaskManager(Path storage, StorageMode mode) {
+        this(storage, StorageOptions.of(mode));
+    }
+
+    /**
+     * In JOURNAL mode mutations are appended to the journal file next to the storage file ('tasks.csv.journal'),
+     * the storage file itself is only read on load as the last snapshot and rewritten on journal compaction.
+     * With locking the manager becomes the only writer of the storage, see StorageLock.
+     */
+    public FileBackedTaskManager(Path storage, StorageOptions options) {
+        this(storage, options, false);
+    }
+
+    /**
+     * Read-only managers (see FollowerTaskManager) do not take the writer lock and do not persist the ID mark
+     */
+    FileBackedTaskManager(Path storage, StorageOptions options, boolean readOnly) {
         super();
         this.storage = storage;
-        helper = getHelper();
+        this.options = options;
+        this.readOnly = readOnly;
+        storageLock = options.locking() ? openStorageLock(storage, readOnly) : null;
+        journal = options.mode() == StorageMode.JOURNAL
+                ? new TaskJournal(getJournalPath(storage), options.durability(), options.flushIntervalMillis(),
+                        options.compression(), storageLock)
+                : null;
+        saver = options.mode() == StorageMode.BACKGROUND
+                ? new BackgroundSaver(storage.getFileName().toString())
+                : null;
+        segments = options.mode() == StorageMode.SEGMENTED
+                ? new SegmentStore(storage, options.segmentSize(), options.isForced())
+                : null;
+        snapshots = new SnapshotStore(storage, options.isForced());
+        if (!readOnly) {
+            helper.setIdReservationListener(this::writeIdMark);
+        }
         loadErrorList = Collections.emptyList();
     }
 
-    private void load() {
+    private static StorageLock openStorageLock(Path storage, boolean readOnly) {
+        StorageLock lock = null;
+        try {
+            lock = StorageLock.open(storage);
+            if (!readOnly) {
+                lock.acquireWriter();
+            }
+            return lock;
+        } catch (IOException | RuntimeException e) {
+            if (lock != null) {
+                try {
+                    lock.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            if (e instanceof IOException) {
+                throw new ManagerSaveException("Failed to lock storage: " + storage, e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    public static Path getJournalPath(Path storage) {
+        return storage.resolveSibling(storage.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * File of the ID high-water mark next to the storage file ('tasks.csv.ids'), IDs below it may be used,
+     * so deleted IDs are not reused after a restart
+     */
+    static Path getIdMarkPath(Path storage) {
+        return storage.resolveSibling(storage.getFileName() + ID_MARK_SUFFIX);
+    }
+
+    /**
+     * Persists the mark of a new ID block before its IDs are used, once per block.
+     * A lower mark of a block reserved concurrently is covered by the written one.
+     */
+    private void writeIdMark(int mark) {
+        synchronized (idMarkLock) {
+            if (mark <= persistedIdMark) {
+                return;
+            }
+            Path idMarkPath = getIdMarkPath(storage);
+            Path tempFile = idMarkPath.resolveSibling(idMarkPath.getFileName() + TEMP_SUFFIX);
+            try {
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.write(ByteBuffer.wrap((mark + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+                    if (options.isForced()) {
+                        channel.force(true);
+                    }
+                }
+                Files.move(tempFile, idMarkPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new ManagerSaveException("Failed to save ID high-water mark: " + idMarkPath, e);
+            }
+            persistedIdMark = mark;
+        }
+    }
+
+    /**
+     * The persisted ID high-water mark, 0 for storage saved without it
+     */
+    int readIdMark() {
+        Path idMarkPath = getIdMarkPath(storage);
+        if (!Files.exists(idMarkPath)) {
+            return 0;
+        }
+        try {
+            int mark = Integer.parseInt(Files.readString(idMarkPath, StandardCharsets.UTF_8).trim());
+            synchronized (idMarkLock) {
+                persistedIdMark = Math.max(persistedIdMark, mark);
+            }
+            return mark;
+        } catch (IOException | NumberFormatException e) {
+            throw new ManagerLoadException("Failed to read ID high-water mark: " + idMarkPath, e);
+        }
+    }
+
+    void load() {
         try {
-            List<String> csvLines = Files.readAllLines(storage, StandardCharsets.UTF_8);
-            loadErrorList = deserialize(csvLines);
+            List<Exception> errors = new ArrayList<>();
+            if (segments != null) {
+                errors.addAll(deserializeSegments());
+            } else {
+                SnapshotStore.Snapshot snapshot = snapshots.recover();
+                if (snapshot != null && snapshot.stale() && !isReadOnly()) {
+                    lockStorage();
+                    try {
+                        snapshot = snapshots.acceptStale(snapshot);
+                    } finally {
+                        unlockStorage();
+                    }
+                }
+                if (snapshot != null) {
+                    if (!snapshot.path().equals(storage)) {
+                        errors.add(new ManagerLoadException("Storage file is incomplete or corrupted, loaded snapshot: "
+                                + snapshot.path()));
+                    }
+                    snapshotGeneration = snapshot.generation();
+                    errors.addAll(readSnapshot(snapshot.path()));
+                } else if (journal == null) {
+                    // In JOURNAL mode the snapshot is written only on compaction, until then the storage file may be missing or empty
+                    errors.addAll(readSnapshot(storage));
+                }
+            }
+            if (journal != null) {
+                replaying = true;
+                try {
+                    errors.addAll(journal.replay(new JournalReplayer()));
+                } finally {
+                    replaying = false;
+                }
+            }
+            helper.rebuildIndexes();
+            // IDs found in records are the lower bound for storage saved without the mark
+            helper.setIdCounter(Math.max(helper.getIdCounter(), readIdMark()));
+            if (journal != null && !isReadOnly()) {
+                compactIfNeeded();
+            }
+            loadErrorList = errors;
         } catch (IOException e) {
             throw new ManagerLoadException("Failed to load CSV file to Task manager: " + storage, e);
         } catch (InvalidManagerTaskException e) {
@@ -46,160 +257,913 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
         }
     }
 
+    /**
+     * Compressed snapshots are decompressed on the fly, a compressed CSV file cannot be split into ranges,
+     * so it is always parsed sequentially
+     */
+    private List<Exception> readSnapshot(Path file) throws IOException, InvalidManagerTaskException {
+        if (options.snapshotFormat() == SnapshotFormat.BINARY) {
+            try (DataInputStream in = new DataInputStream(Compression.decompress(Files.newInputStream(file)))) {
+                return deserializeBinary(in);
+            }
+        }
+        if (options.loadParallelism() > 1 && !Compression.isCompressed(file)) {
+            return deserializeParallel(file);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Compression.decompress(Files.newInputStream(file)), StandardCharsets.UTF_8), IO_BUFFER_SIZE)) {
+            return deserialize(reader);
+        }
+    }
+
     /**
      * Not Exact method signature to meet the technical requirements of the final task of Sprint 7,
      * cause File changed to Path
      */
     public static FileBackedTaskManager loadFromFile(Path file) {
-        FileBackedTaskManager taskManager = new FileBackedTaskManager(file);
+        return loadFromFile(file, StorageMode.SNAPSHOT);
+    }
+
+    /**
+     * Loads the last snapshot from the storage file and, in JOURNAL mode, replays the journal on top of it
+     */
+    public static FileBackedTaskManager loadFromFile(Path file, StorageMode mode) {
+        return loadFromFile(file, StorageOptions.of(mode));
+    }
+
+    public static FileBackedTaskManager loadFromFile(Path file, StorageOptions options) {
+        FileBackedTaskManager taskManager = new FileBackedTaskManager(file, options);
         taskManager.load();
         return taskManager;
     }
 
-    private List<String> serialize(List<Task> tasks) {
-        return Stream.concat(
-                Stream.of(CSV_HEADER),
-                tasks.stream().map(Task::serializeCsv)
-        ).toList();
+    /**
+     * Streams the CSV file record by record, so only the fields of Subtasks preceding their Epic are kept
+     * until the end of the file (save() writes Epics before Subtasks, so normally there are none)
+     */
+    private List<Exception> deserialize(BufferedReader reader) throws IOException, InvalidManagerTaskException {
+        List<String[]> deferredSubtaskFields = new ArrayList<>();
+        int maxId = readCsvRecords(reader, deferredSubtaskFields);
+        addDeferredSubtasks(deferredSubtaskFields);
+        helper.setIdCounter(maxId + 1);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Reads all segments listed in the manifest, Subtasks preceding their Epic are kept until all segments are read
+     */
+    private List<Exception> deserializeSegments() throws IOException, InvalidManagerTaskException {
+        segments.load();
+        List<String[]> deferredSubtaskFields = new ArrayList<>();
+        int maxId = 0;
+        for (Path segment : segments.getSegmentPaths()) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                maxId = Math.max(maxId, readCsvRecords(reader, deferredSubtaskFields));
+            }
+        }
+        addDeferredSubtasks(deferredSubtaskFields);
+        helper.setIdCounter(maxId + 1);
+        return new ArrayList<>();
     }
 
-    private List<Exception> deserialize(List<String> csvLines) throws InvalidManagerTaskException {
-        if (csvLines.isEmpty() || !csvLines.getFirst().trim().equalsIgnoreCase(CSV_HEADER)) {
+    /**
+     * Adds the records of one CSV file, returns the maximum task ID. Empty lines are skipped like in the parallel load.
+     */
+    private int readCsvRecords(BufferedReader reader, List<String[]> deferredSubtaskFields)
+            throws IOException, InvalidManagerTaskException {
+        String header = reader.readLine();
+        if (header == null || !header.trim().equalsIgnoreCase(CSV_HEADER)) {
             throw new IllegalArgumentException("Invalid CSV file header. Expected: " + CSV_HEADER);
         }
-        List<Exception> errors = new ArrayList<>();
-        List<Task> tasks = new ArrayList<>();
-        List<Task> subtasks = new ArrayList<>();
+        LoadedEpicResolver epicResolver = new LoadedEpicResolver();
+        CsvTokenizer tokenizer = new CsvTokenizer();
         int maxId = 0;
 
-        for (int i = 1; i < csvLines.size(); i++) {
-            Task task = TaskDeserializer.deserialize(csvLines.get(i), this);
-            if (task.getType() == Type.EPIC || task.getType() == Type.TASK) {
-                // Epics and Tasks are loaded first to maintain storage integrity before Subtasks with Epic link load
-                try {
-                    helper.addInternal(task);
-                    tasks.add(task);
-                } catch (IllegalArgumentException e) {
-                    errors.add(e);
-                }
+        while (tokenizer.next(reader)) {
+            if (tokenizer.isEmptyRecord()) {
+                continue;
+            }
+            String[] fields = tokenizer.getFields();
+            int fieldCount = tokenizer.getFieldCount();
+            epicResolver.missed = false;
+            Task task = TaskDeserializer.deserialize(fields, fieldCount, epicResolver);
+            if (epicResolver.missed) {
+                // Subtask is loaded after its Epic to keep Epic link
+                deferredSubtaskFields.add(Arrays.copyOf(fields, fieldCount));
             } else {
-                subtasks.add(task);
+                helper.addInternal(task);
             }
             if (task.getId() > maxId) {
                 maxId = task.getId();
             }
         }
 
-        for (Task task : subtasks) {
-            helper.addInternal(task);
-            tasks.add(task);
-            try {
-                tasks.add(task);
-            } catch (IllegalArgumentException e) {
-                errors.add(e);
+        return maxId;
+    }
+
+    private void addDeferredSubtasks(List<String[]> deferredSubtaskFields) throws InvalidManagerTaskException {
+        LoadedEpicResolver epicResolver = new LoadedEpicResolver();
+        for (String[] subtaskFields : deferredSubtaskFields) {
+            helper.addInternal(TaskDeserializer.deserialize(subtaskFields, subtaskFields.length, epicResolver));
+        }
+    }
+
+    /**
+     * Parses the CSV file on loadParallelism threads, then adds Tasks and Epics before Subtasks,
+     * linking Subtasks to the loaded Epics
+     */
+    private List<Exception> deserializeParallel(Path file) throws IOException, InvalidManagerTaskException {
+        List<Task> loadedTasks = new ParallelCsvLoader(file, options.loadParallelism()).load(CSV_HEADER);
+        int maxId = 0;
+        for (Task task : loadedTasks) {
+            if (task.getType() != Type.SUBTASK) {
+                helper.addInternal(task);
+            }
+            maxId = Math.max(maxId, task.getId());
+        }
+        LoadedEpicResolver epicResolver = new LoadedEpicResolver();
+        for (Task task : loadedTasks) {
+            if (task instanceof Subtask subtask) {
+                Epic epic = subtask.getEpic();
+                subtask.setEpic(epic != null ? epicResolver.apply(epic.getId()) : null);
+                helper.addInternal(subtask);
             }
         }
         helper.setIdCounter(maxId + 1);
+        return new ArrayList<>();
+    }
+
+    /**
+     * Reads the binary snapshot, linking Subtasks to the loaded Epics.
+     * Like in CSV, Subtasks preceding their Epic are kept until the end of the file.
+     */
+    private List<Exception> deserializeBinary(DataInputStream in) throws IOException, InvalidManagerTaskException {
+        int version = BinarySnapshotCodec.readHeader(in);
+        List<Subtask> deferredSubtasks = new ArrayList<>();
+        LoadedEpicResolver epicResolver = new LoadedEpicResolver();
+        int maxId = 0;
 
-        return errors;
+        Task task;
+        while ((task = BinarySnapshotCodec.readTask(in, version)) != null) {
+            if (task instanceof Subtask subtask && subtask.getEpic() != null) {
+                Epic epic = epicResolver.apply(subtask.getEpic().getId());
+                if (epic == null) {
+                    deferredSubtasks.add(subtask);
+                    continue;
+                }
+                subtask.setEpic(epic);
+            }
+            helper.addInternal(task);
+            maxId = Math.max(maxId, task.getId());
+        }
+
+        for (Subtask subtask : deferredSubtasks) {
+            subtask.setEpic(epicResolver.apply(subtask.getEpic().getId()));
+            helper.addInternal(subtask);
+            maxId = Math.max(maxId, subtask.getId());
+        }
+        helper.setIdCounter(maxId + 1);
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Writes the CSV header and all tasks straight to the writer, Tasks and Epics before Subtasks.
+     * The writer is neither flushed nor closed.
+     */
+    public synchronized void exportCsv(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write(System.lineSeparator());
+        writeCsvRecords(writer, helper.getInternalTasks(), Type.TASK);
+        writeCsvRecords(writer, helper.getInternalEpics(), Type.EPIC);
+        writeCsvRecords(writer, helper.getInternalSubtasks(), Type.SUBTASK);
     }
 
+    /**
+     * Writes the CSV file content to the stream in UTF-8, the stream is flushed but not closed
+     */
+    public void exportCsv(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        exportCsv(writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes all tasks to the stream in the binary snapshot format, Tasks and Epics before Subtasks.
+     * The stream is flushed but not closed.
+     */
+    public synchronized void exportBinary(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, IO_BUFFER_SIZE));
+        BinarySnapshotCodec.writeHeader(data);
+        writeBinaryRecords(data, helper.getInternalTasks());
+        writeBinaryRecords(data, helper.getInternalEpics());
+        writeBinaryRecords(data, helper.getInternalSubtasks());
+        BinarySnapshotCodec.writeEnd(data);
+        data.flush();
+    }
+
+    private static void writeBinaryRecords(DataOutputStream out, Collection<? extends Task> tasks) throws IOException {
+        for (Task task : tasks) {
+            BinarySnapshotCodec.writeTask(out, task);
+        }
+    }
+
+    /**
+     * Converts the snapshot file from one format to another, the target file is overwritten.
+     * Journal of the source file is not applied.
+     */
+    public static void convertSnapshot(Path source, SnapshotFormat sourceFormat, Path target, SnapshotFormat targetFormat) {
+        FileBackedTaskManager taskManager = loadFromFile(source,
+                StorageOptions.of(StorageMode.SNAPSHOT).withSnapshotFormat(sourceFormat));
+        try (OutputStream out = Files.newOutputStream(target)) {
+            taskManager.export(out, targetFormat);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to convert snapshot to file: " + target, e);
+        }
+    }
+
+    private void export(OutputStream out, SnapshotFormat format) throws IOException {
+        switch (format) {
+            case CSV -> exportCsv(out);
+            case BINARY -> exportBinary(out);
+        }
+    }
+
+    /**
+     * Writes the CSV header and the tasks with IDs from firstId to lastId, Tasks and Epics before Subtasks.
+     * Returns the number of written tasks.
+     */
+    private int exportCsvSegment(Writer writer, int firstId, int lastId) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write(System.lineSeparator());
+        int count = 0;
+        int maxId = Math.min(lastId, helper.getIdCounter() - 1);
+        for (Type type : List.of(Type.TASK, Type.EPIC, Type.SUBTASK)) {
+            for (int id = firstId; id <= maxId; id++) {
+                Task task = helper.getInternal(type, id);
+                if (task != null) {
+                    writer.write(getCsvLine(type, task));
+                    writer.write(System.lineSeparator());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void writeCsvRecords(Writer writer, Collection<? extends Task> tasks, Type mapType) throws IOException {
+        for (Task task : tasks) {
+            writer.write(getCsvLine(mapType, task));
+            writer.write(System.lineSeparator());
+        }
+    }
+
+    private String getCsvLine(Type mapType, Task task) {
+        Map<Integer, String> lines = csvLineCache.get(mapType);
+        String line = lines.get(task.getId());
+        if (line == null) {
+            line = task.serializeCsv();
+            lines.put(task.getId(), line);
+        }
+        return line;
+    }
+
+    /**
+     * Drops cached lines and marks segments of the changed task and of the Epic of a changed Subtask,
+     * as Epic status and time follow its Subtasks
+     */
+    private void markChanged(Type type, int id) {
+        if (type == Type.SUBTASK && helper.getInternal(Type.SUBTASK, id) instanceof Subtask subtask && subtask.getEpic() != null) {
+            markChanged(Type.EPIC, subtask.getEpic().getId());
+        }
+        // The same ID may be cached in several maps, as updateEpic() puts the Epic to the task map
+        csvLineCache.values().forEach(lines -> lines.remove(id));
+        if (segments != null) {
+            dirtySegments.add(segments.segmentOf(id));
+        }
+    }
+
+    /**
+     * In SNAPSHOT and BACKGROUND modes the whole file is rewritten, durability is FLUSH or FSYNC, see StorageOptions
+     */
     private void save() {
+        if (saver != null) {
+            saver.markDirty(this::saveLatestState);
+            return;
+        }
         try {
-            List<Task> tasks = new ArrayList<>();
-            tasks.addAll(getTasks());
-            tasks.addAll(getEpics());
-            tasks.addAll(getSubtasks());
-
-            List<String> csvLines = serialize(tasks);
+            if (segments != null) {
+                writeDirtySegments();
+                return;
+            }
+            writeSnapshotAtomically(false);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to save tasks to file: " + storage, e);
+        }
+    }
 
-            Files.write(storage, csvLines, StandardCharsets.UTF_8);
+    /**
+     * Background save of BACKGROUND mode, the file is written under the manager lock to a temporary file
+     * renamed over the storage file, so readers never see a partial file
+     */
+    private void saveLatestState() {
+        try {
+            writeSnapshotAtomically(false);
         } catch (IOException e) {
             throw new ManagerSaveException("Failed to save tasks to file: " + storage, e);
         }
     }
 
+    /**
+     * A segment stays dirty until it is written, so a failed write is retried by the next save
+     */
+    private void writeDirtySegments() throws IOException {
+        lockStorage();
+        try {
+            Iterator<Integer> iterator = dirtySegments.iterator();
+            while (iterator.hasNext()) {
+                segments.write(iterator.next(), this::exportCsvSegment);
+                iterator.remove();
+            }
+        } finally {
+            unlockStorage();
+        }
+    }
+
+    private void markAllSegmentsDirty() {
+        dirtySegments.addAll(segments.getSegments());
+        for (Collection<? extends Task> tasks : List.of(helper.getInternalTasks(), helper.getInternalEpics(),
+                helper.getInternalSubtasks())) {
+            tasks.forEach(task -> dirtySegments.add(segments.segmentOf(task.getId())));
+        }
+    }
+
+    /**
+     * Writes the snapshot to the temporary file and commits it with its checksum, see SnapshotStore.
+     * Only the commit is made under the exclusive storage lock, readers never read the temporary file without its checksum.
+     */
+    private void writeSnapshotAtomically(boolean rotateJournal) throws IOException {
+        SnapshotStore.Checksum checksum = writeSnapshot(snapshots.getTempPath(), rotateJournal);
+        lockStorage();
+        try {
+            snapshots.commit(checksum);
+        } finally {
+            unlockStorage();
+        }
+    }
+
+    private void lockStorage() throws IOException {
+        if (storageLock != null) {
+            storageLock.lockExclusive();
+        }
+    }
+
+    private void unlockStorage() throws IOException {
+        if (storageLock != null) {
+            storageLock.unlockExclusive();
+        }
+    }
+
+    /**
+     * Streams the current state to the file under the manager lock, rotating the journal under the same lock
+     * if requested, so the snapshot covers exactly the rotated records. Forcing to the disk is done outside the lock.
+     * Data is compressed and CRC32C of the written bytes is calculated on the fly.
+     */
+    private SnapshotStore.Checksum writeSnapshot(Path file, boolean rotateJournal) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             CheckedOutputStream out = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32C())) {
+            long generation;
+            synchronized (this) {
+                generation = ++snapshotGeneration;
+                OutputStream compressed = options.compression().compress(out);
+                export(compressed, options.snapshotFormat());
+                Compression.finish(compressed);
+                if (rotateJournal) {
+                    journal.rotate();
+                }
+            }
+            if (options.isForced()) {
+                channel.force(true);
+            }
+            return new SnapshotStore.Checksum(generation, channel.size(), (int) out.getChecksum().getValue());
+        }
+    }
+
+    /**
+     * Writes all saved changes to the disk and forces them, whatever the durability mode is
+     */
+    public void flush() {
+        try {
+            flushAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ManagerSaveException saveException) {
+                throw saveException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Future completed once all changes made before the call are saved.
+     * Only BACKGROUND mode saves asynchronously, other modes flush on the caller's thread.
+     */
+    public CompletableFuture<Void> flushAsync() {
+        if (saver != null) {
+            return saver.flushAsync();
+        }
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(
+                        new ManagerSaveException("Failed to flush journal: " + journal.getPath(), e));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Writes a new snapshot of the current state and drops journal records covered by it.
+     * The snapshot is written to a temporary file and atomically renamed over the storage file,
+     * so a crash at any step leaves either the old snapshot with the full journal or the new one.
+     */
+    public void compact() {
+        checkWritable();
+        if (journal == null) {
+            synchronized (this) {
+                if (segments != null) {
+                    markAllSegmentsDirty();
+                }
+                save();
+            }
+            return;
+        }
+        synchronized (compactionLock) {
+            compactJournal();
+        }
+        throwCompactionError();
+    }
+
+    private void compactJournal() {
+        try {
+            writeSnapshotAtomically(true);
+            journal.discardPending();
+        } catch (IOException e) {
+            // Journal records stay in the pending file and will be compacted by the next run
+            compactionError = new ManagerSaveException("Failed to compact journal to file: " + storage, e);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (journal.getRecordCount() < options.compactionRecords() && journal.getSize() < options.compactionBytes()) {
+            return;
+        }
+        if (!compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-compaction-" + storage.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compactionExecutor.execute(() -> {
+            try {
+                synchronized (compactionLock) {
+                    compactJournal();
+                }
+            } finally {
+                compactionScheduled.set(false);
+            }
+        });
+    }
+
+    private void throwCompactionError() {
+        ManagerSaveException error = compactionError;
+        if (error != null) {
+            compactionError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Persists the state of the single task after its addition or update
+     */
+    private void saveTask(Type type, int id) {
+        markChanged(type, id);
+        if (replaying) {
+            return;
+        }
+        if (journal == null) {
+            save();
+            return;
+        }
+        Task task = helper.getInternal(type, id);
+        try {
+            if (task != null) {
+                journal.appendPut(getCsvLine(type, task));
+            } else {
+                journal.appendDelete(type, id);
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to append task to journal: " + journal.getPath(), e);
+        }
+    }
+
+    private void saveDeletion(Type type, int id) {
+        markChanged(type, id);
+        if (replaying) {
+            return;
+        }
+        if (journal == null) {
+            save();
+            return;
+        }
+        try {
+            journal.appendDelete(type, id);
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to append deletion to journal: " + journal.getPath(), e);
+        }
+    }
+
+    private void saveClear(Type type) {
+        // Clearing Subtasks changes Epics, clearing Epics removes Subtasks
+        csvLineCache.get(type).clear();
+        switch (type) {
+            case SUBTASK -> csvLineCache.get(Type.EPIC).clear();
+            case EPIC -> csvLineCache.get(Type.SUBTASK).clear();
+            default -> {
+            }
+        }
+        if (segments != null) {
+            dirtySegments.addAll(segments.getSegments());
+        }
+        if (replaying) {
+            return;
+        }
+        if (journal == null) {
+            save();
+            return;
+        }
+        try {
+            journal.appendClear(type);
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to append clear to journal: " + journal.getPath(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeStorage();
+        } finally {
+            if (storageLock != null) {
+                try {
+                    storageLock.close();
+                } catch (IOException e) {
+                    throw new ManagerSaveException("Failed to release storage lock: " + storage, e);
+                }
+            }
+        }
+    }
+
+    private void closeStorage() {
+        if (saver != null) {
+            saver.close();
+        }
+        if (journal == null) {
+            return;
+        }
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+            try {
+                compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            synchronized (this) {
+                journal.close();
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to close journal: " + journal.getPath(), e);
+        }
+        throwCompactionError();
+    }
+
+    /**
+     * Read-only managers (see FollowerTaskManager) reject mutations and never write the storage,
+     * only changes read from the storage are applied
+     */
+    final boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private void checkWritable() {
+        if (isReadOnly() && !replaying) {
+            throw new UnsupportedOperationException("Task manager is read-only: " + storage);
+        }
+    }
+
+    Path getStorage() {
+        return storage;
+    }
+
+    StorageOptions getOptions() {
+        return options;
+    }
+
+    TaskJournal getJournal() {
+        return journal;
+    }
+
+    StorageLock getStorageLock() {
+        return storageLock;
+    }
+
+    /**
+     * Removes all tasks and loads the storage again, the history is kept
+     */
+    synchronized void reload() {
+        helper.clearInternal();
+        csvLineCache.values().forEach(Map::clear);
+        load();
+    }
+
+    /**
+     * Replays complete journal records of the file written after the offset, returns the offset after them
+     */
+    synchronized long replayJournalTail(Path file, long offset, List<Exception> errors) throws IOException {
+        replaying = true;
+        try {
+            return TaskJournal.replayTail(file, offset, new JournalReplayer(), errors);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Brings the state to the uncompressed CSV snapshot file written by another process: only records
+     * differing from the serialized current tasks are parsed and put, tasks missing in the file are deleted,
+     * so unchanged tasks keep their instances and the time index is updated only for the changed ones.
+     * Returns the number of changed tasks.
+     */
+    synchronized int applySnapshotChanges(Path file) throws IOException, InvalidManagerTaskException {
+        Map<Type, Set<Integer>> fileIds = new EnumMap<>(Map.of(
+                Type.TASK, new HashSet<>(), Type.SUBTASK, new HashSet<>(), Type.EPIC, new HashSet<>()));
+        List<String[]> deferredSubtaskFields = new ArrayList<>();
+        int changedCount = 0;
+        int maxId = 0;
+        replaying = true;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.trim().equalsIgnoreCase(CSV_HEADER)) {
+                throw new IllegalArgumentException("Invalid CSV file header. Expected: " + CSV_HEADER);
+            }
+            LoadedEpicResolver epicResolver = new LoadedEpicResolver();
+            CsvTokenizer tokenizer = new CsvTokenizer();
+            while (tokenizer.next(reader)) {
+                String[] fields = tokenizer.getFields();
+                int fieldCount = tokenizer.getFieldCount();
+                Type type = TaskDeserializer.parseType(fields[1]);
+                int id = TaskDeserializer.parseId(fields[0]);
+                fileIds.get(type).add(id);
+                maxId = Math.max(maxId, id);
+                Task current = helper.getInternal(type, id);
+                if (current != null && joinCsvFields(fields, fieldCount).equals(getCsvLine(type, current))) {
+                    continue;
+                }
+                epicResolver.missed = false;
+                Task task = TaskDeserializer.deserialize(fields, fieldCount, epicResolver);
+                if (epicResolver.missed) {
+                    deferredSubtaskFields.add(Arrays.copyOf(fields, fieldCount));
+                } else {
+                    putChanged(task);
+                }
+                changedCount++;
+            }
+            LoadedEpicResolver deferredEpicResolver = new LoadedEpicResolver();
+            for (String[] subtaskFields : deferredSubtaskFields) {
+                putChanged(TaskDeserializer.deserialize(subtaskFields, subtaskFields.length, deferredEpicResolver));
+            }
+            changedCount += deleteMissing(Type.SUBTASK, helper.getInternalSubtasks(), fileIds);
+            changedCount += deleteMissing(Type.TASK, helper.getInternalTasks(), fileIds);
+            changedCount += deleteMissing(Type.EPIC, helper.getInternalEpics(), fileIds);
+        } finally {
+            replaying = false;
+        }
+        helper.setIdCounter(Math.max(helper.getIdCounter(), maxId + 1));
+        return changedCount;
+    }
+
+    private void putChanged(Task task) throws InvalidManagerTaskException {
+        markChanged(task.getType(), task.getId());
+        helper.putInternal(task);
+        markChanged(task.getType(), task.getId());
+    }
+
+    private int deleteMissing(Type type, Collection<? extends Task> tasks, Map<Type, Set<Integer>> fileIds) {
+        List<Integer> missingIds = tasks.stream()
+                .map(Task::getId)
+                .filter(id -> !fileIds.get(type).contains(id))
+                .toList();
+        for (int id : missingIds) {
+            markChanged(type, id);
+            switch (type) {
+                case TASK -> super.deleteTaskById(id);
+                case SUBTASK -> super.deleteSubtaskById(id);
+                case EPIC -> super.deleteEpicById(id);
+            }
+        }
+        return missingIds.size();
+    }
+
+    private static String joinCsvFields(String[] fields, int fieldCount) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(TaskDeserializer.escapeCsv(fields[i]));
+        }
+        return line.toString();
+    }
+
     public List<Exception> getLoadErrorList() {
         return Collections.unmodifiableList(loadErrorList);
     }
 
     public static int getCsvFieldPosition(String field) {
-        String[] headers = CSV_HEADER.split(",");
-        return IntStream.range(0, headers.length).filter(i -> field.equals(headers[i].trim())).findFirst().orElse(-1);
+        return CSV_HEADER_FIELDS.indexOf(field);
     }
 
     @Override
-    public void deleteTasks() {
+    public synchronized void deleteTasks() {
+        checkWritable();
         super.deleteTasks();
-        save();
+        saveClear(Type.TASK);
     }
 
     @Override
-    public void deleteSubtasks() {
+    public synchronized void deleteSubtasks() {
+        checkWritable();
         super.deleteSubtasks();
-        save();
+        saveClear(Type.SUBTASK);
     }
 
-    public void deleteEpics() {
+    @Override
+    public synchronized void deleteEpics() {
+        checkWritable();
         super.deleteEpics();
-        save();
+        saveClear(Type.EPIC);
     }
 
     @Override
-    public int addTask(Task task) throws InvalidManagerTaskException {
+    public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+        checkWritable();
         int taskId = super.addTask(task);
-        save();
+        saveTask(Type.TASK, taskId);
         return taskId;
     }
 
     @Override
-    public int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+    public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        checkWritable();
         int subtaskId = super.addSubtask(subtask, epic);
-        save();
+        saveTask(Type.SUBTASK, subtaskId);
         return subtaskId;
     }
 
     @Override
-    public int addEpic(Epic epic) throws InvalidManagerTaskException {
+    public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+        checkWritable();
         int epicId = super.addEpic(epic);
-        save();
+        saveTask(Type.EPIC, epicId);
         return epicId;
     }
 
     @Override
-    public void updateTask(Task task) throws InvalidManagerTaskException {
+    public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+        checkWritable();
         super.updateTask(task);
-        save();
+        saveTask(Type.TASK, task.getId());
     }
 
     @Override
-    public void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+    public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        checkWritable();
         super.updateSubtask(subtask);
-        save();
+        saveTask(Type.SUBTASK, subtask.getId());
     }
 
     @Override
-    public void updateEpic(Epic epic) throws InvalidManagerTaskException {
+    public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        checkWritable();
         super.updateEpic(epic);
-        save();
+        saveTask(Type.EPIC, epic.getId());
     }
 
     @Override
-    public void deleteTaskById(int id) {
+    public synchronized void deleteTaskById(int id) {
+        checkWritable();
         super.deleteTaskById(id);
-        save();
+        saveDeletion(Type.TASK, id);
+    }
+
+    @Override
+    public synchronized void clearAll() {
+        checkWritable();
+        super.clearAll();
+        csvLineCache.values().forEach(Map::clear);
+        if (segments != null) {
+            dirtySegments.addAll(segments.getSegments());
+        }
+        if (journal == null || replaying) {
+            // Other modes rewrite all files on the next save
+            return;
+        }
+        try {
+            for (Type type : List.of(Type.TASK, Type.SUBTASK, Type.EPIC)) {
+                journal.appendClear(type);
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to append clear to journal: " + journal.getPath(), e);
+        }
     }
 
     @Override
-    public void deleteSubtaskById(int id) {
+    public synchronized void deleteSubtaskById(int id) {
+        checkWritable();
+        markChanged(Type.SUBTASK, id);
         super.deleteSubtaskById(id);
-        save();
+        saveDeletion(Type.SUBTASK, id);
     }
 
     @Override
-    public void deleteEpicById(int id) {
+    public synchronized void deleteEpicById(int id) {
+        checkWritable();
         super.deleteEpicById(id);
-        save();
+        saveDeletion(Type.EPIC, id);
+    }
+
+    /**
+     * Links loaded Subtasks to already loaded Epics without copying Epic subtasks and without adding Epics to history
+     */
+    private class LoadedEpicResolver implements IntFunction<Epic> {
+        private boolean missed;
+
+        @Override
+        public Epic apply(int epicId) {
+            Epic epic = (Epic) helper.getInternal(Type.EPIC, epicId);
+            if (epic == null) {
+                missed = true;
+                return null;
+            }
+            return epic.copyWith(null, null, null);
+        }
+    }
+
+    /**
+     * Applies journal records to the loaded snapshot, bypassing journaling of the overridden methods
+     */
+    private class JournalReplayer implements TaskJournal.Replayer {
+
+        @Override
+        public void put(String[] taskFields) throws InvalidManagerTaskException {
+            Task task = TaskDeserializer.deserialize(taskFields, taskFields.length, new LoadedEpicResolver());
+            markChanged(task.getType(), task.getId());
+            helper.putInternal(task);
+            markChanged(task.getType(), task.getId());
+            if (task.getId() >= helper.getIdCounter()) {
+                helper.setIdCounter(task.getId() + 1);
+            }
+        }
+
+        @Override
+        public void delete(Type type, int id) {
+            markChanged(type, id);
+            switch (type) {
+                case TASK -> FileBackedTaskManager.super.deleteTaskById(id);
+                case SUBTASK -> FileBackedTaskManager.super.deleteSubtaskById(id);
+                case EPIC -> FileBackedTaskManager.super.deleteEpicById(id);
+            }
+        }
+
+        @Override
+        public void clear(Type type) {
+            switch (type) {
+                case TASK -> FileBackedTaskManager.super.deleteTasks();
+                case SUBTASK -> FileBackedTaskManager.super.deleteSubtasks();
+                case EPIC -> FileBackedTaskManager.super.deleteEpics();
+            }
+        }
     }
 
 }
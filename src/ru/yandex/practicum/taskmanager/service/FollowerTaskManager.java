@@ -0,0 +1,396 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only manager following the storage written by FileBackedTaskManager of another process,
+ * e.g. a reporting JVM next to the writer. The storage directory is watched with WatchService
+ * and changes are applied incrementally:
+ * <ul>
+ * <li>JOURNAL mode - records appended to the journal after the last read offset are replayed;
+ * when the writer rotates the journal on compaction, the rest of the rotated (pending) file is replayed first</li>
+ * <li>SNAPSHOT and BACKGROUND modes - the rewritten CSV snapshot is compared with the current state
+ * record by record, only changed records are parsed and applied</li>
+ * </ul>
+ * Binary or compressed storage, and a journal whose rotated records were dropped before they were read,
+ * are loaded again completely. SEGMENTED storage is not supported. Mutations throw UnsupportedOperationException.
+ * <p>
+ * With locking the storage is read under the shared storage lock, so the writer never changes it meanwhile,
+ * and a refresh reads only the version stamp of the lock file when the writer has written nothing.
+ */
+public class FollowerTaskManager extends FileBackedTaskManager {
+
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+    private final SnapshotStore snapshots;
+    private FileVersion snapshotVersion;
+    private long coveredGeneration;
+    private Object followedPendingKey;
+    private FileVersion journalVersion;
+    private long journalOffset;
+    private long seenStamp = -1;
+    private List<Exception> refreshErrorList = Collections.emptyList();
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * Size, modification time and file key (inode) of a file, the key changes when the file is replaced by rename
+     */
+    private record FileVersion(Object key, long size, FileTime modified) {
+
+        static FileVersion of(Path file) throws IOException {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new FileVersion(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime());
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+    }
+
+    public FollowerTaskManager(Path storage, StorageOptions options) {
+        super(storage, options, true);
+        if (options.mode() == StorageMode.SEGMENTED) {
+            throw new IllegalArgumentException("Follower mode does not support SEGMENTED storage.");
+        }
+        snapshots = new SnapshotStore(storage, false);
+    }
+
+    /**
+     * Loads the storage and starts watching it
+     */
+    public static FollowerTaskManager follow(Path storage, StorageOptions options) {
+        FollowerTaskManager taskManager = new FollowerTaskManager(storage, options);
+        taskManager.load();
+        taskManager.startWatching();
+        return taskManager;
+    }
+
+    /**
+     * Loads the storage completely, remembering the versions of the files, so the next refresh
+     * applies only later changes. Journal records appended during the load are replayed again by the next refresh.
+     */
+    @Override
+    synchronized void load() {
+        StorageLock lock = getStorageLock();
+        if (lock == null) {
+            loadVersions();
+            return;
+        }
+        try {
+            lock.lockShared();
+            try {
+                seenStamp = lock.readStamp();
+                loadVersions();
+            } finally {
+                lock.unlockShared();
+            }
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to lock storage: " + getStorage(), e);
+        }
+    }
+
+    private void loadVersions() {
+        try {
+            snapshotVersion = FileVersion.of(getStorage());
+            coveredGeneration = snapshots.readLatestGeneration();
+            followedPendingKey = null;
+            if (getJournal() != null) {
+                // Pending records of a running compaction are loaded, its snapshot is covered
+                FileVersion pending = FileVersion.of(getJournal().getPendingPath());
+                if (pending != null) {
+                    followedPendingKey = pending.key();
+                    coveredGeneration++;
+                }
+            }
+            journalVersion = getJournal() != null ? FileVersion.of(getJournal().getPath()) : null;
+            journalOffset = journalVersion != null && isJournalTailed()
+                    ? TaskJournal.completeRecordsEnd(getJournal().getPath(), journalVersion.size())
+                    : 0;
+            if (getJournal() == null && snapshots.recover() == null) {
+                // The writer has not saved anything yet
+                return;
+            }
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read storage file versions: " + getStorage(), e);
+        }
+        super.load();
+    }
+
+    private boolean isJournalTailed() {
+        return getOptions().compression() == Compression.NONE;
+    }
+
+    /**
+     * Applies changes of the storage made since the last refresh, returns whether anything was applied.
+     * Called by the watcher thread on file events, may be called directly to poll without watching.
+     */
+    public synchronized boolean refresh() {
+        List<Exception> errors = new ArrayList<>();
+        StorageLock lock = getStorageLock();
+        try {
+            if (lock == null) {
+                boolean changed = getJournal() != null ? refreshJournal(errors) : refreshSnapshot();
+                refreshErrorList = errors;
+                return changed;
+            }
+            lock.lockShared();
+            try {
+                long stamp = lock.readStamp();
+                if (stamp == seenStamp) {
+                    return false;
+                }
+                boolean changed = getJournal() != null ? refreshJournal(errors) : refreshSnapshot();
+                refreshErrorList = errors;
+                seenStamp = stamp;
+                return changed;
+            } finally {
+                lock.unlockShared();
+            }
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read changes of storage: " + getStorage(), e);
+        } catch (InvalidManagerTaskException e) {
+            throw new ManagerLoadException("Error applying changes of storage, storage is inconsistent: " + getStorage(), e);
+        }
+    }
+
+    private boolean refreshSnapshot() throws IOException, InvalidManagerTaskException {
+        FileVersion version = FileVersion.of(getStorage());
+        if (Objects.equals(version, snapshotVersion)) {
+            return false;
+        }
+        SnapshotStore.Snapshot snapshot = snapshots.recover();
+        if (snapshot == null) {
+            // Nothing written yet
+            return false;
+        }
+        if (getOptions().snapshotFormat() == SnapshotFormat.CSV && !Compression.isCompressed(snapshot.path())) {
+            applySnapshotChanges(snapshot.path());
+        } else {
+            reload();
+        }
+        if (snapshot.path().equals(getStorage())) {
+            snapshotVersion = version;
+        }
+        return true;
+    }
+
+    /**
+     * The journal is followed by its file key and read offset. When the writer rotates it on compaction,
+     * the rest of the rotated file is read from the pending file and the snapshot being written covers
+     * exactly the followed records, so one more snapshot generation is expected. A newer generation
+     * means rotated records were compacted before they were read, then the storage is loaded again.
+     */
+    private boolean refreshJournal(List<Exception> errors) throws IOException {
+        Path journalPath = getJournal().getPath();
+        FileVersion journal = FileVersion.of(journalPath);
+        if (!isJournalTailed()) {
+            if (Objects.equals(journal, journalVersion) && snapshots.readLatestGeneration() <= coveredGeneration) {
+                return false;
+            }
+            reload();
+            return true;
+        }
+        if (journal != null && journalVersion != null && Objects.equals(journal.key(), journalVersion.key())) {
+            if (journal.size() < journalOffset) {
+                reload();
+                return true;
+            }
+            long offset = replayJournalTail(journalPath, journalOffset, errors);
+            boolean changed = offset != journalOffset;
+            journalOffset = offset;
+            journalVersion = journal;
+            return changed;
+        }
+
+        boolean changed = false;
+        if (journalVersion != null) {
+            FileVersion pending = FileVersion.of(getJournal().getPendingPath());
+            if (pending == null || !Objects.equals(pending.key(), journalVersion.key())) {
+                // Rotated records were compacted and dropped, or appended to an older pending file
+                reload();
+                return true;
+            }
+            changed = replayJournalTail(getJournal().getPendingPath(), journalOffset, errors) != journalOffset;
+            followedPendingKey = pending.key();
+            coveredGeneration++;
+        } else {
+            FileVersion pending = FileVersion.of(getJournal().getPendingPath());
+            if (pending != null && !Objects.equals(pending.key(), followedPendingKey)) {
+                // A journal created after the load was already rotated, its records were not read
+                reload();
+                return true;
+            }
+        }
+        if (snapshots.readLatestGeneration() > coveredGeneration) {
+            reload();
+            return true;
+        }
+        journalVersion = journal;
+        journalOffset = journal != null ? replayJournalTail(journalPath, 0, errors) : 0;
+        return changed || journalOffset > 0;
+    }
+
+    /**
+     * Errors of records skipped by the last refresh, or the last refresh failure of the watcher thread
+     */
+    public synchronized List<Exception> getRefreshErrorList() {
+        return Collections.unmodifiableList(refreshErrorList);
+    }
+
+    /**
+     * Starts the daemon thread applying changes on events of the storage directory.
+     * A failed refresh (e.g. a snapshot replaced while being read) is retried with a growing delay.
+     */
+    public synchronized void startWatching() {
+        if (watcher != null) {
+            return;
+        }
+        Path directory = getStorage().toAbsolutePath().getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to watch storage directory: " + directory, e);
+        }
+        Set<String> fileNames = getJournal() != null
+                ? Set.of(getStorage().getFileName().toString(), getJournal().getPath().getFileName().toString(),
+                        getJournal().getPendingPath().getFileName().toString())
+                : Set.of(getStorage().getFileName().toString());
+        WatchService service = watchService;
+        watcher = new Thread(() -> watch(service, fileNames), "storage-follower-" + getStorage().getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service, Set<String> fileNames) {
+        long retryDelay = 0;
+        try {
+            while (true) {
+                WatchKey key = retryDelay > 0 ? service.poll(retryDelay, TimeUnit.MILLISECONDS) : service.take();
+                boolean changed = retryDelay > 0;
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || fileNames.contains(String.valueOf(event.context()));
+                    }
+                    key.reset();
+                }
+                if (!changed) {
+                    continue;
+                }
+                try {
+                    refresh();
+                    retryDelay = 0;
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        refreshErrorList = List.of(e);
+                    }
+                    retryDelay = Math.min(Math.max(retryDelay * 2, MIN_RETRY_DELAY_MILLIS), MAX_RETRY_DELAY_MILLIS);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watching is stopped by close()
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread stoppedWatcher;
+        synchronized (this) {
+            stoppedWatcher = watcher;
+            watcher = null;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException ignored) {
+                    // The watcher thread stops anyway
+                }
+                watchService = null;
+            }
+        }
+        if (stoppedWatcher != null) {
+            // Closed WatchService wakes the watcher up, an interrupt would close the shared lock file channel
+            try {
+                stoppedWatcher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.close();
+    }
+
+    @Override
+    public synchronized List<Task> getTasks() {
+        return super.getTasks();
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasks() {
+        return super.getSubtasks();
+    }
+
+    @Override
+    public synchronized List<Epic> getEpics() {
+        return super.getEpics();
+    }
+
+    @Override
+    public synchronized Optional<Task> getTaskById(int id) {
+        return super.getTaskById(id);
+    }
+
+    @Override
+    public synchronized Optional<Subtask> getSubtaskById(int id) {
+        return super.getSubtaskById(id);
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicById(int id) {
+        return super.getEpicById(id);
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        return super.getEpicBySubtask(subtask);
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        return super.getSubtasksByEpicId(epicId);
+    }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return super.getHistory();
+    }
+
+    @Override
+    public synchronized List<Task> getPrioritizedTasks() {
+        return super.getPrioritizedTasks();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Allocates task IDs in contiguous blocks per thread:
+ * <ul>
+ * <li>every thread takes IDs from its own block without synchronization</li>
+ * <li>an exhausted block is refilled from the global atomic counter, so threads meet only once per block</li>
+ * <li>the counter is the high-water mark, no allocated ID is equal to or above it. The reservation listener
+ * gets the new mark before any ID of the block is returned, so a persisted mark is never below a used ID.</li>
+ * </ul>
+ * IDs of one thread are ascending, IDs of different threads interleave by blocks.
+ * IDs left in blocks are skipped when the counter is reset, e.g. after a restart.
+ */
+class IdAllocator {
+
+    static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private final int blockSize;
+    private final AtomicInteger highWaterMark;
+    private final ThreadLocal<Block> blocks = new ThreadLocal<>();
+    /**
+     * Incremented on reset, blocks of an older generation are dropped
+     */
+    private volatile int generation;
+    private volatile IntConsumer reservationListener;
+
+    private static final class Block {
+        private final int generation;
+        private final int end;
+        private int next;
+
+        private Block(int generation, int start, int end) {
+            this.generation = generation;
+            this.next = start;
+            this.end = end;
+        }
+    }
+
+    IdAllocator(int firstId, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("ID block size should be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        highWaterMark = new AtomicInteger(firstId);
+    }
+
+    int nextId() {
+        Block block = blocks.get();
+        if (block == null || block.next == block.end || block.generation != generation) {
+            block = reserveBlock();
+            blocks.set(block);
+        }
+        return block.next++;
+    }
+
+    private Block reserveBlock() {
+        int blockGeneration = generation;
+        int start = highWaterMark.getAndAdd(blockSize);
+        IntConsumer listener = reservationListener;
+        if (listener != null) {
+            listener.accept(start + blockSize);
+        }
+        return new Block(blockGeneration, start, start + blockSize);
+    }
+
+    /**
+     * The first ID not reserved by any block
+     */
+    int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Next blocks start from the ID, blocks reserved before are dropped. Not to be called concurrently
+     * with allocation, managers reset the counter on load only.
+     */
+    synchronized void reset(int nextId) {
+        if (highWaterMark.get() == nextId) {
+            return;
+        }
+        generation++;
+        highWaterMark.set(nextId);
+    }
+
+    /**
+     * Gets the new high-water mark on every block reservation, possibly from several threads at once,
+     * a mark may come after a higher one. An exception thrown by the listener fails the allocation.
+     */
+    void setReservationListener(IntConsumer reservationListener) {
+        this.reservationListener = reservationListener;
+    }
+}
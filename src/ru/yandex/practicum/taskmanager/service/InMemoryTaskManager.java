@@ -7,7 +7,11 @@ import ru.yandex.practicum.taskmanager.model.Task;
 import ru.yandex.practicum.taskmanager.model.Type;
 import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -17,6 +21,7 @@ import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.TreeSet;
+import java.util.function.IntConsumer;
 
 public class InMemoryTaskManager implements TaskManager {
 
@@ -26,19 +31,24 @@ public class InMemoryTaskManager implements TaskManager {
     private final Map<Integer, Task> tasks = new HashMap<>();
     private final Map<Integer, Subtask> subtasks = new HashMap<>();
     private final Map<Integer, Epic> epics = new HashMap<>();
-    private int idCounter;
+    private final IdAllocator idAllocator = new IdAllocator(1, IdAllocator.DEFAULT_BLOCK_SIZE);
     private final HistoryManager historyManager;
     private final Comparator<Task> taskTimeComparator = Comparator
             .comparing(Task::getStartTime, Comparator.nullsLast(Comparator.naturalOrder()));
     private final NavigableSet<Task> tasksByTime = new TreeSet<>(taskTimeComparator);
+    private IndexRebuildReport indexRebuildReport;
+    /**
+     * Internal access for storage managers extending this class, created here so their constructors
+     * do not pass 'this' out
+     */
+    final TaskManagerHelper helper = new TaskManagerHelper(this);
 
     InMemoryTaskManager() {
-        idCounter = 1;
         historyManager = Managers.getDefaultHistory();
     }
 
     private int generateNextId() {
-        return idCounter++;
+        return idAllocator.nextId();
     }
 
     private void addToHistory(Task task) {
@@ -321,18 +331,33 @@ public class InMemoryTaskManager implements TaskManager {
         if (internalTask != null) {
             isRemoved = tasksByTime.remove(internalTask);
         }
-        try {
-            if (hasTimeIntersectionWithAnyTask(task)) {
-                throw new InvalidManagerTaskException(task.getType() + " with startTime=" + task.getStartTime() + " has intersection with managers tasks");
-            }
-        } finally {
+        if (hasTimeIntersectionWithAnyTask(task)) {
+            // The stored task stays indexed only if the update is rejected
             if (isRemoved) {
                 tasksByTime.add(internalTask);
             }
+            throw new InvalidManagerTaskException(task.getType() + " with startTime=" + task.getStartTime() + " has intersection with managers tasks");
         }
         tasksByTime.add(task);
     }
 
+    /**
+     * Replaces the stored task in the time index without the intersection check,
+     * the old task is removed only if the index holds it and not another task with the same start time
+     */
+    private void replaceInTimeIndex(Task oldTask, Task newTask) {
+        if (oldTask != null && oldTask.getStartTime() != null) {
+            Task indexedTask = tasksByTime.ceiling(oldTask);
+            if (indexedTask != null && indexedTask.getId() == oldTask.getId()
+                    && taskTimeComparator.compare(indexedTask, oldTask) == 0) {
+                tasksByTime.remove(indexedTask);
+            }
+        }
+        if (newTask.getStartTime() != null) {
+            tasksByTime.add(newTask);
+        }
+    }
+
     private void removeFromTaskByTime(Task task) {
         if (task == null) {
             return;
@@ -384,6 +409,126 @@ public class InMemoryTaskManager implements TaskManager {
         return historyManager.getHistory();
     }
 
+    /**
+     * Report of the last time index rebuild after loading, empty if tasks were not loaded
+     */
+    public Optional<IndexRebuildReport> getIndexRebuildReport() {
+        return Optional.ofNullable(indexRebuildReport);
+    }
+
+    private IndexRebuildReport rebuildIndexes() {
+        long startNanos = System.nanoTime();
+        int intersectingCount = rebuildTimeIndex();
+        long timeIndexNanos = System.nanoTime() - startNanos;
+        startNanos = System.nanoTime();
+        rebuildEpicAggregates();
+        indexRebuildReport = new IndexRebuildReport(tasksByTime.size(), intersectingCount,
+                Duration.ofNanos(timeIndexNanos), Duration.ofNanos(System.nanoTime() - startNanos));
+        return indexRebuildReport;
+    }
+
+    /**
+     * Sorts Tasks and Subtasks with start time once, so intersecting tasks are found in one pass
+     * over the sorted array, and fills the time index from it.
+     * Returns the number of tasks intersecting in time with an earlier one.
+     */
+    private int rebuildTimeIndex() {
+        Task[] sortedTasks = new Task[tasks.size() + subtasks.size()];
+        int count = 0;
+        for (Task task : tasks.values()) {
+            if (task.getStartTime() != null) {
+                sortedTasks[count++] = task;
+            }
+        }
+        for (Subtask subtask : subtasks.values()) {
+            if (subtask.getStartTime() != null) {
+                sortedTasks[count++] = subtask;
+            }
+        }
+        Arrays.sort(sortedTasks, 0, count, taskTimeComparator);
+
+        int indexedCount = 0;
+        int intersectingCount = 0;
+        LocalDateTime maxEndTime = null;
+        for (int i = 0; i < count; i++) {
+            Task task = sortedTasks[i];
+            if (maxEndTime != null && !maxEndTime.isBefore(task.getStartTime())) {
+                intersectingCount++;
+                if (taskTimeComparator.compare(sortedTasks[indexedCount - 1], task) == 0) {
+                    continue;
+                }
+            }
+            sortedTasks[indexedCount++] = task;
+            if (maxEndTime == null || task.getEndTime().isAfter(maxEndTime)) {
+                maxEndTime = task.getEndTime();
+            }
+        }
+        tasksByTime.clear();
+        tasksByTime.addAll(Arrays.asList(sortedTasks).subList(0, indexedCount));
+        return intersectingCount;
+    }
+
+    /**
+     * Recomputes status, start and end time and duration of all Epics in one pass over Subtasks
+     */
+    private void rebuildEpicAggregates() {
+        Map<Integer, EpicAggregate> aggregates = new HashMap<>();
+        for (Subtask subtask : subtasks.values()) {
+            if (subtask.getEpic() != null) {
+                aggregates.computeIfAbsent(subtask.getEpic().getId(), id -> new EpicAggregate()).add(subtask);
+            }
+        }
+        EpicAggregate empty = new EpicAggregate();
+        for (Epic epic : epics.values()) {
+            aggregates.getOrDefault(epic.getId(), empty).applyTo(epic);
+        }
+    }
+
+    /**
+     * Status, time and duration of the Epic from its linked Subtasks, as rebuilt after load
+     */
+    private static void rebuildEpicAggregates(Epic epic) {
+        EpicAggregate aggregate = new EpicAggregate();
+        epic.getSubtasksList().forEach(aggregate::add);
+        aggregate.applyTo(epic);
+    }
+
+    private static final class EpicAggregate {
+        private int count;
+        private int newCount;
+        private int doneCount;
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+        private Duration duration = Duration.ZERO;
+
+        private void add(Subtask subtask) {
+            count++;
+            if (subtask.getStatus() == Status.NEW) {
+                newCount++;
+            } else if (subtask.getStatus() == Status.DONE) {
+                doneCount++;
+            }
+            LocalDateTime subtaskStartTime = subtask.getStartTime();
+            if (subtaskStartTime != null && (startTime == null || subtaskStartTime.isBefore(startTime))) {
+                startTime = subtaskStartTime;
+            }
+            LocalDateTime subtaskEndTime = subtask.getEndTime();
+            if (subtaskEndTime != null && (endTime == null || subtaskEndTime.isAfter(endTime))) {
+                endTime = subtaskEndTime;
+            }
+            if (subtask.getDuration() != null) {
+                duration = duration.plus(subtask.getDuration());
+            }
+        }
+
+        private void applyTo(Epic epic) {
+            epic.setStatus(count == newCount ? Status.NEW : count == doneCount ? Status.DONE : Status.IN_PROGRESS);
+            epic.setStartTime(startTime);
+            epic.setEndTime(endTime);
+            epic.setDuration(duration);
+        }
+    }
+
     private boolean hasTimeIntersectionTasks(Task task1, Task task2) {
         if (task1 == null || task2 == null) {
             return false;
@@ -446,14 +591,146 @@ public class InMemoryTaskManager implements TaskManager {
             }
         }
 
+        /**
+         * Adds the task or replaces the task with the same ID, keeping Epic-Subtask links, Epic status
+         * and the time index consistent. Time intersections are not checked, the task is already stored.
+         */
+        void putInternal(Task task) throws InvalidManagerTaskException {
+            if (task == null) {
+                throw new InvalidManagerTaskException("Task cannot be null.");
+            }
+            switch (task.getType()) {
+                case TASK -> manager.replaceInTimeIndex(manager.tasks.put(task.getId(), task), task);
+                case SUBTASK -> {
+                    Subtask subtask = (Subtask) task;
+                    Subtask oldSubtask = manager.subtasks.put(subtask.getId(), subtask);
+                    manager.replaceInTimeIndex(oldSubtask, subtask);
+                    if (oldSubtask != null) {
+                        unlinkSubtask(oldSubtask);
+                    }
+                    Epic epic = subtask.getEpic();
+                    if (epic != null) {
+                        Epic internalEpic = manager.epics.get(epic.getId());
+                        if (internalEpic != null) {
+                            internalEpic.addSubtasksList(subtask);
+                            manager.updateEpicById(internalEpic.getId());
+                        }
+                    }
+                }
+                case EPIC -> {
+                    Epic epic = (Epic) task;
+                    Epic oldEpic = manager.epics.put(epic.getId(), epic);
+                    if (oldEpic != null) {
+                        oldEpic.getSubtasksList().forEach(epic::addSubtasksList);
+                        manager.updateEpicById(epic.getId());
+                    }
+                }
+            }
+        }
+
+        private void unlinkSubtask(Subtask subtask) {
+            Epic epic = subtask.getEpic();
+            if (epic == null) {
+                return;
+            }
+            Epic internalEpic = manager.epics.get(epic.getId());
+            if (internalEpic != null) {
+                internalEpic.removeSubtask(subtask);
+                manager.updateEpicById(internalEpic.getId());
+            }
+        }
+
+        /**
+         * Internal task instance without copying and without adding to history
+         */
+        Task getInternal(Type type, int id) {
+            return switch (type) {
+                case TASK -> manager.tasks.get(id);
+                case SUBTASK -> manager.subtasks.get(id);
+                case EPIC -> manager.epics.get(id);
+            };
+        }
+
+        /**
+         * Read-only views of internal storage, for iteration without copying
+         */
+        Collection<Task> getInternalTasks() {
+            return Collections.unmodifiableCollection(manager.tasks.values());
+        }
+
+        Collection<Epic> getInternalEpics() {
+            return Collections.unmodifiableCollection(manager.epics.values());
+        }
+
+        Collection<Subtask> getInternalSubtasks() {
+            return Collections.unmodifiableCollection(manager.subtasks.values());
+        }
+
+        /**
+         * Tasks of the time index in order, iterating at most as many tasks as the index had at the start,
+         * so a read racing with a writer (see StampedTaskManager) always ends
+         */
+        List<Task> getPrioritizedTasksBounded() {
+            int size = manager.tasksByTime.size();
+            List<Task> prioritizedTasks = new ArrayList<>(size);
+            Iterator<Task> iterator = manager.tasksByTime.iterator();
+            while (prioritizedTasks.size() < size && iterator.hasNext()) {
+                prioritizedTasks.add(iterator.next());
+            }
+            return Collections.unmodifiableList(prioritizedTasks);
+        }
+
+        /**
+         * High-water mark of the ID allocator, no allocated ID is equal to or above it
+         */
+        int getIdCounter() {
+            return manager.idAllocator.getHighWaterMark();
+        }
+
+        void addToHistory(Task task) {
+            manager.addToHistory(task);
+        }
+
         void setIdCounter(int idCounter) {
-            manager.idCounter = idCounter;
+            manager.idAllocator.reset(idCounter);
+        }
+
+        /**
+         * Gets the new high-water mark before IDs of a new block are allocated, see IdAllocator
+         */
+        void setIdReservationListener(IntConsumer listener) {
+            manager.idAllocator.setReservationListener(listener);
+        }
+
+        /**
+         * Removes all tasks keeping the history and the ID counter, before the storage is loaded again
+         */
+        void clearInternal() {
+            manager.tasks.clear();
+            manager.subtasks.clear();
+            manager.epics.clear();
+            manager.tasksByTime.clear();
+        }
+
+        /**
+         * Rebuilds the time index and Epic aggregates once after tasks were loaded by addInternal or putInternal,
+         * which do not maintain them
+         */
+        IndexRebuildReport rebuildIndexes() {
+            return manager.rebuildIndexes();
+        }
+
+        /**
+         * Aggregates of an Epic loaded apart from the internal storage, from the Subtasks linked to it
+         */
+        void rebuildEpicAggregates(Epic epic) {
+            InMemoryTaskManager.rebuildEpicAggregates(epic);
         }
 
     }
 
-    TaskManagerHelper getHelper() {
-        return new TaskManagerHelper(this);
+    final TaskManagerHelper getHelper() {
+        return helper;
     }
 
 }
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.time.Duration;
+
+/**
+ * Result of rebuilding the time index and Epic aggregates after loading tasks:
+ * <ul>
+ *     <li>indexedTasks - Tasks and Subtasks added to the time index</li>
+ *     <li>intersectingTasks - loaded tasks intersecting in time with an earlier one, tasks with the same start time
+ *     as an earlier one are not indexed</li>
+ *     <li>timeIndexTime, epicAggregatesTime - time spent on each step</li>
+ * </ul>
+ */
+public record IndexRebuildReport(int indexedTasks, int intersectingTasks, Duration timeIndexTime,
+                                 Duration epicAggregatesTime) {
+}
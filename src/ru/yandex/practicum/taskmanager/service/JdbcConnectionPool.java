@@ -0,0 +1,89 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Minimal pool of JDBC connections opened by DriverManager: at most maxSize connections are in use,
+ * released connections are kept open for reuse
+ */
+class JdbcConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final Semaphore permits;
+    private final Deque<Connection> idleConnections = new ArrayDeque<>();
+    private boolean closed;
+
+    JdbcConnectionPool(String url, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Idle connection or a new one, blocks while all connections are in use
+     */
+    Connection borrow() throws SQLException {
+        permits.acquireUninterruptibly();
+        try {
+            Connection connection;
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("Connection pool is closed: " + url);
+                }
+                connection = idleConnections.pollFirst();
+            }
+            if (connection == null || connection.isClosed()) {
+                connection = DriverManager.getConnection(url);
+            }
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the connection to the pool in auto-commit mode, a broken connection is closed
+     */
+    void release(Connection connection) {
+        try {
+            boolean reusable;
+            synchronized (this) {
+                reusable = !closed && !connection.isClosed();
+                if (reusable) {
+                    connection.setAutoCommit(true);
+                    idleConnections.addFirst(connection);
+                }
+            }
+            if (!reusable) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        idleConnections.forEach(JdbcConnectionPool::closeQuietly);
+        idleConnections.clear();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // The connection is dropped anyway
+        }
+    }
+}
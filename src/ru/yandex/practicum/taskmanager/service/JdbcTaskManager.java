@@ -0,0 +1,763 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Task manager keeping tasks in a single table of a relational database accessed over JDBC (e.g. an embedded
+ * file-local H2 database, the driver com.h2database:h2 must be on the classpath), connections are taken from a small pool.
+ * Prioritized tasks, subtasks of an Epic and the time intersection check are answered by indexed queries,
+ * Epic status, start and end time and duration are recomputed by an aggregate query and stored in the Epic row.
+ * Mutations run in a transaction, history is kept in memory.
+ */
+public class JdbcTaskManager implements TaskManager, AutoCloseable {
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    private static final int BATCH_SIZE = 1000;
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS tasks ("
+                    + "id INTEGER PRIMARY KEY, "
+                    + "type VARCHAR(16) NOT NULL, "
+                    + "name VARCHAR(1000000), "
+                    + "description VARCHAR(1000000), "
+                    + "status VARCHAR(16) NOT NULL, "
+                    + "epic_id INTEGER, "
+                    + "start_time TIMESTAMP, "
+                    + "end_time TIMESTAMP, "
+                    + "duration_minutes BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS tasks_type_idx ON tasks (type)",
+            "CREATE INDEX IF NOT EXISTS tasks_epic_id_idx ON tasks (epic_id)",
+            "CREATE INDEX IF NOT EXISTS tasks_status_idx ON tasks (status)",
+            "CREATE INDEX IF NOT EXISTS tasks_start_time_idx ON tasks (start_time, end_time)",
+            // Floor neighbour lookup, not every database scans an ascending index backwards
+            "CREATE INDEX IF NOT EXISTS tasks_start_time_desc_idx ON tasks (start_time DESC)",
+            "CREATE TABLE IF NOT EXISTS id_mark (id INTEGER PRIMARY KEY, next_id INTEGER NOT NULL)"
+    };
+    private static final String SELECT = "SELECT t.id, t.type, t.name, t.description, t.status, t.epic_id, "
+            + "t.start_time, t.end_time, t.duration_minutes, e.name AS epic_name, "
+            + "e.description AS epic_description, e.status AS epic_status "
+            + "FROM tasks t LEFT JOIN tasks e ON e.id = t.epic_id ";
+    private static final String INSERT = "INSERT INTO tasks "
+            + "(id, type, name, description, status, epic_id, start_time, end_time, duration_minutes) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE tasks SET name = ?, description = ?, status = ?, "
+            + "start_time = ?, end_time = ?, duration_minutes = ? WHERE id = ?";
+    private static final String FLOOR_NEIGHBOUR = "SELECT end_time FROM tasks WHERE type <> 'EPIC' "
+            + "AND start_time <= ? AND id <> ? ORDER BY start_time DESC FETCH FIRST 1 ROWS ONLY";
+    private static final String CEILING_NEIGHBOUR = "SELECT start_time FROM tasks WHERE type <> 'EPIC' "
+            + "AND start_time > ? AND id <> ? ORDER BY start_time FETCH FIRST 1 ROWS ONLY";
+    private static final String EPIC_AGGREGATES = "SELECT COUNT(*), "
+            + "SUM(CASE WHEN status = 'NEW' THEN 1 ELSE 0 END), "
+            + "SUM(CASE WHEN status = 'DONE' THEN 1 ELSE 0 END), "
+            + "MIN(start_time), MAX(end_time), SUM(duration_minutes) "
+            + "FROM tasks WHERE epic_id = ? AND type = 'SUBTASK'";
+    private static final String UPDATE_EPIC_AGGREGATES = "UPDATE tasks SET status = ?, start_time = ?, "
+            + "end_time = ?, duration_minutes = ? WHERE id = ?";
+
+    private final String url;
+    private final JdbcConnectionPool pool;
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    private final IdAllocator idAllocator = new IdAllocator(1, IdAllocator.DEFAULT_BLOCK_SIZE);
+
+    public JdbcTaskManager(String url) {
+        this(url, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Connects to the database by the JDBC URL, creating the table and indexes if they do not exist
+     */
+    public JdbcTaskManager(String url, int poolSize) {
+        this.url = url;
+        pool = new JdbcConnectionPool(url, poolSize);
+        try {
+            idAllocator.reset(update(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : SCHEMA) {
+                        statement.execute(sql);
+                    }
+                }
+                return readIdMark(connection);
+            }));
+            JdbcConnectionPool markPool = pool;
+            idAllocator.setReservationListener(mark -> writeIdMark(markPool, url, mark));
+        } catch (InvalidManagerTaskException | RuntimeException e) {
+            pool.close();
+            throw new ManagerLoadException("Failed to open database for Task manager: " + url, e);
+        }
+    }
+
+    /**
+     * The persisted ID high-water mark, IDs below it may be used, so IDs of deleted tasks are not reused.
+     * Stored IDs are the lower bound for a database written without the mark.
+     */
+    private static int readIdMark(Connection connection) throws SQLException {
+        int nextId;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM tasks")) {
+            resultSet.next();
+            nextId = resultSet.getInt(1) + 1;
+        }
+        List<Integer> marks = selectIds(connection, "SELECT next_id FROM id_mark WHERE id = 1");
+        if (marks.isEmpty()) {
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO id_mark (id, next_id) VALUES (1, ?)")) {
+                statement.setInt(1, nextId);
+                statement.executeUpdate();
+            }
+            return nextId;
+        }
+        return Math.max(nextId, marks.getFirst());
+    }
+
+    /**
+     * Persists the mark of a new ID block before its IDs are used, once per block, the mark never goes down
+     */
+    private static void writeIdMark(JdbcConnectionPool pool, String url, int mark) {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            connection.setAutoCommit(true);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE id_mark SET next_id = ? WHERE id = 1 AND next_id < ?")) {
+                statement.setInt(1, mark);
+                statement.setInt(2, mark);
+                statement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new ManagerSaveException("Failed to save ID high-water mark to database: " + url, e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlQuery<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface SqlUpdate<T> {
+        T execute(Connection connection) throws SQLException, InvalidManagerTaskException;
+    }
+
+    private <T> T query(SqlQuery<T> work) {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            return work.execute(connection);
+        } catch (SQLException e) {
+            throw new ManagerLoadException("Failed to read tasks from database: " + url, e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    /**
+     * Runs the work in a transaction, which is rolled back on any error
+     */
+    private <T> T update(SqlUpdate<T> work) throws InvalidManagerTaskException {
+        Connection connection = null;
+        try {
+            connection = pool.borrow();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.execute(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | InvalidManagerTaskException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ManagerSaveException("Failed to write tasks to database: " + url, e);
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    /**
+     * Update which cannot fail on task validation
+     */
+    private void updateUnchecked(SqlUpdate<Void> work) {
+        try {
+            update(work);
+        } catch (InvalidManagerTaskException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void addToHistory(Task task) {
+        synchronized (historyManager) {
+            historyManager.add(task);
+        }
+    }
+
+    private void removeFromHistory(List<Integer> ids) {
+        synchronized (historyManager) {
+            ids.forEach(historyManager::remove);
+        }
+    }
+
+    private static Task readTask(ResultSet resultSet) throws SQLException {
+        int id = resultSet.getInt("id");
+        Type type = Type.valueOf(resultSet.getString("type"));
+        String name = resultSet.getString("name");
+        String description = resultSet.getString("description");
+        Status status = Status.valueOf(resultSet.getString("status"));
+        LocalDateTime startTime = resultSet.getObject("start_time", LocalDateTime.class);
+        Duration duration = Duration.ofMinutes(resultSet.getLong("duration_minutes"));
+        return switch (type) {
+            case TASK -> Task.createForDeserialization(id, name, description, status, startTime, duration);
+            case SUBTASK -> {
+                int epicId = resultSet.getInt("epic_id");
+                Epic epic = resultSet.wasNull() ? null : Epic.createForDeserialization(epicId,
+                        resultSet.getString("epic_name"), resultSet.getString("epic_description"),
+                        Status.valueOf(resultSet.getString("epic_status")));
+                yield Subtask.createForDeserialization(id, name, description, status, epic, startTime, duration);
+            }
+            case EPIC -> {
+                Epic epic = Epic.createForDeserialization(id, name, description, status);
+                epic.setStartTime(startTime);
+                epic.setEndTime(resultSet.getObject("end_time", LocalDateTime.class));
+                epic.setDuration(duration);
+                yield epic;
+            }
+        };
+    }
+
+    private static <T extends Task> List<T> readTasks(PreparedStatement statement, Class<T> taskClass) throws SQLException {
+        List<T> tasks = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                tasks.add(taskClass.cast(readTask(resultSet)));
+            }
+        }
+        return tasks;
+    }
+
+    private static <T extends Task> List<T> selectByType(Connection connection, Type type, Class<T> taskClass) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT + "WHERE t.type = ? ORDER BY t.id")) {
+            statement.setString(1, type.name());
+            return readTasks(statement, taskClass);
+        }
+    }
+
+    private static <T extends Task> Optional<T> selectById(Connection connection, Type type, int id, Class<T> taskClass) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT + "WHERE t.id = ? AND t.type = ?")) {
+            statement.setInt(1, id);
+            statement.setString(2, type.name());
+            return readTasks(statement, taskClass).stream().findFirst();
+        }
+    }
+
+    private static List<Subtask> selectSubtasksOf(Connection connection, int epicId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                SELECT + "WHERE t.epic_id = ? AND t.type = 'SUBTASK' ORDER BY t.id")) {
+            statement.setInt(1, epicId);
+            return readTasks(statement, Subtask.class);
+        }
+    }
+
+    private static List<Integer> selectIds(Connection connection, String sql, Object... parameters) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static boolean exists(Connection connection, Type type, int id) throws SQLException {
+        return id != 0 && !selectIds(connection, "SELECT id FROM tasks WHERE id = ? AND type = ?", id, type.name()).isEmpty();
+    }
+
+    private static void setTime(PreparedStatement statement, int index, LocalDateTime time) throws SQLException {
+        if (time != null) {
+            statement.setObject(index, time);
+        } else {
+            statement.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private static long getMinutes(Task task) {
+        return task.getDuration() != null ? task.getDuration().toMinutes() : 0;
+    }
+
+    /**
+     * Sets insert parameters of the task, Subtask keeps the given Epic ID
+     */
+    private static void setInsertParameters(PreparedStatement statement, Task task, Integer epicId) throws SQLException {
+        statement.setInt(1, task.getId());
+        statement.setString(2, task.getType().name());
+        statement.setString(3, task.getName());
+        statement.setString(4, task.getDescription());
+        statement.setString(5, task.getStatus().name());
+        if (epicId != null) {
+            statement.setInt(6, epicId);
+        } else {
+            statement.setNull(6, Types.INTEGER);
+        }
+        setTime(statement, 7, task.getStartTime());
+        setTime(statement, 8, task.getEndTime());
+        statement.setLong(9, getMinutes(task));
+    }
+
+    private static void insert(Connection connection, Task task, Integer epicId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+            setInsertParameters(statement, task, epicId);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Time intersection with any stored Task or Subtask other than the task itself, the same closed
+     * intervals as in InMemoryTaskManager. Stored intervals do not intersect, so only the nearest task
+     * starting at or before the task and the nearest one starting after it are checked, as in
+     * ConcurrentTaskManager, each of them is one lookup in the start time index.
+     */
+    private static void checkTimeIntersection(Connection connection, Task task) throws SQLException, InvalidManagerTaskException {
+        if (task.getStartTime() == null) {
+            return;
+        }
+        LocalDateTime floorEndTime = selectNeighbourTime(connection, FLOOR_NEIGHBOUR, task);
+        LocalDateTime ceilingStartTime = selectNeighbourTime(connection, CEILING_NEIGHBOUR, task);
+        if (floorEndTime != null && !floorEndTime.isBefore(task.getStartTime())
+                || ceilingStartTime != null && !ceilingStartTime.isAfter(task.getEndTime())) {
+            throw new InvalidManagerTaskException(task.getType() + " with startTime=" + task.getStartTime() + " has intersection with managers tasks");
+        }
+    }
+
+    private static LocalDateTime selectNeighbourTime(Connection connection, String sql, Task task) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setObject(1, task.getStartTime());
+            statement.setInt(2, task.getId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getObject(1, LocalDateTime.class) : null;
+            }
+        }
+    }
+
+    /**
+     * Recomputes status, start and end time and duration of the Epic by its Subtasks in one aggregate query
+     */
+    private static void updateEpicAggregates(Connection connection, int epicId) throws SQLException {
+        Status status;
+        LocalDateTime startTime;
+        LocalDateTime endTime;
+        long minutes;
+        try (PreparedStatement statement = connection.prepareStatement(EPIC_AGGREGATES)) {
+            statement.setInt(1, epicId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                long count = resultSet.getLong(1);
+                long newCount = resultSet.getLong(2);
+                long doneCount = resultSet.getLong(3);
+                status = count == newCount ? Status.NEW : count == doneCount ? Status.DONE : Status.IN_PROGRESS;
+                startTime = resultSet.getObject(4, LocalDateTime.class);
+                endTime = resultSet.getObject(5, LocalDateTime.class);
+                minutes = resultSet.getLong(6);
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_EPIC_AGGREGATES)) {
+            statement.setString(1, status.name());
+            setTime(statement, 2, startTime);
+            setTime(statement, 3, endTime);
+            statement.setLong(4, minutes);
+            statement.setInt(5, epicId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<Integer> deleteByType(Connection connection, Type type) throws SQLException {
+        List<Integer> ids = selectIds(connection, "SELECT id FROM tasks WHERE type = ?", type.name());
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM tasks WHERE type = ?")) {
+            statement.setString(1, type.name());
+            statement.executeUpdate();
+        }
+        return ids;
+    }
+
+    /**
+     * Copies all tasks of the source manager keeping their IDs, in one transaction with batched inserts.
+     * The source is expected to be consistent, time intersections are not checked.
+     */
+    public synchronized void importTasks(TaskManager source) {
+        List<Task> tasks = new ArrayList<>(source.getTasks());
+        tasks.addAll(source.getEpics());
+        List<Subtask> subtasks = source.getSubtasks();
+        updateUnchecked(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                int batchCount = 0;
+                for (Task task : tasks) {
+                    setInsertParameters(statement, task, null);
+                    statement.addBatch();
+                    if (++batchCount % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                for (Subtask subtask : subtasks) {
+                    setInsertParameters(statement, subtask, subtask.getEpic() != null ? subtask.getEpic().getId() : null);
+                    statement.addBatch();
+                    if (++batchCount % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            for (Epic epic : source.getEpics()) {
+                updateEpicAggregates(connection, epic.getId());
+            }
+            return null;
+        });
+        tasks.addAll(subtasks);
+        int nextId = idAllocator.getHighWaterMark();
+        for (Task task : tasks) {
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+        // Imported IDs are stored, so they are the lower bound of the mark on the next open
+        idAllocator.reset(nextId);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    @Override
+    public List<Task> getTasks() {
+        return query(connection -> selectByType(connection, Type.TASK, Task.class));
+    }
+
+    @Override
+    public List<Subtask> getSubtasks() {
+        return query(connection -> selectByType(connection, Type.SUBTASK, Subtask.class));
+    }
+
+    /**
+     * Epics with their Subtasks, loaded by two queries
+     */
+    @Override
+    public List<Epic> getEpics() {
+        return query(connection -> {
+            List<Epic> epics = selectByType(connection, Type.EPIC, Epic.class);
+            Map<Integer, Epic> epicsById = new HashMap<>();
+            epics.forEach(epic -> epicsById.put(epic.getId(), epic));
+            for (Subtask subtask : selectByType(connection, Type.SUBTASK, Subtask.class)) {
+                Epic epic = subtask.getEpic() != null ? epicsById.get(subtask.getEpic().getId()) : null;
+                if (epic != null) {
+                    epic.addSubtasksList(subtask);
+                }
+            }
+            return epics;
+        });
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            ids.addAll(deleteByType(connection, Type.TASK));
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            ids.addAll(deleteByType(connection, Type.SUBTASK));
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE tasks SET status = 'NEW', "
+                    + "start_time = NULL, end_time = NULL, duration_minutes = 0 WHERE type = 'EPIC'")) {
+                statement.executeUpdate();
+            }
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            ids.addAll(deleteByType(connection, Type.SUBTASK));
+            ids.addAll(deleteByType(connection, Type.EPIC));
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        Optional<Task> task = query(connection -> selectById(connection, Type.TASK, id, Task.class));
+        task.ifPresent(this::addToHistory);
+        return task;
+    }
+
+    @Override
+    public Optional<Subtask> getSubtaskById(int id) {
+        Optional<Subtask> subtask = query(connection -> selectById(connection, Type.SUBTASK, id, Subtask.class));
+        subtask.ifPresent(this::addToHistory);
+        return subtask;
+    }
+
+    @Override
+    public Optional<Epic> getEpicById(int id) {
+        Optional<Epic> epic = query(connection -> {
+            Optional<Epic> loaded = selectById(connection, Type.EPIC, id, Epic.class);
+            if (loaded.isPresent()) {
+                selectSubtasksOf(connection, id).forEach(loaded.get()::addSubtasksList);
+            }
+            return loaded;
+        });
+        epic.ifPresent(this::addToHistory);
+        return epic;
+    }
+
+    @Override
+    public Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        return query(connection -> selectById(connection, Type.SUBTASK, subtask.getId(), Subtask.class)
+                .map(Subtask::getEpic));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        return query(connection -> selectSubtasksOf(connection, epicId));
+    }
+
+    @Override
+    public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy(idAllocator.nextId());
+        internalTask.setStatus(Status.NEW);
+        update(connection -> {
+            checkTimeIntersection(connection, internalTask);
+            insert(connection, internalTask, null);
+            return null;
+        });
+        return internalTask.getId();
+    }
+
+    @Override
+    public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Subtask internalSubtask = subtask.copy(idAllocator.nextId());
+        internalSubtask.setStatus(Status.NEW);
+        update(connection -> {
+            if (!exists(connection, Type.EPIC, epic.getId())) {
+                throw new InvalidManagerTaskException(String.format("Epic with ID=%d does not exists in manager for Subtask addition", epic.getId()));
+            }
+            checkTimeIntersection(connection, internalSubtask);
+            insert(connection, internalSubtask, epic.getId());
+            updateEpicAggregates(connection, epic.getId());
+            return null;
+        });
+        return internalSubtask.getId();
+    }
+
+    @Override
+    public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic internalEpic = epic.copy(idAllocator.nextId());
+        internalEpic.setStatus(Status.NEW);
+        internalEpic.setStartTime(null);
+        internalEpic.setEndTime(null);
+        internalEpic.setDuration(Duration.ZERO);
+        update(connection -> {
+            insert(connection, internalEpic, null);
+            return null;
+        });
+        return internalEpic.getId();
+    }
+
+    private static void updateRow(Connection connection, Task task) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+            statement.setString(1, task.getName());
+            statement.setString(2, task.getDescription());
+            statement.setString(3, task.getStatus().name());
+            setTime(statement, 4, task.getStartTime());
+            setTime(statement, 5, task.getEndTime());
+            statement.setLong(6, getMinutes(task));
+            statement.setInt(7, task.getId());
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        update(connection -> {
+            if (!exists(connection, Type.TASK, task.getId())) {
+                throw new InvalidManagerTaskException(String.format("Task ID=%d does not exists to update.", task.getId()));
+            }
+            checkTimeIntersection(connection, task);
+            updateRow(connection, task);
+            return null;
+        });
+    }
+
+    /**
+     * Subtask stays linked to its stored Epic
+     */
+    @Override
+    public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        update(connection -> {
+            List<Integer> epicIds = selectIds(connection,
+                    "SELECT epic_id FROM tasks WHERE id = ? AND type = 'SUBTASK'", subtask.getId());
+            if (subtask.getId() == 0 || epicIds.isEmpty()) {
+                throw new InvalidManagerTaskException(String.format("Subtask ID=%d does not exists to update.", subtask.getId()));
+            }
+            checkTimeIntersection(connection, subtask);
+            updateRow(connection, subtask);
+            updateEpicAggregates(connection, epicIds.getFirst());
+            return null;
+        });
+    }
+
+    /**
+     * Only name and description of the Epic are updated, the rest follows its Subtasks
+     */
+    @Override
+    public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        update(connection -> {
+            if (!exists(connection, Type.EPIC, epic.getId())) {
+                throw new InvalidManagerTaskException(String.format("Epic ID=%d does not exists to update.", epic.getId()));
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE tasks SET name = ?, description = ? WHERE id = ?")) {
+                statement.setString(1, epic.getName());
+                statement.setString(2, epic.getDescription());
+                statement.setInt(3, epic.getId());
+                statement.executeUpdate();
+            }
+            updateEpicAggregates(connection, epic.getId());
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void deleteTaskById(int id) {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM tasks WHERE id = ? AND type = 'TASK'")) {
+                statement.setInt(1, id);
+                if (statement.executeUpdate() > 0) {
+                    ids.add(id);
+                }
+            }
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized void deleteSubtaskById(int id) {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            List<Integer> epicIds = selectIds(connection,
+                    "SELECT epic_id FROM tasks WHERE id = ? AND type = 'SUBTASK'", id);
+            if (epicIds.isEmpty()) {
+                return null;
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM tasks WHERE id = ?")) {
+                statement.setInt(1, id);
+                statement.executeUpdate();
+            }
+            updateEpicAggregates(connection, epicIds.getFirst());
+            ids.add(id);
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized void deleteEpicById(int id) {
+        List<Integer> ids = new ArrayList<>();
+        updateUnchecked(connection -> {
+            if (!exists(connection, Type.EPIC, id)) {
+                return null;
+            }
+            ids.addAll(selectIds(connection, "SELECT id FROM tasks WHERE epic_id = ? AND type = 'SUBTASK'", id));
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM tasks WHERE id = ? OR (epic_id = ? AND type = 'SUBTASK')")) {
+                statement.setInt(1, id);
+                statement.setInt(2, id);
+                statement.executeUpdate();
+            }
+            ids.add(id);
+            return null;
+        });
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        synchronized (historyManager) {
+            return historyManager.getHistory();
+        }
+    }
+
+    /**
+     * Tasks and Subtasks with start time, ordered by the start time index
+     */
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return query(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    SELECT + "WHERE t.type <> 'EPIC' AND t.start_time IS NOT NULL ORDER BY t.start_time")) {
+                return readTasks(statement, Task.class);
+            }
+        });
+    }
+}
@@ -0,0 +1,374 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * File-backed manager which loads records on demand. On load only an index of the CSV file is built
+ * (record byte ranges, Epic-Subtask links, start times and durations, see CsvRecordIndex),
+ * tasks are read from the file on the first access by ID and kept in a bounded LRU cache,
+ * the least recently used records are evicted when the cache is full.
+ * <p>
+ * Lookups by ID, Subtasks of an Epic and the prioritized list are served from the index.
+ * Any other list query or a mutation loads the whole file once, from then on the manager works
+ * as FileBackedTaskManager. Only uncompressed CSV snapshots of SNAPSHOT and BACKGROUND modes are indexed,
+ * other storage files are loaded completely.
+ */
+public class LazyFileBackedTaskManager extends FileBackedTaskManager {
+
+    public static final int DEFAULT_MAX_CACHED_RECORDS = 1000;
+    private final Path storage;
+    private final Map<Integer, Task> recordCache;
+    private CsvRecordIndex index;
+    private FileChannel channel;
+    private boolean materialized;
+
+    public LazyFileBackedTaskManager(Path storage, StorageOptions options, int maxCachedRecords) {
+        super(storage, options);
+        if (options.mode() != StorageMode.SNAPSHOT && options.mode() != StorageMode.BACKGROUND) {
+            throw new IllegalArgumentException("Lazy loading supports SNAPSHOT and BACKGROUND modes only: "
+                    + options.mode());
+        }
+        if (options.snapshotFormat() != SnapshotFormat.CSV) {
+            throw new IllegalArgumentException("Lazy loading supports CSV snapshots only: " + options.snapshotFormat());
+        }
+        if (maxCachedRecords < 1) {
+            throw new IllegalArgumentException("Max cached records must be positive: " + maxCachedRecords);
+        }
+        this.storage = storage;
+        recordCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+                return size() > maxCachedRecords;
+            }
+        };
+    }
+
+    public static LazyFileBackedTaskManager loadLazily(Path file) {
+        return loadLazily(file, StorageOptions.of(StorageMode.SNAPSHOT), DEFAULT_MAX_CACHED_RECORDS);
+    }
+
+    public static LazyFileBackedTaskManager loadLazily(Path file, StorageOptions options, int maxCachedRecords) {
+        LazyFileBackedTaskManager taskManager = new LazyFileBackedTaskManager(file, options, maxCachedRecords);
+        taskManager.load();
+        return taskManager;
+    }
+
+    /**
+     * Indexes the storage file if it is a valid uncompressed snapshot, otherwise loads it completely
+     * (recovered previous snapshot or compressed file). Missing or empty file starts an empty manager.
+     */
+    @Override
+    synchronized void load() {
+        try {
+            SnapshotStore.Snapshot snapshot = new SnapshotStore(storage, false).recover();
+            if (snapshot == null) {
+                materialized = true;
+                return;
+            }
+            if (!snapshot.path().equals(storage) || Compression.isCompressed(storage)) {
+                materialize();
+                return;
+            }
+            index = CsvRecordIndex.build(storage, CSV_HEADER);
+            channel = FileChannel.open(storage, StandardOpenOption.READ);
+            helper.setIdCounter(Math.max(index.getMaxId() + 1, readIdMark()));
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to index CSV file: " + storage, e);
+        }
+    }
+
+    /**
+     * Loads all records, drops the index and the cache
+     */
+    private void materialize() {
+        if (materialized) {
+            return;
+        }
+        materialized = true;
+        index = null;
+        recordCache.clear();
+        closeChannel();
+        super.load();
+    }
+
+    synchronized boolean isMaterialized() {
+        return materialized;
+    }
+
+    synchronized int getCachedRecordCount() {
+        return recordCache.size();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to close CSV file: " + storage, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Cached record or the record read from the file, null if there is no record of the type with the ID
+     */
+    private Task getRecord(Type type, int id) {
+        CsvRecordIndex.Entry entry = index.get(id);
+        if (entry == null || entry.type() != type) {
+            return null;
+        }
+        Task task = recordCache.get(id);
+        if (task != null) {
+            return task;
+        }
+        task = readRecord(entry);
+        if (task instanceof Epic epic) {
+            for (int subtaskId : index.getSubtaskIds(id)) {
+                epic.addSubtasksList((Subtask) readRecord(index.get(subtaskId)));
+            }
+            helper.rebuildEpicAggregates(epic);
+        }
+        recordCache.put(id, task);
+        return task;
+    }
+
+    private Task readRecord(CsvRecordIndex.Entry entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset() + buffer.position()) == -1) {
+                    throw new ManagerLoadException("CSV file was truncated after indexing: " + storage);
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read record ID=" + entry.id() + " from CSV file: " + storage, e);
+        }
+        String line = new String(buffer.array(), StandardCharsets.UTF_8);
+        return TaskDeserializer.deserialize(line, this::readEpicRecord);
+    }
+
+    /**
+     * Epic link of a Subtask, without Subtasks like Epic links of a completely loaded file
+     */
+    private Epic readEpicRecord(int epicId) {
+        CsvRecordIndex.Entry entry = index.get(epicId);
+        if (entry == null || entry.type() != Type.EPIC) {
+            return null;
+        }
+        return (Epic) readRecord(entry);
+    }
+
+    @Override
+    public synchronized Optional<Task> getTaskById(int id) {
+        if (materialized) {
+            return super.getTaskById(id);
+        }
+        return Optional.ofNullable(getRecord(Type.TASK, id)).map(this::toHistoryCopy);
+    }
+
+    @Override
+    public synchronized Optional<Subtask> getSubtaskById(int id) {
+        if (materialized) {
+            return super.getSubtaskById(id);
+        }
+        return Optional.ofNullable((Subtask) getRecord(Type.SUBTASK, id)).map(this::toHistoryCopy);
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicById(int id) {
+        if (materialized) {
+            return super.getEpicById(id);
+        }
+        return Optional.ofNullable((Epic) getRecord(Type.EPIC, id)).map(this::toHistoryCopy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Task> T toHistoryCopy(T task) {
+        helper.addToHistory(task);
+        return (T) task.copy();
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        if (materialized) {
+            return super.getSubtasksByEpicId(epicId);
+        }
+        Epic epic = (Epic) getRecord(Type.EPIC, epicId);
+        return epic != null ? new ArrayList<>(epic.getSubtasksList()) : new ArrayList<>();
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        if (materialized) {
+            return super.getEpicBySubtask(subtask);
+        }
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        Subtask record = (Subtask) getRecord(Type.SUBTASK, subtask.getId());
+        return record != null ? Optional.ofNullable(record.getEpic()) : Optional.empty();
+    }
+
+    /**
+     * Tasks and Subtasks in the order of the time index, each one is read on demand
+     */
+    @Override
+    public synchronized List<Task> getPrioritizedTasks() {
+        if (materialized) {
+            return super.getPrioritizedTasks();
+        }
+        List<Task> prioritizedTasks = new ArrayList<>();
+        for (CsvRecordIndex.Entry entry : index.getEntriesByTime()) {
+            prioritizedTasks.add(getRecord(entry.type(), entry.id()));
+        }
+        return prioritizedTasks;
+    }
+
+    @Override
+    public synchronized List<Task> getTasks() {
+        materialize();
+        return super.getTasks();
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasks() {
+        materialize();
+        return super.getSubtasks();
+    }
+
+    @Override
+    public synchronized List<Epic> getEpics() {
+        materialize();
+        return super.getEpics();
+    }
+
+    @Override
+    public synchronized void exportCsv(Writer writer) throws IOException {
+        materialize();
+        super.exportCsv(writer);
+    }
+
+    @Override
+    public synchronized void exportCsv(OutputStream out) throws IOException {
+        materialize();
+        super.exportCsv(out);
+    }
+
+    @Override
+    public synchronized void exportBinary(OutputStream out) throws IOException {
+        materialize();
+        super.exportBinary(out);
+    }
+
+    @Override
+    public synchronized void compact() {
+        materialize();
+        super.compact();
+    }
+
+    @Override
+    public synchronized void close() {
+        closeChannel();
+        super.close();
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        materialize();
+        super.deleteTasks();
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        materialize();
+        super.deleteSubtasks();
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        materialize();
+        super.deleteEpics();
+    }
+
+    @Override
+    public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+        materialize();
+        return super.addTask(task);
+    }
+
+    @Override
+    public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        materialize();
+        return super.addSubtask(subtask, epic);
+    }
+
+    @Override
+    public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+        materialize();
+        return super.addEpic(epic);
+    }
+
+    @Override
+    public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+        materialize();
+        super.updateTask(task);
+    }
+
+    @Override
+    public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        materialize();
+        super.updateSubtask(subtask);
+    }
+
+    @Override
+    public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        materialize();
+        super.updateEpic(epic);
+    }
+
+    @Override
+    public synchronized void deleteTaskById(int id) {
+        materialize();
+        super.deleteTaskById(id);
+    }
+
+    @Override
+    public synchronized void clearAll() {
+        materialize();
+        super.clearAll();
+    }
+
+    @Override
+    public synchronized void deleteSubtaskById(int id) {
+        materialize();
+        super.deleteSubtaskById(id);
+    }
+
+    @Override
+    public synchronized void deleteEpicById(int id) {
+        materialize();
+        super.deleteEpicById(id);
+    }
+}
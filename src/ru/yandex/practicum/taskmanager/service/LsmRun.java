@@ -0,0 +1,365 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable sorted run of the LSM store: records in ascending key order, a sparse index of every
+ * INDEX_INTERVAL-th record and a bloom filter of all keys. File layout:
+ * <ul>
+ * <li>records - int key, int value length (-1 for a deletion tombstone), value bytes</li>
+ * <li>sparse index - int entry count, (int key, long record offset) entries</li>
+ * <li>bloom filter - int hash count, int word count, long words</li>
+ * <li>footer - long index offset, long bloom filter offset, int record count, int version, int magic 'TKSR'</li>
+ * </ul>
+ * Only the sparse index and the bloom filter are kept in memory, a lookup reads one index block of the file.
+ */
+class LsmRun implements Closeable {
+
+    private static final int MAGIC = 0x544B5352; // 'TKSR'
+    private static final int VERSION = 1;
+    private static final int FOOTER_SIZE = 28;
+    private static final int INDEX_INTERVAL = 32;
+    private static final int TOMBSTONE_LENGTH = -1;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Key and value of a record, null value is a deletion tombstone
+     */
+    record Entry(int key, byte[] value) {
+
+        boolean isTombstone() {
+            return value == null;
+        }
+    }
+
+    private final Path file;
+    private final long number;
+    private final FileChannel channel;
+    private final int recordCount;
+    private final long dataEnd;
+    private final int[] indexKeys;
+    private final long[] indexOffsets;
+    private final BloomFilter bloomFilter;
+
+    private LsmRun(Path file, long number, FileChannel channel, int recordCount, long dataEnd,
+                   int[] indexKeys, long[] indexOffsets, BloomFilter bloomFilter) {
+        this.file = file;
+        this.number = number;
+        this.channel = channel;
+        this.recordCount = recordCount;
+        this.dataEnd = dataEnd;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Writes the entries in ascending key order to a temporary file and atomically renames it to the run file.
+     * Returns null and writes nothing if no records are left after dropping tombstones.
+     */
+    static LsmRun write(Path file, long number, Iterator<Entry> entries, int expectedCount,
+                        boolean dropTombstones, boolean forced) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        BloomFilter bloomFilter = new BloomFilter(expectedCount);
+        int[] indexKeys = new int[expectedCount / INDEX_INTERVAL + 1];
+        long[] indexOffsets = new long[indexKeys.length];
+        int indexSize = 0;
+        int count = 0;
+        long offset = 0;
+        try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(tempChannel), IO_BUFFER_SIZE));
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (dropTombstones && entry.isTombstone()) {
+                    continue;
+                }
+                if (count % INDEX_INTERVAL == 0) {
+                    if (indexSize == indexKeys.length) {
+                        indexKeys = Arrays.copyOf(indexKeys, indexSize * 2);
+                        indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                    }
+                    indexKeys[indexSize] = entry.key();
+                    indexOffsets[indexSize] = offset;
+                    indexSize++;
+                }
+                out.writeInt(entry.key());
+                if (entry.isTombstone()) {
+                    out.writeInt(TOMBSTONE_LENGTH);
+                } else {
+                    out.writeInt(entry.value().length);
+                    out.write(entry.value());
+                }
+                offset += RECORD_HEADER_SIZE + (entry.isTombstone() ? 0 : entry.value().length);
+                bloomFilter.add(entry.key());
+                count++;
+            }
+            if (count > 0) {
+                long indexOffset = offset;
+                out.writeInt(indexSize);
+                for (int i = 0; i < indexSize; i++) {
+                    out.writeInt(indexKeys[i]);
+                    out.writeLong(indexOffsets[i]);
+                }
+                long bloomOffset = indexOffset + 4 + indexSize * 12L;
+                bloomFilter.write(out);
+                out.writeLong(indexOffset);
+                out.writeLong(bloomOffset);
+                out.writeInt(count);
+                out.writeInt(VERSION);
+                out.writeInt(MAGIC);
+                out.flush();
+                if (forced) {
+                    tempChannel.force(true);
+                }
+            }
+        }
+        if (count == 0) {
+            Files.delete(tempFile);
+            return null;
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file, number);
+    }
+
+    /**
+     * Opens the run file, reading its sparse index and bloom filter
+     */
+    static LsmRun open(Path file, long number) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new IOException("LSM run file is too short: " + file);
+            }
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            int recordCount = footer.getInt();
+            int version = footer.getInt();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Invalid LSM run file footer: " + file);
+            }
+            if (version != VERSION) {
+                throw new IOException("Unsupported LSM run file version: " + version);
+            }
+            if (indexOffset < 0 || bloomOffset < indexOffset || bloomOffset > size - FOOTER_SIZE) {
+                throw new IOException("LSM run file footer does not match the file size: " + file);
+            }
+            ByteBuffer index = readFully(channel, indexOffset, (int) (bloomOffset - indexOffset));
+            int indexSize = index.getInt();
+            int[] indexKeys = new int[indexSize];
+            long[] indexOffsets = new long[indexSize];
+            for (int i = 0; i < indexSize; i++) {
+                indexKeys[i] = index.getInt();
+                indexOffsets[i] = index.getLong();
+            }
+            BloomFilter bloomFilter = BloomFilter.read(readFully(channel, bloomOffset,
+                    (int) (size - FOOTER_SIZE - bloomOffset)));
+            return new LsmRun(file, number, channel, recordCount, indexOffset, indexKeys, indexOffsets, bloomFilter);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of LSM run file.");
+            }
+        }
+        return buffer.flip();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Record with the key, which may be a tombstone, or null if the run has no record with the key
+     */
+    Entry find(int key) throws IOException {
+        if (!bloomFilter.mightContain(key)) {
+            return null;
+        }
+        int block = Arrays.binarySearch(indexKeys, key);
+        if (block < 0) {
+            block = -block - 2;
+            if (block < 0) {
+                return null;
+            }
+        }
+        long blockStart = indexOffsets[block];
+        long blockEnd = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        ByteBuffer buffer = readFully(channel, blockStart, (int) (blockEnd - blockStart));
+        while (buffer.hasRemaining()) {
+            int recordKey = buffer.getInt();
+            int length = buffer.getInt();
+            if (recordKey > key) {
+                return null;
+            }
+            if (recordKey == key) {
+                if (length == TOMBSTONE_LENGTH) {
+                    return new Entry(key, null);
+                }
+                byte[] value = new byte[length];
+                buffer.get(value);
+                return new Entry(key, value);
+            }
+            if (length != TOMBSTONE_LENGTH) {
+                buffer.position(buffer.position() + length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sequential reader of all records in key order, independent of lookups
+     */
+    Cursor openCursor() throws IOException {
+        return new Cursor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    class Cursor implements Iterator<Entry>, Closeable {
+        private final DataInputStream in;
+        private int remaining = recordCount;
+
+        private Cursor() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER_SIZE));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            try {
+                int key = in.readInt();
+                int length = in.readInt();
+                if (length == TOMBSTONE_LENGTH) {
+                    return new Entry(key, null);
+                }
+                byte[] value = new byte[length];
+                in.readFully(value);
+                return new Entry(key, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read LSM run file: " + file, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Bloom filter of int keys with about 1% false positives at 10 bits per key,
+     * bit positions are derived from one 64-bit hash by double hashing
+     */
+    static class BloomFilter {
+        private static final int BITS_PER_KEY = 10;
+        private static final int HASH_COUNT = 7;
+        private final long[] words;
+        private final int hashCount;
+
+        BloomFilter(int expectedKeys) {
+            this(new long[Math.max(1, (int) ((Math.max(expectedKeys, 1) * (long) BITS_PER_KEY + 63) / 64))], HASH_COUNT);
+        }
+
+        private BloomFilter(long[] words, int hashCount) {
+            this.words = words;
+            this.hashCount = hashCount;
+        }
+
+        void add(int key) {
+            long hash = hash(key);
+            long bitCount = words.length * 64L;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod((int) hash + i * (hash >>> 32), bitCount);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(int key) {
+            long hash = hash(key);
+            long bitCount = words.length * 64L;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod((int) hash + i * (hash >>> 32), bitCount);
+                if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * SplitMix64 finalizer, spreads sequential IDs over all bits
+         */
+        private static long hash(int key) {
+            long z = key + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeInt(hashCount);
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        private static BloomFilter read(ByteBuffer buffer) throws IOException {
+            int hashCount = buffer.getInt();
+            int wordCount = buffer.getInt();
+            if (hashCount < 1 || wordCount < 1 || buffer.remaining() != wordCount * 8L) {
+                throw new IOException("Invalid LSM run bloom filter.");
+            }
+            long[] words = new long[wordCount];
+            buffer.asLongBuffer().get(words);
+            return new BloomFilter(words, hashCount);
+        }
+    }
+}
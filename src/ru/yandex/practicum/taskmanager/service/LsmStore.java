@@ -0,0 +1,533 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+/**
+ * Log-structured merge tree of int keys and byte array values in its own directory:
+ * <ul>
+ * <li>'wal.log' - write-ahead log of the memtable, every record is int CRC32C, int key, int value length
+ * (-1 for deletion) and value bytes</li>
+ * <li>'run-N.lsm' - immutable sorted runs, see LsmRun</li>
+ * <li>'MANIFEST' - header 'task-manager-lsm,1' and the numbers of live runs from the newest to the oldest,
+ * one per line</li>
+ * </ul>
+ * A write is appended to the log and put to the sorted in-memory memtable. A full memtable is written
+ * as the newest run, listed in the manifest, and the log is truncated.
+ * A lookup checks the memtable, then the runs from the newest to the oldest, skipping runs by their bloom filters.
+ * <p>
+ * Runs are merged in background by size tiers: a run of tier T holds up to memtableLimit * mergeThreshold^T
+ * records, and mergeThreshold adjacent runs of the same tier are merged into one run of the next tier
+ * in their place, so every record is rewritten about log(n) times. Deletion tombstones are dropped
+ * only by a merge including the oldest run.
+ * <p>
+ * Run files and the manifest are written to a temporary file and atomically renamed, run files not listed
+ * in the manifest are deleted on open, so a crash during a flush or a merge loses nothing.
+ */
+class LsmStore implements Closeable {
+
+    static final int DEFAULT_MEMTABLE_LIMIT = 4096;
+    static final int DEFAULT_MERGE_THRESHOLD = 4;
+    private static final String MANIFEST_FILE = "MANIFEST";
+    private static final String MANIFEST_HEADER = "task-manager-lsm,1";
+    private static final String LOG_FILE = "wal.log";
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".lsm";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int LOG_RECORD_HEADER_SIZE = 12;
+    private static final int DELETION_LENGTH = -1;
+
+    /**
+     * Receives live records in ascending key order
+     */
+    interface Visitor {
+        void visit(int key, byte[] value) throws IOException;
+    }
+
+    private final Path directory;
+    private final int memtableLimit;
+    private final int mergeThreshold;
+    private final boolean forced;
+    /**
+     * Null value is a deletion tombstone, which must hide the key in older runs
+     */
+    private final NavigableMap<Integer, byte[]> memtable = new TreeMap<>();
+    /**
+     * Live runs from the newest to the oldest
+     */
+    private final List<LsmRun> runs = new ArrayList<>();
+    private long nextNumber = 1;
+    private FileChannel log;
+    private final Object mergeLock = new Object();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private ExecutorService mergeExecutor;
+    private volatile IOException mergeError;
+
+    LsmStore(Path directory, int memtableLimit, int mergeThreshold, boolean forced) {
+        if (memtableLimit < 1) {
+            throw new IllegalArgumentException("Memtable limit must be positive: " + memtableLimit);
+        }
+        if (mergeThreshold < 2) {
+            throw new IllegalArgumentException("Merge threshold must be at least 2: " + mergeThreshold);
+        }
+        this.directory = directory;
+        this.memtableLimit = memtableLimit;
+        this.mergeThreshold = mergeThreshold;
+        this.forced = forced;
+    }
+
+    /**
+     * Opens the runs listed in the manifest, deletes unlisted run files and replays the log to the memtable
+     */
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        for (long number : readManifest()) {
+            runs.add(LsmRun.open(runPath(number), number));
+            nextNumber = Math.max(nextNumber, number + 1);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, RUN_PREFIX + "*")) {
+            for (Path file : files) {
+                if (runs.stream().noneMatch(run -> run.getFile().equals(file))) {
+                    Files.delete(file);
+                }
+            }
+        }
+        log = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long validLength = replayLog();
+        // A torn record at the end of the log was never acknowledged
+        log.truncate(validLength);
+        log.position(validLength);
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    private List<Long> readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        List<Long> numbers = new ArrayList<>();
+        if (!Files.exists(manifest)) {
+            return numbers;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                throw new IllegalArgumentException("Invalid LSM manifest header. Expected: " + MANIFEST_HEADER);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    numbers.add(Long.parseLong(line.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid LSM manifest: " + manifest, e);
+        }
+        return numbers;
+    }
+
+    private void writeManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST_FILE);
+        Path tempFile = directory.resolve(MANIFEST_FILE + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            writer.write(MANIFEST_HEADER);
+            writer.write(System.lineSeparator());
+            for (LsmRun run : runs) {
+                writer.write(String.valueOf(run.getNumber()));
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+            if (forced) {
+                channel.force(true);
+            }
+        }
+        Files.move(tempFile, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path runPath(long number) {
+        return directory.resolve(RUN_PREFIX + number + RUN_SUFFIX);
+    }
+
+    /**
+     * Applies log records to the memtable up to the first torn or corrupted record, returns the valid log length
+     */
+    private long replayLog() throws IOException {
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log)));
+        while (true) {
+            try {
+                int crc = in.readInt();
+                int key = in.readInt();
+                int length = in.readInt();
+                if (length < DELETION_LENGTH || length > log.size()) {
+                    break;
+                }
+                byte[] value = null;
+                if (length != DELETION_LENGTH) {
+                    value = new byte[length];
+                    in.readFully(value);
+                }
+                if (crc != logRecordChecksum(key, length, value)) {
+                    break;
+                }
+                memtable.put(key, value);
+                validLength += LOG_RECORD_HEADER_SIZE + Math.max(length, 0);
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return validLength;
+    }
+
+    private static int logRecordChecksum(int key, int length, byte[] value) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(8).putInt(key).putInt(length).flip());
+        if (value != null) {
+            crc.update(value);
+        }
+        return (int) crc.getValue();
+    }
+
+    private void appendLog(int key, byte[] value) throws IOException {
+        int length = value != null ? value.length : DELETION_LENGTH;
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_HEADER_SIZE + Math.max(length, 0));
+        record.putInt(logRecordChecksum(key, length, value)).putInt(key).putInt(length);
+        if (value != null) {
+            record.put(value);
+        }
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        if (forced) {
+            log.force(false);
+        }
+    }
+
+    /**
+     * Value of the key or null if there is no such key
+     */
+    synchronized byte[] get(int key) throws IOException {
+        if (memtable.containsKey(key)) {
+            return memtable.get(key);
+        }
+        for (LsmRun run : runs) {
+            LsmRun.Entry entry = run.find(key);
+            if (entry != null) {
+                return entry.value();
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(int key, byte[] value) throws IOException {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null.");
+        }
+        write(key, value);
+    }
+
+    synchronized void delete(int key) throws IOException {
+        write(key, null);
+    }
+
+    private void write(int key, byte[] value) throws IOException {
+        throwMergeError();
+        appendLog(key, value);
+        memtable.put(key, value);
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the memtable as the newest run and truncates the log
+     */
+    synchronized void flush() throws IOException {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        long number = nextNumber++;
+        Iterator<LsmRun.Entry> entries = memtable.entrySet().stream()
+                .map(entry -> new LsmRun.Entry(entry.getKey(), entry.getValue()))
+                .iterator();
+        // Tombstones are kept, they hide the keys in older runs until the merge
+        LsmRun run = LsmRun.write(runPath(number), number, entries, memtable.size(), runs.isEmpty(), forced);
+        if (run != null) {
+            runs.addFirst(run);
+            writeManifest();
+        }
+        memtable.clear();
+        log.truncate(0);
+        log.position(0);
+        if (forced) {
+            log.force(true);
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    /**
+     * Visits the live records of the memtable and all runs, the newest record of every key wins
+     */
+    synchronized void scan(Visitor visitor) throws IOException {
+        List<Iterator<LsmRun.Entry>> sources = new ArrayList<>();
+        sources.add(memtable.entrySet().stream()
+                .map(entry -> new LsmRun.Entry(entry.getKey(), entry.getValue()))
+                .iterator());
+        List<LsmRun.Cursor> cursors = new ArrayList<>();
+        try {
+            for (LsmRun run : runs) {
+                LsmRun.Cursor cursor = run.openCursor();
+                cursors.add(cursor);
+                sources.add(cursor);
+            }
+            Iterator<LsmRun.Entry> entries = new MergingIterator(sources);
+            while (entries.hasNext()) {
+                LsmRun.Entry entry = entries.next();
+                if (!entry.isTombstone()) {
+                    visitor.visit(entry.key(), entry.value());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            closeAll(cursors);
+        }
+    }
+
+    synchronized int getRunCount() {
+        return runs.size();
+    }
+
+    private void scheduleMergeIfNeeded() {
+        if (findTierToMerge() == null || !mergeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (mergeExecutor == null) {
+            mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lsm-merge-" + directory.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        mergeExecutor.execute(() -> {
+            try {
+                List<LsmRun> tier;
+                while ((tier = selectTierToMerge()) != null) {
+                    merge(tier);
+                }
+            } catch (IOException e) {
+                // Merged runs stay in place, the error is reported by the next write
+                mergeError = e;
+            } finally {
+                mergeScheduled.set(false);
+            }
+        });
+    }
+
+    private synchronized List<LsmRun> selectTierToMerge() {
+        return findTierToMerge();
+    }
+
+    /**
+     * First mergeThreshold adjacent runs of the same size tier, from the newest, or null
+     */
+    private List<LsmRun> findTierToMerge() {
+        int groupStart = 0;
+        for (int i = 1; i <= runs.size(); i++) {
+            if (i == runs.size() || tierOf(runs.get(i)) != tierOf(runs.get(groupStart))) {
+                if (i - groupStart >= mergeThreshold) {
+                    return List.copyOf(runs.subList(groupStart, groupStart + mergeThreshold));
+                }
+                groupStart = i;
+            }
+        }
+        return null;
+    }
+
+    private int tierOf(LsmRun run) {
+        int tier = 0;
+        for (long capacity = memtableLimit; run.getRecordCount() > capacity; capacity *= mergeThreshold) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Merges all runs into one, dropping all deletion tombstones
+     */
+    void merge() throws IOException {
+        synchronized (mergeLock) {
+            List<LsmRun> allRuns;
+            synchronized (this) {
+                allRuns = List.copyOf(runs);
+            }
+            if (allRuns.size() > 1) {
+                merge(allRuns);
+            }
+        }
+    }
+
+    /**
+     * Merges adjacent runs into one run in their place. Runs flushed meanwhile are only added before them,
+     * lookups and writes are blocked only while the merged run replaces the merged ones.
+     */
+    private void merge(List<LsmRun> inputs) throws IOException {
+        synchronized (mergeLock) {
+            long number;
+            boolean dropTombstones;
+            synchronized (this) {
+                if (!runs.containsAll(inputs)) {
+                    return;
+                }
+                number = nextNumber++;
+                // Without older runs there is no record left for a tombstone to hide
+                dropTombstones = runs.getLast() == inputs.getLast();
+            }
+            List<LsmRun.Cursor> cursors = new ArrayList<>();
+            LsmRun merged;
+            try {
+                int expectedCount = 0;
+                for (LsmRun run : inputs) {
+                    cursors.add(run.openCursor());
+                    expectedCount += run.getRecordCount();
+                }
+                merged = LsmRun.write(runPath(number), number, new MergingIterator(new ArrayList<>(cursors)),
+                        expectedCount, dropTombstones, forced);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                closeAll(cursors);
+            }
+            synchronized (this) {
+                int position = runs.indexOf(inputs.getFirst());
+                runs.removeAll(inputs);
+                if (merged != null) {
+                    runs.add(position, merged);
+                }
+                writeManifest();
+            }
+            for (LsmRun run : inputs) {
+                run.close();
+                Files.deleteIfExists(run.getFile());
+            }
+        }
+    }
+
+    private void throwMergeError() throws IOException {
+        IOException error = mergeError;
+        if (error != null) {
+            mergeError = null;
+            throw error;
+        }
+    }
+
+    private static void closeAll(List<? extends Closeable> closeables) throws IOException {
+        for (Closeable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * Waits for the background merge, the memtable stays in the log and is replayed on the next open
+     */
+    @Override
+    public void close() throws IOException {
+        if (mergeExecutor != null) {
+            mergeExecutor.shutdown();
+            try {
+                mergeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (log != null) {
+                log.close();
+            }
+            closeAll(runs);
+        }
+        throwMergeError();
+    }
+
+    /**
+     * Merges sources sorted by key, ordered from the newest to the oldest. For a key present in several sources
+     * only the record of the newest one is returned.
+     */
+    private static class MergingIterator implements Iterator<LsmRun.Entry> {
+        private final List<Iterator<LsmRun.Entry>> sources;
+        private final LsmRun.Entry[] heads;
+
+        MergingIterator(List<Iterator<LsmRun.Entry>> sources) {
+            this.sources = sources;
+            heads = new LsmRun.Entry[sources.size()];
+            for (int i = 0; i < heads.length; i++) {
+                advance(i);
+            }
+        }
+
+        private void advance(int source) {
+            Iterator<LsmRun.Entry> iterator = sources.get(source);
+            heads[source] = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (LsmRun.Entry head : heads) {
+                if (head != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public LsmRun.Entry next() {
+            int newest = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (newest < 0 || heads[i].key() < heads[newest].key())) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                throw new NoSuchElementException();
+            }
+            LsmRun.Entry entry = heads[newest];
+            for (int i = newest; i < heads.length; i++) {
+                if (heads[i] != null && heads[i].key() == entry.key()) {
+                    advance(i);
+                }
+            }
+            return entry;
+        }
+    }
+}
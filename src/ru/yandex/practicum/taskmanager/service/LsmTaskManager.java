@@ -0,0 +1,694 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Task manager persisting every task as a record of an LSM store keyed by task ID (see LsmStore),
+ * so a mutation costs a few log appends regardless of the number of tasks, and sorted runs are merged in background.
+ * Keys of the store:
+ * <ul>
+ * <li>task ID - the task in the binary snapshot record format (see BinarySnapshotCodec)</li>
+ * <li>minus Epic ID - IDs of the Subtasks of the Epic, ints in addition order</li>
+ * <li>0 - the ID high-water mark, see IdAllocator</li>
+ * </ul>
+ * Lookups are served from the store, decoded records are kept in a bounded LRU cache. The only per-task state
+ * in memory is the start time index of Tasks and Subtasks, used for the prioritized list and the time
+ * intersection check. Epic status is stored and recomputed on every change of its Subtasks,
+ * Epic start and end time and duration are computed from the Subtasks on read.
+ * History is kept in memory only.
+ */
+public class LsmTaskManager implements TaskManager, AutoCloseable {
+
+    public static final int DEFAULT_MAX_CACHED_RECORDS = 1000;
+    private static final int ID_MARK_KEY = 0;
+    private final Path directory;
+    private final LsmStore store;
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    private final IdAllocator idAllocator = new IdAllocator(1, IdAllocator.DEFAULT_BLOCK_SIZE);
+    private final NavigableMap<LocalDateTime, Integer> tasksByTime = new TreeMap<>();
+    private final Map<Integer, Task> recordCache;
+
+    public LsmTaskManager(Path directory) {
+        this(directory, LsmStore.DEFAULT_MEMTABLE_LIMIT, LsmStore.DEFAULT_MERGE_THRESHOLD);
+    }
+
+    public LsmTaskManager(Path directory, int memtableLimit, int mergeThreshold) {
+        this(directory, memtableLimit, mergeThreshold, Durability.FLUSH, DEFAULT_MAX_CACHED_RECORDS);
+    }
+
+    /**
+     * Opens the store in the directory, a missing directory is created. Only start times of the tasks are loaded.
+     * FLUSH durability writes the log to the operating system, FSYNC forces every write to the disk,
+     * buffered durability modes are not supported.
+     */
+    public LsmTaskManager(Path directory, int memtableLimit, int mergeThreshold, Durability durability,
+                          int maxCachedRecords) {
+        if (durability != Durability.FLUSH && durability != Durability.FSYNC) {
+            throw new IllegalArgumentException("LSM store supports FLUSH and FSYNC durability only: " + durability);
+        }
+        if (maxCachedRecords < 1) {
+            throw new IllegalArgumentException("Max cached records must be positive: " + maxCachedRecords);
+        }
+        this.directory = directory;
+        recordCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+                return size() > maxCachedRecords;
+            }
+        };
+        store = new LsmStore(directory, memtableLimit, mergeThreshold, durability == Durability.FSYNC);
+        try {
+            store.open();
+            idAllocator.reset(load(store, tasksByTime));
+        } catch (IOException e) {
+            closeQuietly(store);
+            throw new ManagerLoadException("Failed to load LSM store to Task manager: " + directory, e);
+        } catch (RuntimeException e) {
+            closeQuietly(store);
+            throw new ManagerLoadException("Error load LSM store to Task manager, store is inconsistent: " + directory, e);
+        }
+        LsmStore markStore = store;
+        idAllocator.setReservationListener(mark -> writeIdMark(markStore, directory, mark));
+    }
+
+    /**
+     * Fills the start time index and returns the next ID, the persisted mark or above the greatest stored ID
+     */
+    private static int load(LsmStore store, NavigableMap<LocalDateTime, Integer> tasksByTime) throws IOException {
+        int[] nextId = {1};
+        store.scan((key, value) -> {
+            if (key == ID_MARK_KEY) {
+                nextId[0] = Math.max(nextId[0], ByteBuffer.wrap(value).getInt());
+            } else if (key > 0) {
+                Task task = decode(value);
+                if (task.getType() != Type.EPIC && task.getStartTime() != null) {
+                    tasksByTime.put(task.getStartTime(), task.getId());
+                }
+                nextId[0] = Math.max(nextId[0], key + 1);
+            }
+        });
+        return nextId[0];
+    }
+
+    /**
+     * Persists the mark of a new ID block before its IDs are used
+     */
+    private static void writeIdMark(LsmStore store, Path directory, int mark) {
+        try {
+            store.put(ID_MARK_KEY, ByteBuffer.allocate(Integer.BYTES).putInt(mark).array());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to write ID high-water mark to LSM store: " + directory, e);
+        }
+    }
+
+    private static byte[] encode(Task task) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinarySnapshotCodec.writeTask(new DataOutputStream(bytes), task);
+        return bytes.toByteArray();
+    }
+
+    private static Task decode(byte[] value) throws IOException {
+        return BinarySnapshotCodec.readTask(new DataInputStream(new ByteArrayInputStream(value)));
+    }
+
+    /**
+     * Stored record of the ID through the cache or null, the record must not be changed
+     */
+    private Task readRecord(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        Task task = recordCache.get(id);
+        if (task != null) {
+            return task;
+        }
+        try {
+            byte[] value = store.get(id);
+            if (value == null) {
+                return null;
+            }
+            task = decode(value);
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read task from LSM store: " + directory, e);
+        }
+        recordCache.put(id, task);
+        return task;
+    }
+
+    private <T extends Task> T readRecord(Type type, int id, Class<T> taskClass) {
+        Task task = readRecord(id);
+        return task != null && task.getType() == type ? taskClass.cast(task) : null;
+    }
+
+    private void writeRecord(Task task) {
+        try {
+            store.put(task.getId(), encode(task));
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to write task to LSM store: " + directory, e);
+        }
+        recordCache.put(task.getId(), task);
+    }
+
+    private void deleteRecord(int key) {
+        try {
+            store.delete(key);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to delete task from LSM store: " + directory, e);
+        }
+        recordCache.remove(key);
+    }
+
+    private int[] readSubtaskIds(int epicId) {
+        try {
+            byte[] value = store.get(-epicId);
+            if (value == null) {
+                return new int[0];
+            }
+            int[] ids = new int[value.length / Integer.BYTES];
+            ByteBuffer.wrap(value).asIntBuffer().get(ids);
+            return ids;
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read Subtasks of Epic from LSM store: " + directory, e);
+        }
+    }
+
+    private void writeSubtaskIds(int epicId, int[] ids) {
+        if (ids.length == 0) {
+            deleteRecord(-epicId);
+            return;
+        }
+        ByteBuffer value = ByteBuffer.allocate(ids.length * Integer.BYTES);
+        value.asIntBuffer().put(ids);
+        try {
+            store.put(-epicId, value.array());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to write Subtasks of Epic to LSM store: " + directory, e);
+        }
+    }
+
+    /**
+     * Visits task records of the store in ID order, Subtask lists of Epics and the ID mark are skipped
+     */
+    private void scanRecords(LsmStore.Visitor visitor) {
+        try {
+            store.scan((key, value) -> {
+                if (key > 0) {
+                    visitor.visit(key, value);
+                }
+            });
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to read tasks from LSM store: " + directory, e);
+        }
+    }
+
+    private static Epic epicReference(Epic epic) {
+        return Epic.createForDeserialization(epic.getId(), epic.getName(), epic.getDescription(), epic.getStatus());
+    }
+
+    /**
+     * Copy of the stored Subtask linked to a copy of its Epic without Subtasks
+     */
+    private Subtask linkEpic(Subtask record) {
+        Subtask subtask = record.copy();
+        Epic epic = subtask.getEpic() != null ? readRecord(Type.EPIC, subtask.getEpic().getId(), Epic.class) : null;
+        subtask.setEpic(epic != null ? epicReference(epic) : null);
+        return subtask;
+    }
+
+    /**
+     * Copy of the stored Epic with its Subtasks, start and end time and duration
+     */
+    private Epic attachSubtasks(Epic record, List<Subtask> subtasks) {
+        Epic epic = epicReference(record);
+        subtasks.forEach(epic::addSubtasksList);
+        epic.setStartTime(epic.calcStartTime());
+        epic.setEndTime(epic.calcEndTime());
+        epic.setDuration(epic.calcDuration());
+        return epic;
+    }
+
+    private List<Subtask> readSubtasks(int epicId) {
+        List<Subtask> subtasks = new ArrayList<>();
+        for (int subtaskId : readSubtaskIds(epicId)) {
+            Subtask subtask = readRecord(Type.SUBTASK, subtaskId, Subtask.class);
+            if (subtask != null) {
+                subtasks.add(linkEpic(subtask));
+            }
+        }
+        return subtasks;
+    }
+
+    /**
+     * Copy of the stored task as returned to callers
+     */
+    private Task toResult(Task record) {
+        return switch (record) {
+            case Subtask subtask -> linkEpic(subtask);
+            case Epic epic -> attachSubtasks(epic, readSubtasks(epic.getId()));
+            default -> record.copy();
+        };
+    }
+
+    /**
+     * Epic status by the statuses of its Subtasks, the stored Epic is rewritten if it has changed
+     */
+    private void updateEpicStatus(int epicId) {
+        Epic epic = readRecord(Type.EPIC, epicId, Epic.class);
+        if (epic == null) {
+            return;
+        }
+        int count = 0;
+        int newCount = 0;
+        int doneCount = 0;
+        for (int subtaskId : readSubtaskIds(epicId)) {
+            Subtask subtask = readRecord(Type.SUBTASK, subtaskId, Subtask.class);
+            if (subtask != null) {
+                count++;
+                newCount += subtask.getStatus() == Status.NEW ? 1 : 0;
+                doneCount += subtask.getStatus() == Status.DONE ? 1 : 0;
+            }
+        }
+        Status status = count == newCount ? Status.NEW : count == doneCount ? Status.DONE : Status.IN_PROGRESS;
+        if (status != epic.getStatus()) {
+            writeRecord(Epic.createForDeserialization(epicId, epic.getName(), epic.getDescription(), status));
+        }
+    }
+
+    /**
+     * Time intersection with any stored Task or Subtask other than the task itself, the same closed
+     * intervals as in InMemoryTaskManager. Stored intervals do not intersect, so only the nearest task
+     * starting at or before the task and the nearest one starting after it are checked.
+     */
+    private void checkTimeIntersection(Task task) throws InvalidManagerTaskException {
+        if (task.getStartTime() == null) {
+            return;
+        }
+        Map.Entry<LocalDateTime, Integer> floor = tasksByTime.floorEntry(task.getStartTime());
+        if (floor != null && floor.getValue() == task.getId()) {
+            floor = tasksByTime.lowerEntry(floor.getKey());
+        }
+        Map.Entry<LocalDateTime, Integer> ceiling = tasksByTime.higherEntry(task.getStartTime());
+        if (ceiling != null && ceiling.getValue() == task.getId()) {
+            ceiling = tasksByTime.higherEntry(ceiling.getKey());
+        }
+        Task floorTask = floor != null ? readRecord(floor.getValue()) : null;
+        if (floorTask != null && !floorTask.getEndTime().isBefore(task.getStartTime())
+                || ceiling != null && !ceiling.getKey().isAfter(task.getEndTime())) {
+            throw new InvalidManagerTaskException(task.getType() + " with startTime=" + task.getStartTime() + " has intersection with managers tasks");
+        }
+    }
+
+    private void indexTime(Task previous, Task task) {
+        if (previous != null && previous.getStartTime() != null) {
+            tasksByTime.remove(previous.getStartTime(), previous.getId());
+        }
+        if (task != null && task.getStartTime() != null) {
+            tasksByTime.put(task.getStartTime(), task.getId());
+        }
+    }
+
+    private List<Integer> deleteByType(Type type) {
+        List<Integer> ids = new ArrayList<>();
+        scanRecords((key, value) -> {
+            Task task = decode(value);
+            if (task.getType() == type) {
+                ids.add(key);
+                indexTime(task, null);
+            }
+        });
+        ids.forEach(this::deleteRecord);
+        return ids;
+    }
+
+    private void removeFromHistory(List<Integer> ids) {
+        ids.forEach(historyManager::remove);
+    }
+
+    /**
+     * Writes the memtable to a sorted run, so the store is opened without replaying the log
+     */
+    public synchronized void flush() {
+        try {
+            store.flush();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to flush LSM store: " + directory, e);
+        }
+    }
+
+    /**
+     * Merges all sorted runs into one, normally done in background
+     */
+    public void merge() {
+        try {
+            store.merge();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to merge LSM store: " + directory, e);
+        }
+    }
+
+    int getRunCount() {
+        return store.getRunCount();
+    }
+
+    synchronized int getCachedRecordCount() {
+        return recordCache.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to close LSM store: " + directory, e);
+        }
+    }
+
+    private static void closeQuietly(LsmStore store) {
+        try {
+            store.close();
+        } catch (IOException ignored) {
+            // The load error is reported instead
+        }
+    }
+
+    @Override
+    public synchronized List<Task> getTasks() {
+        List<Task> tasks = new ArrayList<>();
+        scanRecords((key, value) -> {
+            Task task = decode(value);
+            if (task.getType() == Type.TASK) {
+                tasks.add(task);
+            }
+        });
+        return tasks;
+    }
+
+    /**
+     * Subtasks linked to their Epics, both collected by one scan
+     */
+    @Override
+    public synchronized List<Subtask> getSubtasks() {
+        List<Subtask> subtasks = new ArrayList<>();
+        Map<Integer, Epic> epics = new HashMap<>();
+        scanRecords((key, value) -> {
+            switch (decode(value)) {
+                case Subtask subtask -> subtasks.add(subtask);
+                case Epic epic -> epics.put(epic.getId(), epic);
+                default -> {
+                }
+            }
+        });
+        for (Subtask subtask : subtasks) {
+            subtask.setEpic(subtask.getEpic() != null ? epics.get(subtask.getEpic().getId()) : null);
+        }
+        return subtasks;
+    }
+
+    /**
+     * Epics with their Subtasks, both collected by one scan
+     */
+    @Override
+    public synchronized List<Epic> getEpics() {
+        Map<Integer, Epic> epics = new LinkedHashMap<>();
+        Map<Integer, List<Subtask>> subtasksByEpic = new HashMap<>();
+        scanRecords((key, value) -> {
+            switch (decode(value)) {
+                case Subtask subtask when subtask.getEpic() != null -> subtasksByEpic
+                        .computeIfAbsent(subtask.getEpic().getId(), epicId -> new ArrayList<>()).add(subtask);
+                case Epic epic -> epics.put(epic.getId(), epic);
+                default -> {
+                }
+            }
+        });
+        List<Epic> result = new ArrayList<>();
+        for (Epic epic : epics.values()) {
+            List<Subtask> subtasks = subtasksByEpic.getOrDefault(epic.getId(), List.of());
+            subtasks.forEach(subtask -> subtask.setEpic(epicReference(epic)));
+            result.add(attachSubtasks(epic, subtasks));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        removeFromHistory(deleteByType(Type.TASK));
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        List<Integer> ids = deleteByType(Type.SUBTASK);
+        List<Epic> epics = new ArrayList<>();
+        scanRecords((key, value) -> {
+            if (decode(value) instanceof Epic epic) {
+                epics.add(epic);
+            }
+        });
+        for (Epic epic : epics) {
+            writeSubtaskIds(epic.getId(), new int[0]);
+            if (epic.getStatus() != Status.NEW) {
+                writeRecord(Epic.createForDeserialization(epic.getId(), epic.getName(), epic.getDescription(), Status.NEW));
+            }
+        }
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        List<Integer> ids = deleteByType(Type.SUBTASK);
+        List<Integer> epicIds = deleteByType(Type.EPIC);
+        epicIds.forEach(epicId -> writeSubtaskIds(epicId, new int[0]));
+        ids.addAll(epicIds);
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized Optional<Task> getTaskById(int id) {
+        Task task = readRecord(Type.TASK, id, Task.class);
+        return Optional.ofNullable(task != null ? addToHistory(toResult(task)) : null);
+    }
+
+    @Override
+    public synchronized Optional<Subtask> getSubtaskById(int id) {
+        Subtask subtask = readRecord(Type.SUBTASK, id, Subtask.class);
+        return Optional.ofNullable(subtask != null ? addToHistory(linkEpic(subtask)) : null);
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicById(int id) {
+        Epic epic = readRecord(Type.EPIC, id, Epic.class);
+        return Optional.ofNullable(epic != null ? addToHistory(attachSubtasks(epic, readSubtasks(id))) : null);
+    }
+
+    private <T extends Task> T addToHistory(T task) {
+        historyManager.add(task);
+        return task;
+    }
+
+    @Override
+    public synchronized Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(readRecord(Type.SUBTASK, subtask.getId(), Subtask.class))
+                .map(this::linkEpic)
+                .map(Subtask::getEpic);
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        return readSubtasks(epicId);
+    }
+
+    @Override
+    public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy(idAllocator.nextId());
+        internalTask.setStatus(Status.NEW);
+        checkTimeIntersection(internalTask);
+        writeRecord(internalTask);
+        indexTime(null, internalTask);
+        return internalTask.getId();
+    }
+
+    @Override
+    public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic internalEpic = readRecord(Type.EPIC, epic.getId(), Epic.class);
+        if (internalEpic == null) {
+            throw new InvalidManagerTaskException(String.format("Epic with ID=%d does not exists in manager for Subtask addition", epic.getId()));
+        }
+        Subtask internalSubtask = subtask.copy(idAllocator.nextId());
+        internalSubtask.setStatus(Status.NEW);
+        internalSubtask.setEpic(epicReference(internalEpic));
+        checkTimeIntersection(internalSubtask);
+        writeRecord(internalSubtask);
+        int[] subtaskIds = readSubtaskIds(epic.getId());
+        subtaskIds = Arrays.copyOf(subtaskIds, subtaskIds.length + 1);
+        subtaskIds[subtaskIds.length - 1] = internalSubtask.getId();
+        writeSubtaskIds(epic.getId(), subtaskIds);
+        indexTime(null, internalSubtask);
+        updateEpicStatus(epic.getId());
+        return internalSubtask.getId();
+    }
+
+    @Override
+    public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic internalEpic = Epic.createForDeserialization(idAllocator.nextId(), epic.getName(), epic.getDescription(), Status.NEW);
+        writeRecord(internalEpic);
+        return internalEpic.getId();
+    }
+
+    @Override
+    public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task stored = readRecord(Type.TASK, task.getId(), Task.class);
+        if (stored == null) {
+            throw new InvalidManagerTaskException(String.format("Task ID=%d does not exists to update.", task.getId()));
+        }
+        checkTimeIntersection(task);
+        Task internalTask = task.copy();
+        writeRecord(internalTask);
+        indexTime(stored, internalTask);
+    }
+
+    /**
+     * Subtask stays linked to its stored Epic
+     */
+    @Override
+    public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        Subtask stored = readRecord(Type.SUBTASK, subtask.getId(), Subtask.class);
+        if (stored == null) {
+            throw new InvalidManagerTaskException(String.format("Subtask ID=%d does not exists to update.", subtask.getId()));
+        }
+        checkTimeIntersection(subtask);
+        Subtask internalSubtask = subtask.copy();
+        internalSubtask.setEpic(stored.getEpic());
+        writeRecord(internalSubtask);
+        indexTime(stored, internalSubtask);
+        if (stored.getEpic() != null) {
+            updateEpicStatus(stored.getEpic().getId());
+        }
+    }
+
+    /**
+     * Only name and description of the Epic are updated, the rest follows its Subtasks
+     */
+    @Override
+    public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic stored = readRecord(Type.EPIC, epic.getId(), Epic.class);
+        if (stored == null) {
+            throw new InvalidManagerTaskException(String.format("Epic ID=%d does not exists to update.", epic.getId()));
+        }
+        writeRecord(Epic.createForDeserialization(epic.getId(), epic.getName(), epic.getDescription(), stored.getStatus()));
+    }
+
+    @Override
+    public synchronized void deleteTaskById(int id) {
+        Task task = readRecord(Type.TASK, id, Task.class);
+        if (task == null) {
+            return;
+        }
+        deleteRecord(id);
+        indexTime(task, null);
+        historyManager.remove(id);
+    }
+
+    @Override
+    public synchronized void deleteSubtaskById(int id) {
+        Subtask subtask = readRecord(Type.SUBTASK, id, Subtask.class);
+        if (subtask == null) {
+            return;
+        }
+        deleteRecord(id);
+        indexTime(subtask, null);
+        if (subtask.getEpic() != null) {
+            int epicId = subtask.getEpic().getId();
+            writeSubtaskIds(epicId, Arrays.stream(readSubtaskIds(epicId)).filter(subtaskId -> subtaskId != id).toArray());
+            updateEpicStatus(epicId);
+        }
+        historyManager.remove(id);
+    }
+
+    @Override
+    public synchronized void deleteEpicById(int id) {
+        if (readRecord(Type.EPIC, id, Epic.class) == null) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int subtaskId : readSubtaskIds(id)) {
+            Subtask subtask = readRecord(Type.SUBTASK, subtaskId, Subtask.class);
+            if (subtask != null) {
+                deleteRecord(subtaskId);
+                indexTime(subtask, null);
+                ids.add(subtaskId);
+            }
+        }
+        writeSubtaskIds(id, new int[0]);
+        deleteRecord(id);
+        ids.add(id);
+        removeFromHistory(ids);
+    }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return historyManager.getHistory();
+    }
+
+    /**
+     * Tasks and Subtasks with start time, ordered by the start time index
+     */
+    @Override
+    public synchronized List<Task> getPrioritizedTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (int id : tasksByTime.values()) {
+            Task task = readRecord(id);
+            if (task != null) {
+                tasks.add(toResult(task));
+            }
+        }
+        return tasks;
+    }
+}
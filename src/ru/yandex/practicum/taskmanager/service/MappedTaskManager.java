@@ -0,0 +1,647 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Task manager persisting every task to a fixed-size record slot of a memory-mapped file.
+ * A mutation rewrites only the slots of the changed tasks in place, strings are appended to the string heap
+ * at the end of the file, so the file is never rewritten as a whole and is loaded without parsing.
+ * <p>
+ * File layout: header, slotCapacity slots of SLOT_SIZE bytes, heapCapacity bytes of string heap.
+ * Writes reach the page cache immediately and survive a process crash, force() writes them to the disk.
+ * Heap compaction and growth move strings other slots point to, so they are written to the redo file
+ * ('tasks.map.redo') first and applied to the mapping under a header flag, a rewrite interrupted by a crash
+ * is applied again on load.
+ * The file is limited to 2 GB by the size of MappedByteBuffer.
+ */
+public class MappedTaskManager extends InMemoryTaskManager implements AutoCloseable {
+
+    private static final int MAGIC = 0x544B4D4D; // 'TKMM'
+    private static final int VERSION = 1;
+
+    // Header fields
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_CAPACITY = 8;
+    private static final int HEADER_SLOT_HIGH_WATER = 12;
+    private static final int HEADER_ID_COUNTER = 16;
+    private static final int HEADER_HEAP_CAPACITY = 20;
+    private static final int HEADER_HEAP_END = 24;
+    private static final int HEADER_REWRITE_PENDING = 28;
+    private static final int HEADER_SIZE = 32;
+
+    // Slot fields, string offsets are relative to the heap start
+    private static final int SLOT_STATE = 0;
+    private static final int SLOT_TYPE = 1;
+    private static final int SLOT_STATUS = 2;
+    private static final int SLOT_ID = 4;
+    private static final int SLOT_EPIC_ID = 8;
+    private static final int SLOT_NAME_OFFSET = 12;
+    private static final int SLOT_NAME_LENGTH = 16;
+    private static final int SLOT_DESCRIPTION_OFFSET = 20;
+    private static final int SLOT_DESCRIPTION_LENGTH = 24;
+    private static final int SLOT_START_TIME_NANOS = 28;
+    private static final int SLOT_START_TIME = 32;
+    private static final int SLOT_DURATION = 40;
+    private static final int SLOT_SIZE = 48;
+
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_USED = 1;
+    private static final int NULL_STRING = -1;
+    private static final long NULL_START_TIME = Long.MIN_VALUE;
+
+    private static final int INITIAL_SLOT_CAPACITY = 1024;
+    private static final int INITIAL_HEAP_CAPACITY = 64 * 1024;
+    private static final String REDO_SUFFIX = ".redo";
+
+    private final Path file;
+    private final Path redoFile;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slotCapacity;
+    private int slotHighWater;
+    private int heapCapacity;
+    private int heapEnd;
+    private final Map<Integer, Integer> slotById = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /**
+     * Opens the file, loading its tasks, or initializes an empty or missing file
+     */
+    public MappedTaskManager(Path file) {
+        super();
+        this.file = file;
+        redoFile = file.resolveSibling(file.getFileName() + REDO_SUFFIX);
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new ManagerLoadException("Failed to open mapped file: " + file, e);
+        }
+        try {
+            if (channel.size() == 0) {
+                initialize();
+            } else {
+                load();
+            }
+        } catch (IOException e) {
+            closeQuietly();
+            throw new ManagerLoadException("Failed to load mapped file to Task manager: " + file, e);
+        } catch (InvalidManagerTaskException | RuntimeException e) {
+            closeQuietly();
+            throw new ManagerLoadException("Error load mapped file to Task manager, file is inconsistent: " + file, e);
+        }
+    }
+
+    private void initialize() throws IOException {
+        slotCapacity = INITIAL_SLOT_CAPACITY;
+        heapCapacity = INITIAL_HEAP_CAPACITY;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(slotCapacity, heapCapacity));
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        writeHeader();
+    }
+
+    /**
+     * Reads the slots straight from the mapping, adding Tasks and Epics before Subtasks to link them
+     */
+    private void load() throws IOException, InvalidManagerTaskException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Mapped file is too short: " + channel.size());
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException("Invalid mapped file header.");
+        }
+        if (buffer.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("Unsupported mapped file version: " + buffer.getInt(HEADER_VERSION));
+        }
+        if (buffer.getInt(HEADER_REWRITE_PENDING) != 0) {
+            applyRewrite(HeapRewrite.read(redoFile));
+            buffer.putInt(HEADER_REWRITE_PENDING, 0);
+        }
+        Files.deleteIfExists(redoFile);
+        slotCapacity = buffer.getInt(HEADER_SLOT_CAPACITY);
+        slotHighWater = buffer.getInt(HEADER_SLOT_HIGH_WATER);
+        heapCapacity = buffer.getInt(HEADER_HEAP_CAPACITY);
+        heapEnd = buffer.getInt(HEADER_HEAP_END);
+        if (channel.size() < fileSize(slotCapacity, heapCapacity) || slotHighWater > slotCapacity || heapEnd > heapCapacity) {
+            throw new IOException("Mapped file header does not match the file size.");
+        }
+
+        int maxId = 0;
+        List<Subtask> loadedSubtasks = new ArrayList<>();
+        for (int slot = 0; slot < slotHighWater; slot++) {
+            if (buffer.get(slotPosition(slot) + SLOT_STATE) != SLOT_USED) {
+                freeSlots.push(slot);
+                continue;
+            }
+            Task task = readSlot(slot);
+            slotById.put(task.getId(), slot);
+            maxId = Math.max(maxId, task.getId());
+            if (task instanceof Subtask subtask) {
+                loadedSubtasks.add(subtask);
+            } else {
+                helper.addInternal(task);
+            }
+        }
+        for (Subtask subtask : loadedSubtasks) {
+            Epic epic = subtask.getEpic() != null ? (Epic) helper.getInternal(Type.EPIC, subtask.getEpic().getId()) : null;
+            subtask.setEpic(epic != null ? epic.copyWith(null, null, null) : null);
+            helper.addInternal(subtask);
+        }
+        helper.setIdCounter(Math.max(buffer.getInt(HEADER_ID_COUNTER), maxId + 1));
+        helper.rebuildIndexes();
+    }
+
+    private Task readSlot(int slot) throws IOException {
+        int position = slotPosition(slot);
+        Type type = BinarySnapshotCodec.parseType(buffer.get(position + SLOT_TYPE));
+        Status status = BinarySnapshotCodec.parseStatus(buffer.get(position + SLOT_STATUS));
+        int id = buffer.getInt(position + SLOT_ID);
+        String name = readString(position + SLOT_NAME_OFFSET, position + SLOT_NAME_LENGTH);
+        String description = readString(position + SLOT_DESCRIPTION_OFFSET, position + SLOT_DESCRIPTION_LENGTH);
+        long startTimeSeconds = buffer.getLong(position + SLOT_START_TIME);
+        LocalDateTime startTime = startTimeSeconds != NULL_START_TIME
+                ? LocalDateTime.ofEpochSecond(startTimeSeconds, buffer.getInt(position + SLOT_START_TIME_NANOS), ZoneOffset.UTC)
+                : null;
+        Duration duration = Duration.ofMinutes(buffer.getLong(position + SLOT_DURATION));
+        return switch (type) {
+            case TASK -> Task.createForDeserialization(id, name, description, status, startTime, duration);
+            case SUBTASK -> {
+                int epicId = buffer.getInt(position + SLOT_EPIC_ID);
+                yield Subtask.createForDeserialization(id, name, description, status,
+                        epicId > 0 ? Epic.createForDeserialization(epicId, null, null, Status.NEW) : null,
+                        startTime, duration);
+            }
+            case EPIC -> Epic.createForDeserialization(id, name, description, status);
+        };
+    }
+
+    private String readString(int offsetField, int lengthField) {
+        int length = buffer.getInt(lengthField);
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(heapStart() + buffer.getInt(offsetField), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the task to its slot, allocating a slot for a new task. Unchanged strings keep their place in the heap.
+     */
+    private void writeSlot(Task task) {
+        Integer existingSlot = slotById.get(task.getId());
+        int slot = existingSlot != null ? existingSlot : allocateSlot();
+        int position = slotPosition(slot);
+        byte[] name = task.getName() != null ? task.getName().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] description = task.getDescription() != null ? task.getDescription().getBytes(StandardCharsets.UTF_8) : null;
+        boolean keepName = existingSlot != null && heapEquals(position + SLOT_NAME_OFFSET, position + SLOT_NAME_LENGTH, name);
+        boolean keepDescription = existingSlot != null
+                && heapEquals(position + SLOT_DESCRIPTION_OFFSET, position + SLOT_DESCRIPTION_LENGTH, description);
+        int required = (keepName || name == null ? 0 : name.length)
+                + (keepDescription || description == null ? 0 : description.length);
+        reserveHeap(required);
+        // The mapping may be replaced while reserving the heap, slot position stays the same
+
+        if (!keepName) {
+            writeString(position + SLOT_NAME_OFFSET, position + SLOT_NAME_LENGTH, name);
+        }
+        if (!keepDescription) {
+            writeString(position + SLOT_DESCRIPTION_OFFSET, position + SLOT_DESCRIPTION_LENGTH, description);
+        }
+        buffer.put(position + SLOT_TYPE, (byte) BinarySnapshotCodec.typeCode(task.getType()));
+        buffer.put(position + SLOT_STATUS, (byte) BinarySnapshotCodec.statusCode(task.getStatus()));
+        buffer.putInt(position + SLOT_ID, task.getId());
+        int epicId = task instanceof Subtask subtask && subtask.getEpic() != null ? subtask.getEpic().getId() : 0;
+        buffer.putInt(position + SLOT_EPIC_ID, epicId);
+        // Epic start time and duration are calculated from its Subtasks
+        boolean hasTime = task.getType() != Type.EPIC && task.getStartTime() != null;
+        buffer.putLong(position + SLOT_START_TIME, hasTime ? task.getStartTime().toEpochSecond(ZoneOffset.UTC) : NULL_START_TIME);
+        buffer.putInt(position + SLOT_START_TIME_NANOS, hasTime ? task.getStartTime().getNano() : 0);
+        buffer.putLong(position + SLOT_DURATION, hasTime && task.getDuration() != null ? task.getDuration().toMinutes() : 0);
+        buffer.put(position + SLOT_STATE, SLOT_USED);
+        slotById.put(task.getId(), slot);
+    }
+
+    private boolean heapEquals(int offsetField, int lengthField, byte[] value) {
+        int length = buffer.getInt(lengthField);
+        if (value == null || length == NULL_STRING) {
+            return value == null && length == NULL_STRING;
+        }
+        if (length != value.length) {
+            return false;
+        }
+        int start = heapStart() + buffer.getInt(offsetField);
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeString(int offsetField, int lengthField, byte[] value) {
+        if (value == null) {
+            buffer.putInt(lengthField, NULL_STRING);
+            return;
+        }
+        buffer.put(heapStart() + heapEnd, value);
+        buffer.putInt(offsetField, heapEnd);
+        buffer.putInt(lengthField, value.length);
+        heapEnd += value.length;
+        buffer.putInt(HEADER_HEAP_END, heapEnd);
+    }
+
+    private int allocateSlot() {
+        Integer slot = freeSlots.poll();
+        if (slot != null) {
+            return slot;
+        }
+        if (slotHighWater == slotCapacity) {
+            growSlots(slotCapacity * 2);
+        }
+        slotHighWater++;
+        buffer.putInt(HEADER_SLOT_HIGH_WATER, slotHighWater);
+        return slotHighWater - 1;
+    }
+
+    private void freeSlot(Type type, int id) {
+        Integer slot = slotById.get(id);
+        if (slot == null || buffer.get(slotPosition(slot) + SLOT_TYPE) != BinarySnapshotCodec.typeCode(type)) {
+            return;
+        }
+        buffer.put(slotPosition(slot) + SLOT_STATE, SLOT_FREE);
+        slotById.remove(id);
+        freeSlots.push(slot);
+    }
+
+    private void freeSlots(Type type) {
+        byte typeCode = (byte) BinarySnapshotCodec.typeCode(type);
+        Iterator<Map.Entry<Integer, Integer>> iterator = slotById.entrySet().iterator();
+        while (iterator.hasNext()) {
+            int slot = iterator.next().getValue();
+            if (buffer.get(slotPosition(slot) + SLOT_TYPE) == typeCode) {
+                buffer.put(slotPosition(slot) + SLOT_STATE, SLOT_FREE);
+                freeSlots.push(slot);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Makes room for the required bytes at the heap end. Strings replaced by updates are garbage,
+     * so the heap is compacted first and doubled only when live strings take more than a half of it.
+     */
+    private void reserveHeap(int required) {
+        if (heapEnd + required <= heapCapacity) {
+            return;
+        }
+        long liveBytes = liveHeapBytes() + required;
+        int newHeapCapacity = heapCapacity;
+        if (liveBytes > heapCapacity / 2) {
+            long newCapacity = Math.max(2L * heapCapacity, 2 * liveBytes);
+            if (newCapacity > Integer.MAX_VALUE) {
+                throw new ManagerSaveException("Mapped file string heap is full: " + file);
+            }
+            newHeapCapacity = (int) newCapacity;
+        }
+        compactHeap(newHeapCapacity);
+    }
+
+    private long liveHeapBytes() {
+        long liveBytes = 0;
+        for (int slot : slotById.values()) {
+            int position = slotPosition(slot);
+            liveBytes += Math.max(0, buffer.getInt(position + SLOT_NAME_LENGTH));
+            liveBytes += Math.max(0, buffer.getInt(position + SLOT_DESCRIPTION_LENGTH));
+        }
+        return liveBytes;
+    }
+
+    /**
+     * Moves live strings to the start of the heap of the new capacity in slot order
+     */
+    private void compactHeap(int newHeapCapacity) {
+        HeapRewrite rewrite = new HeapRewrite(slotCapacity, newHeapCapacity, new byte[(int) liveHeapBytes()],
+                2 * slotById.size());
+        for (int slot : slotById.values()) {
+            int position = slotPosition(slot);
+            moveString(position + SLOT_NAME_OFFSET, position + SLOT_NAME_LENGTH, rewrite);
+            moveString(position + SLOT_DESCRIPTION_OFFSET, position + SLOT_DESCRIPTION_LENGTH, rewrite);
+        }
+        rewrite(rewrite);
+    }
+
+    private void moveString(int offsetField, int lengthField, HeapRewrite rewrite) {
+        int length = buffer.getInt(lengthField);
+        if (length == NULL_STRING) {
+            return;
+        }
+        buffer.get(heapStart() + buffer.getInt(offsetField), rewrite.heap, rewrite.heapEnd, length);
+        rewrite.offsetFields[rewrite.offsetCount] = offsetField;
+        rewrite.offsets[rewrite.offsetCount++] = rewrite.heapEnd;
+        rewrite.heapEnd += length;
+    }
+
+    /**
+     * Grows the slot area, moving the heap behind it, string offsets are relative to the heap and stay the same
+     */
+    private void growSlots(int newSlotCapacity) {
+        HeapRewrite rewrite = new HeapRewrite(newSlotCapacity, heapCapacity, new byte[heapEnd], 0);
+        buffer.get(heapStart(), rewrite.heap, 0, heapEnd);
+        rewrite.heapEnd = heapEnd;
+        rewrite(rewrite);
+    }
+
+    /**
+     * Writes the redo file before the mapping is changed and deletes it once the rewrite is applied,
+     * the header flag tells load whether the mapping may be half rewritten
+     */
+    private void rewrite(HeapRewrite rewrite) {
+        if (fileSize(rewrite.slotCapacity, rewrite.heapCapacity) > Integer.MAX_VALUE) {
+            throw new ManagerSaveException("Mapped file cannot exceed 2 GB: " + file);
+        }
+        try {
+            rewrite.write(redoFile);
+            buffer.putInt(HEADER_REWRITE_PENDING, 1);
+            applyRewrite(rewrite);
+            buffer.putInt(HEADER_REWRITE_PENDING, 0);
+            Files.delete(redoFile);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to rewrite mapped file heap: " + file, e);
+        }
+    }
+
+    /**
+     * Remaps the file with the capacities of the rewrite and puts its heap and string offsets, applying it again
+     * gives the same result
+     */
+    private void applyRewrite(HeapRewrite rewrite) throws IOException {
+        long newSize = fileSize(rewrite.slotCapacity, rewrite.heapCapacity);
+        if (buffer.capacity() < newSize) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        }
+        slotCapacity = rewrite.slotCapacity;
+        heapCapacity = rewrite.heapCapacity;
+        heapEnd = rewrite.heapEnd;
+        buffer.put(heapStart(), rewrite.heap, 0, rewrite.heapEnd);
+        for (int i = 0; i < rewrite.offsetCount; i++) {
+            buffer.putInt(rewrite.offsetFields[i], rewrite.offsets[i]);
+        }
+        buffer.putInt(HEADER_SLOT_CAPACITY, slotCapacity);
+        buffer.putInt(HEADER_HEAP_CAPACITY, heapCapacity);
+        buffer.putInt(HEADER_HEAP_END, heapEnd);
+    }
+
+    /**
+     * New capacities, heap content and string offsets to put into slot fields, also the redo file format
+     */
+    private static final class HeapRewrite {
+        private final int slotCapacity;
+        private final int heapCapacity;
+        private final byte[] heap;
+        private int heapEnd;
+        private final int[] offsetFields;
+        private final int[] offsets;
+        private int offsetCount;
+
+        private HeapRewrite(int slotCapacity, int heapCapacity, byte[] heap, int maxOffsetCount) {
+            this.slotCapacity = slotCapacity;
+            this.heapCapacity = heapCapacity;
+            this.heap = heap;
+            offsetFields = new int[maxOffsetCount];
+            offsets = new int[maxOffsetCount];
+        }
+
+        /**
+         * Written and forced before the mapping is touched, so the flag set after it never points to a partial file
+         */
+        private void write(Path redoFile) throws IOException {
+            try (FileChannel redoChannel = FileChannel.open(redoFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(redoChannel)));
+                out.writeInt(slotCapacity);
+                out.writeInt(heapCapacity);
+                out.writeInt(heapEnd);
+                out.write(heap, 0, heapEnd);
+                out.writeInt(offsetCount);
+                for (int i = 0; i < offsetCount; i++) {
+                    out.writeInt(offsetFields[i]);
+                    out.writeInt(offsets[i]);
+                }
+                out.flush();
+                redoChannel.force(false);
+            }
+        }
+
+        private static HeapRewrite read(Path redoFile) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(redoFile)))) {
+                int slotCapacity = in.readInt();
+                int heapCapacity = in.readInt();
+                byte[] heap = new byte[in.readInt()];
+                in.readFully(heap);
+                int offsetCount = in.readInt();
+                HeapRewrite rewrite = new HeapRewrite(slotCapacity, heapCapacity, heap, offsetCount);
+                rewrite.heapEnd = heap.length;
+                for (; rewrite.offsetCount < offsetCount; rewrite.offsetCount++) {
+                    rewrite.offsetFields[rewrite.offsetCount] = in.readInt();
+                    rewrite.offsets[rewrite.offsetCount] = in.readInt();
+                }
+                return rewrite;
+            }
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putInt(HEADER_SLOT_CAPACITY, slotCapacity);
+        buffer.putInt(HEADER_SLOT_HIGH_WATER, slotHighWater);
+        buffer.putInt(HEADER_ID_COUNTER, helper.getIdCounter());
+        buffer.putInt(HEADER_HEAP_CAPACITY, heapCapacity);
+        buffer.putInt(HEADER_HEAP_END, heapEnd);
+    }
+
+    private static long fileSize(int slotCapacity, int heapCapacity) {
+        return HEADER_SIZE + (long) slotCapacity * SLOT_SIZE + heapCapacity;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int heapStart() {
+        return HEADER_SIZE + slotCapacity * SLOT_SIZE;
+    }
+
+    /**
+     * Persists the state of the single task after its addition or update, or frees its slot if it is gone
+     */
+    private void saveTask(Type type, int id) {
+        Task task = helper.getInternal(type, id);
+        if (task != null) {
+            writeSlot(task);
+        } else {
+            freeSlot(type, id);
+        }
+        buffer.putInt(HEADER_ID_COUNTER, helper.getIdCounter());
+    }
+
+    /**
+     * Epic status is changed by its Subtasks
+     */
+    private void saveEpicOf(Subtask subtask) {
+        if (subtask != null && subtask.getEpic() != null) {
+            saveTask(Type.EPIC, subtask.getEpic().getId());
+        }
+    }
+
+    private void saveEpics() {
+        helper.getInternalEpics().forEach(this::writeSlot);
+    }
+
+    /**
+     * Forces all changes to the disk
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Failed to close mapped file: " + file, e);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // The load error is reported instead
+        }
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        super.deleteTasks();
+        freeSlots(Type.TASK);
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        super.deleteSubtasks();
+        freeSlots(Type.SUBTASK);
+        saveEpics();
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        super.deleteEpics();
+        freeSlots(Type.SUBTASK);
+        freeSlots(Type.EPIC);
+    }
+
+    @Override
+    public synchronized void clearAll() {
+        super.clearAll();
+        freeSlots(Type.TASK);
+        freeSlots(Type.SUBTASK);
+        freeSlots(Type.EPIC);
+        writeHeader();
+    }
+
+    @Override
+    public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+        int taskId = super.addTask(task);
+        saveTask(Type.TASK, taskId);
+        return taskId;
+    }
+
+    @Override
+    public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        int subtaskId = super.addSubtask(subtask, epic);
+        saveTask(Type.SUBTASK, subtaskId);
+        saveTask(Type.EPIC, epic.getId());
+        return subtaskId;
+    }
+
+    @Override
+    public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+        int epicId = super.addEpic(epic);
+        saveTask(Type.EPIC, epicId);
+        return epicId;
+    }
+
+    @Override
+    public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+        super.updateTask(task);
+        saveTask(Type.TASK, task.getId());
+    }
+
+    @Override
+    public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        super.updateSubtask(subtask);
+        saveTask(Type.SUBTASK, subtask.getId());
+        saveEpicOf(subtask);
+    }
+
+    @Override
+    public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        super.updateEpic(epic);
+        saveTask(Type.EPIC, epic.getId());
+    }
+
+    @Override
+    public synchronized void deleteTaskById(int id) {
+        super.deleteTaskById(id);
+        saveTask(Type.TASK, id);
+    }
+
+    @Override
+    public synchronized void deleteSubtaskById(int id) {
+        Subtask subtask = (Subtask) helper.getInternal(Type.SUBTASK, id);
+        super.deleteSubtaskById(id);
+        saveTask(Type.SUBTASK, id);
+        saveEpicOf(subtask);
+    }
+
+    @Override
+    public synchronized void deleteEpicById(int id) {
+        super.deleteEpicById(id);
+        saveTask(Type.EPIC, id);
+    }
+
+}
@@ -0,0 +1,446 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe in-memory task manager with multi-version state:
+ * <ul>
+ * <li>the state is an immutable TaskSnapshot of persistent maps by ID and of the time index by start time</li>
+ * <li>a mutation makes the next version, copying only the changed paths of the maps, and publishes it
+ * by a volatile write, so a version is never changed after it is published</li>
+ * <li>snapshot() returns the current version in O(1), list reads are views of it copying a task only when it is read,
+ * readers never lock and see all collections at one point in time</li>
+ * <li>mutations are serialized by the write lock, a rejected mutation publishes nothing</li>
+ * </ul>
+ * Stored instances are never changed, reads by ID return copies. History is changed under its own lock:
+ * history changes of a mutation are applied together with publishing its version, and reads add a task to history
+ * only if it is in the current version, so a deleted task never stays in history.
+ */
+public class MvccTaskManager implements TaskManager {
+
+    private volatile TaskSnapshot current = TaskSnapshot.EMPTY;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final IdAllocator idAllocator = new IdAllocator(1, IdAllocator.DEFAULT_BLOCK_SIZE);
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    // History changes of the running mutation, guarded by the write lock
+    private final List<Runnable> historyChanges = new ArrayList<>();
+
+    @FunctionalInterface
+    private interface Mutation<E extends Exception> {
+        TaskSnapshot apply(TaskSnapshot snapshot) throws E;
+    }
+
+    /**
+     * Current version of all tasks, consistent and never changed
+     */
+    public TaskSnapshot snapshot() {
+        return current;
+    }
+
+    private <E extends Exception> void mutate(Mutation<E> mutation) throws E {
+        writeLock.lock();
+        try {
+            TaskSnapshot next = mutation.apply(current);
+            synchronized (historyManager) {
+                current = next;
+                historyChanges.forEach(Runnable::run);
+            }
+        } finally {
+            historyChanges.clear();
+            writeLock.unlock();
+        }
+    }
+
+    private int generateNextId() {
+        return idAllocator.nextId();
+    }
+
+    private void addToHistory(Task task) {
+        synchronized (historyManager) {
+            PersistentTreeMap<Integer, ? extends Task> storage = switch (task.getType()) {
+                case TASK -> current.tasks();
+                case SUBTASK -> current.subtasks();
+                case EPIC -> current.epics();
+            };
+            if (storage.get(task.getId()) != null) {
+                historyManager.add(task);
+            }
+        }
+    }
+
+    private void removeFromHistory(int id) {
+        historyChanges.add(() -> historyManager.remove(id));
+    }
+
+    @Override
+    public List<Task> getTasks() {
+        return current.getTasks();
+    }
+
+    @Override
+    public List<Subtask> getSubtasks() {
+        return current.getSubtasks();
+    }
+
+    @Override
+    public List<Epic> getEpics() {
+        return current.getEpics();
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        Task task = current.tasks().get(id);
+        if (task == null) {
+            return Optional.empty();
+        }
+        addToHistory(task);
+        return Optional.of(task.copy());
+    }
+
+    @Override
+    public Optional<Subtask> getSubtaskById(int id) {
+        Subtask subtask = current.subtasks().get(id);
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        addToHistory(subtask);
+        return Optional.of(subtask.copy());
+    }
+
+    @Override
+    public Optional<Epic> getEpicById(int id) {
+        Epic epic = current.epics().get(id);
+        if (epic == null) {
+            return Optional.empty();
+        }
+        addToHistory(epic);
+        return Optional.of(epic.copy());
+    }
+
+    @Override
+    public Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        if (subtask == null) {
+            return Optional.empty();
+        }
+        Subtask internalSubtask = current.subtasks().get(subtask.getId());
+        if (internalSubtask == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(internalSubtask.getEpic()).map(Epic::copy);
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        return current.getSubtasksByEpicId(epicId);
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        synchronized (historyManager) {
+            return historyManager.getHistory();
+        }
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return current.getPrioritizedTasks();
+    }
+
+    @Override
+    public void deleteTasks() {
+        mutate(snapshot -> {
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = snapshot.tasksByTime();
+            for (Task task : snapshot.tasks().values()) {
+                tasksByTime = removeFromTimeIndex(tasksByTime, task);
+                removeFromHistory(task.getId());
+            }
+            return snapshot.next(PersistentTreeMap.empty(), snapshot.subtasks(), snapshot.epics(), tasksByTime);
+        });
+    }
+
+    @Override
+    public void deleteSubtasks() {
+        mutate(snapshot -> {
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = snapshot.tasksByTime();
+            for (Subtask subtask : snapshot.subtasks().values()) {
+                tasksByTime = removeFromTimeIndex(tasksByTime, subtask);
+                removeFromHistory(subtask.getId());
+            }
+            PersistentTreeMap<Integer, Epic> epics = snapshot.epics();
+            for (Epic epic : snapshot.epics().values()) {
+                if (!epic.getSubtasksList().isEmpty()) {
+                    epics = epics.put(epic.getId(),
+                            updateEpicAggregates(epic.copyWith(epic.getName(), epic.getDescription(), epic.getStatus())));
+                }
+            }
+            return snapshot.next(snapshot.tasks(), PersistentTreeMap.empty(), epics, tasksByTime);
+        });
+    }
+
+    @Override
+    public void deleteEpics() {
+        mutate(snapshot -> {
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = snapshot.tasksByTime();
+            for (Subtask subtask : snapshot.subtasks().values()) {
+                tasksByTime = removeFromTimeIndex(tasksByTime, subtask);
+                removeFromHistory(subtask.getId());
+            }
+            for (Epic epic : snapshot.epics().values()) {
+                removeFromHistory(epic.getId());
+            }
+            return snapshot.next(snapshot.tasks(), PersistentTreeMap.empty(), PersistentTreeMap.empty(), tasksByTime);
+        });
+    }
+
+    public void clearAll() {
+        mutate(snapshot -> {
+            historyChanges.add(historyManager::clearHistory);
+            return snapshot.next(PersistentTreeMap.empty(), PersistentTreeMap.empty(), PersistentTreeMap.empty(),
+                    PersistentTreeMap.empty());
+        });
+    }
+
+    @Override
+    public int addTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy(generateNextId());
+        internalTask.setStatus(Status.NEW);
+        mutate(snapshot -> snapshot.next(snapshot.tasks().put(internalTask.getId(), internalTask), snapshot.subtasks(),
+                snapshot.epics(), replaceInTimeIndex(snapshot.tasksByTime(), null, internalTask)));
+        return internalTask.getId();
+    }
+
+    @Override
+    public int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Subtask internalSubtask = subtask.copy(generateNextId());
+        internalSubtask.setStatus(Status.NEW);
+        mutate(snapshot -> {
+            Epic internalEpic = snapshot.epics().get(epic.getId());
+            if (internalEpic == null) {
+                throw new InvalidManagerTaskException(String.format("Epic with ID=%d does not exists in manager for Subtask addition", epic.getId()));
+            }
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = replaceInTimeIndex(snapshot.tasksByTime(), null, internalSubtask);
+            internalSubtask.setEpic(internalEpic.copy());
+            Epic updatedEpic = internalEpic.copy();
+            updatedEpic.addSubtasksList(internalSubtask.copy());
+            return snapshot.next(snapshot.tasks(), snapshot.subtasks().put(internalSubtask.getId(), internalSubtask),
+                    snapshot.epics().put(updatedEpic.getId(), updateEpicAggregates(updatedEpic)), tasksByTime);
+        });
+        return internalSubtask.getId();
+    }
+
+    @Override
+    public int addEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        Epic internalEpic = epic.copy(generateNextId());
+        internalEpic.setStatus(Status.NEW);
+        mutate(snapshot -> snapshot.next(snapshot.tasks(), snapshot.subtasks(),
+                snapshot.epics().put(internalEpic.getId(), internalEpic), snapshot.tasksByTime()));
+        return internalEpic.getId();
+    }
+
+    @Override
+    public void updateTask(Task task) throws InvalidManagerTaskException {
+        if (task == null) {
+            throw new InvalidManagerTaskException("Task cannot be null.");
+        }
+        Task internalTask = task.copy();
+        mutate(snapshot -> {
+            Task oldTask = snapshot.tasks().get(task.getId());
+            if (oldTask == null) {
+                throw new InvalidManagerTaskException(String.format("Task ID=%d does not exists to update.", task.getId()));
+            }
+            return snapshot.next(snapshot.tasks().put(internalTask.getId(), internalTask), snapshot.subtasks(),
+                    snapshot.epics(), replaceInTimeIndex(snapshot.tasksByTime(), oldTask, internalTask));
+        });
+    }
+
+    /**
+     * The Subtask stays in the Epic it was added to
+     */
+    @Override
+    public void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        if (subtask == null) {
+            throw new InvalidManagerTaskException("Subtask cannot be null.");
+        }
+        Subtask internalSubtask = subtask.copy();
+        mutate(snapshot -> {
+            Subtask oldSubtask = snapshot.subtasks().get(subtask.getId());
+            if (oldSubtask == null) {
+                throw new InvalidManagerTaskException(String.format("Subtask ID=%d does not exists to update.", subtask.getId()));
+            }
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = replaceInTimeIndex(snapshot.tasksByTime(), oldSubtask, internalSubtask);
+            internalSubtask.setEpic(oldSubtask.getEpic());
+            PersistentTreeMap<Integer, Epic> epics = snapshot.epics();
+            Epic internalEpic = oldSubtask.getEpic() != null ? epics.get(oldSubtask.getEpic().getId()) : null;
+            if (internalEpic != null) {
+                Epic updatedEpic = internalEpic.copy();
+                updatedEpic.addSubtasksList(internalSubtask);
+                epics = epics.put(updatedEpic.getId(), updateEpicAggregates(updatedEpic));
+            }
+            return snapshot.next(snapshot.tasks(), snapshot.subtasks().put(internalSubtask.getId(), internalSubtask),
+                    epics, tasksByTime);
+        });
+    }
+
+    /**
+     * Only name and description of the Epic are updated, the rest follows its Subtasks
+     */
+    @Override
+    public void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        if (epic == null) {
+            throw new InvalidManagerTaskException("Epic cannot be null.");
+        }
+        mutate(snapshot -> {
+            Epic internalEpic = snapshot.epics().get(epic.getId());
+            if (internalEpic == null) {
+                throw new InvalidManagerTaskException(String.format("Epic ID=%d does not exists to update.", epic.getId()));
+            }
+            Epic updatedEpic = internalEpic.copyWith(epic.getName(), epic.getDescription(), internalEpic.getStatus());
+            internalEpic.getSubtasksList().forEach(updatedEpic::addSubtasksList);
+            return snapshot.next(snapshot.tasks(), snapshot.subtasks(),
+                    snapshot.epics().put(updatedEpic.getId(), updateEpicAggregates(updatedEpic)), snapshot.tasksByTime());
+        });
+    }
+
+    @Override
+    public void deleteTaskById(int id) {
+        mutate(snapshot -> {
+            Task oldTask = snapshot.tasks().get(id);
+            if (oldTask == null) {
+                return snapshot;
+            }
+            removeFromHistory(id);
+            return snapshot.next(snapshot.tasks().remove(id), snapshot.subtasks(), snapshot.epics(),
+                    removeFromTimeIndex(snapshot.tasksByTime(), oldTask));
+        });
+    }
+
+    @Override
+    public void deleteSubtaskById(int id) {
+        mutate(snapshot -> {
+            Subtask oldSubtask = snapshot.subtasks().get(id);
+            if (oldSubtask == null) {
+                return snapshot;
+            }
+            removeFromHistory(id);
+            PersistentTreeMap<Integer, Epic> epics = snapshot.epics();
+            Epic internalEpic = oldSubtask.getEpic() != null ? epics.get(oldSubtask.getEpic().getId()) : null;
+            if (internalEpic != null) {
+                Epic updatedEpic = internalEpic.copy();
+                updatedEpic.removeSubtask(oldSubtask);
+                epics = epics.put(updatedEpic.getId(), updateEpicAggregates(updatedEpic));
+            }
+            return snapshot.next(snapshot.tasks(), snapshot.subtasks().remove(id), epics,
+                    removeFromTimeIndex(snapshot.tasksByTime(), oldSubtask));
+        });
+    }
+
+    @Override
+    public void deleteEpicById(int id) {
+        mutate(snapshot -> {
+            Epic oldEpic = snapshot.epics().get(id);
+            if (oldEpic == null) {
+                return snapshot;
+            }
+            PersistentTreeMap<Integer, Subtask> subtasks = snapshot.subtasks();
+            PersistentTreeMap<LocalDateTime, Task> tasksByTime = snapshot.tasksByTime();
+            for (Subtask subtask : oldEpic.getSubtasksList()) {
+                Subtask oldSubtask = subtasks.get(subtask.getId());
+                if (oldSubtask != null) {
+                    subtasks = subtasks.remove(oldSubtask.getId());
+                    tasksByTime = removeFromTimeIndex(tasksByTime, oldSubtask);
+                    removeFromHistory(oldSubtask.getId());
+                }
+            }
+            removeFromHistory(id);
+            return snapshot.next(snapshot.tasks(), subtasks, snapshot.epics().remove(id), tasksByTime);
+        });
+    }
+
+    private Epic updateEpicAggregates(Epic epic) {
+        List<Subtask> epicSubtasks = epic.getSubtasksList();
+        boolean allNew = epicSubtasks.stream().allMatch(subtask -> subtask.getStatus() == Status.NEW);
+        boolean allDone = !allNew && epicSubtasks.stream().allMatch(subtask -> subtask.getStatus() == Status.DONE);
+        epic.setStatus(allNew ? Status.NEW : allDone ? Status.DONE : Status.IN_PROGRESS);
+        epic.setStartTime(epic.calcStartTime());
+        epic.setEndTime(epic.calcEndTime());
+        epic.setDuration(epic.calcDuration());
+        return epic;
+    }
+
+    /**
+     * Checks the new task for time intersection with other indexed tasks of the version and returns
+     * the index with the old task replaced by the new one
+     */
+    private PersistentTreeMap<LocalDateTime, Task> replaceInTimeIndex(PersistentTreeMap<LocalDateTime, Task> tasksByTime,
+                                                                      Task oldTask, Task newTask)
+            throws InvalidManagerTaskException {
+        if (hasTimeIntersectionWithAnyTask(tasksByTime, newTask)) {
+            throw new InvalidManagerTaskException(newTask.getType() + " with startTime=" + newTask.getStartTime() + " has intersection with managers tasks");
+        }
+        tasksByTime = removeFromTimeIndex(tasksByTime, oldTask);
+        return newTask.getStartTime() != null ? tasksByTime.put(newTask.getStartTime(), newTask) : tasksByTime;
+    }
+
+    /**
+     * The indexed task is removed only if it is the same task, not another one with the same start time
+     */
+    private PersistentTreeMap<LocalDateTime, Task> removeFromTimeIndex(PersistentTreeMap<LocalDateTime, Task> tasksByTime,
+                                                                       Task task) {
+        if (task == null || task.getStartTime() == null) {
+            return tasksByTime;
+        }
+        Task indexedTask = tasksByTime.get(task.getStartTime());
+        return indexedTask != null && indexedTask.getId() == task.getId()
+                ? tasksByTime.remove(task.getStartTime())
+                : tasksByTime;
+    }
+
+    /**
+     * The nearest indexed tasks before and after the start time, the task itself is skipped, as it is being replaced
+     */
+    private boolean hasTimeIntersectionWithAnyTask(PersistentTreeMap<LocalDateTime, Task> tasksByTime, Task newTask) {
+        LocalDateTime startTime = newTask.getStartTime();
+        if (startTime == null) {
+            return false;
+        }
+        Map.Entry<LocalDateTime, Task> lower = tasksByTime.floorEntry(startTime);
+        if (lower != null && lower.getValue().getId() == newTask.getId()) {
+            lower = tasksByTime.lowerEntry(lower.getKey());
+        }
+        if (lower != null && hasTimeIntersectionTasks(lower.getValue(), newTask)) {
+            return true;
+        }
+        Map.Entry<LocalDateTime, Task> higher = tasksByTime.higherEntry(startTime);
+        if (higher != null && higher.getValue().getId() == newTask.getId()) {
+            higher = tasksByTime.higherEntry(higher.getKey());
+        }
+        return higher != null && hasTimeIntersectionTasks(higher.getValue(), newTask);
+    }
+
+    private boolean hasTimeIntersectionTasks(Task task1, Task task2) {
+        return !task1.getEndTime().isBefore(task2.getStartTime()) && !task2.getEndTime().isBefore(task1.getStartTime());
+    }
+}
@@ -0,0 +1,205 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses the CSV file in parallel: the file is split into byte ranges aligned to record ends,
+ * which are parsed by a ForkJoinPool and joined back in file order.
+ * Record ends are found by one sequential scan following the quotes like CsvTokenizer does, so a line break
+ * inside a quoted field never splits a record. The scan only compares bytes, which is cheap next to parsing.
+ * Subtasks get a placeholder Epic holding only the Epic ID, the caller links them to the loaded Epics.
+ */
+class ParallelCsvLoader {
+
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final int parallelism;
+
+    ParallelCsvLoader(Path file, int parallelism) {
+        this.file = file;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Tasks of the file in file order, the header line must be equal to expectedHeader
+     */
+    List<Task> load(String expectedHeader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineEnd(channel, 0, size);
+            String header = readString(channel, 0, headerEnd).trim();
+            if (!header.equalsIgnoreCase(expectedHeader)) {
+                throw new IllegalArgumentException("Invalid CSV file header. Expected: " + expectedHeader);
+            }
+            long chunkSize = Math.min(MAX_CHUNK_SIZE,
+                    Math.max(MIN_CHUNK_SIZE, (size - headerEnd) / ((long) parallelism * CHUNKS_PER_THREAD)));
+            long[] boundaries = findRecordBoundaries(channel, headerEnd, size, chunkSize);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                return pool.invoke(new ParseRangeTask(channel, boundaries, 0, boundaries.length - 1));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Position right after the first line break at or after start, or end if there is none
+     */
+    private static long findLineEnd(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return Math.min(position + i + 1, end);
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Start of every range and the end of the last one. A range ends at the first record end at least
+     * chunkSize bytes after its start, a line break is a record end only outside a quoted field.
+     * Quote and comma are single bytes in UTF-8 and never part of a multibyte character, so bytes are not decoded.
+     */
+    private static long[] findRecordBoundaries(FileChannel channel, long start, long end, long chunkSize)
+            throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        long nextBoundary = start + chunkSize;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        boolean closedQuote = false;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (quoted) {
+                    if (b == '"') {
+                        quoted = false;
+                        closedQuote = true;
+                    }
+                    continue;
+                }
+                if (b == '"' && (fieldStart || closedQuote)) {
+                    // Opening quote or the second quote of a doubled one
+                    quoted = true;
+                } else if (b == '\n' && position + i + 1 >= nextBoundary && position + i + 1 < end) {
+                    boundaries.add(position + i + 1);
+                    nextBoundary = position + i + 1 + chunkSize;
+                }
+                fieldStart = b == ',' || b == '\n';
+                closedQuote = false;
+            }
+            position += read;
+        }
+        boundaries.add(end);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static String readString(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the records of one range with the same tokenizer as the sequential load, empty lines are skipped
+     */
+    private static List<Task> parseRecords(String text) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        while (tokenizer.next(reader)) {
+            if (tokenizer.isEmptyRecord()) {
+                continue;
+            }
+            tasks.add(TaskDeserializer.deserialize(tokenizer.getFields(), tokenizer.getFieldCount(),
+                    ParallelCsvLoader::placeholderEpic));
+        }
+        return tasks;
+    }
+
+    private static Epic placeholderEpic(int epicId) {
+        return Epic.createForDeserialization(epicId, null, null, Status.NEW);
+    }
+
+    /**
+     * Parses the ranges from fromRange inclusive to toRange exclusive, splitting them in halves
+     */
+    private static class ParseRangeTask extends RecursiveTask<List<Task>> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final transient FileChannel channel;
+        private final long[] boundaries;
+        private final int fromRange;
+        private final int toRange;
+
+        ParseRangeTask(FileChannel channel, long[] boundaries, int fromRange, int toRange) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.fromRange = fromRange;
+            this.toRange = toRange;
+        }
+
+        @Override
+        protected List<Task> compute() {
+            try {
+                if (toRange - fromRange > 1) {
+                    int middle = (fromRange + toRange) >>> 1;
+                    ParseRangeTask left = new ParseRangeTask(channel, boundaries, fromRange, middle);
+                    ParseRangeTask right = new ParseRangeTask(channel, boundaries, middle, toRange);
+                    left.fork();
+                    List<Task> rightTasks = right.compute();
+                    List<Task> tasks = left.join();
+                    tasks.addAll(rightTasks);
+                    return tasks;
+                }
+                return parseRecords(readString(channel, boundaries[fromRange], boundaries[toRange]));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Segment files and the manifest of SEGMENTED storage mode.
+ * Segment N holds the tasks with IDs from N * segmentSize to (N + 1) * segmentSize - 1 in its own file
+ * next to the manifest ('tasks.csv.seg-N'). The manifest lists the segment size and existing segments:
+ * <pre>
+ * task-manager-segments,1
+ * segment_size,10000
+ * 0
+ * 3
+ * </pre>
+ * Segment files and the manifest are written to a temporary file and atomically renamed.
+ * A new segment is written before the manifest listing it, a removed one is deleted after the manifest,
+ * so the manifest never lists a missing segment.
+ */
+class SegmentStore {
+
+    private static final String MANIFEST_HEADER = "task-manager-segments,1";
+    private static final String SEGMENT_SIZE_PREFIX = "segment_size,";
+    private static final String SEGMENT_SUFFIX = ".seg-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path manifest;
+    private final boolean forced;
+    private int segmentSize;
+    private final NavigableSet<Integer> segments = new TreeSet<>();
+
+    SegmentStore(Path manifest, int segmentSize, boolean forced) {
+        this.manifest = manifest;
+        this.segmentSize = segmentSize;
+        this.forced = forced;
+    }
+
+    /**
+     * Writes records of the segment to the writer and returns their count
+     */
+    interface SegmentContent {
+        int write(Writer writer, int firstId, int lastId) throws IOException;
+    }
+
+    /**
+     * Reads the manifest, missing or empty manifest means no segments.
+     * Segment size of an existing manifest takes precedence over the configured one.
+     */
+    void load() throws IOException {
+        segments.clear();
+        if (!Files.exists(manifest) || Files.size(manifest) == 0) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            String sizeLine = reader.readLine();
+            if (!MANIFEST_HEADER.equals(header) || sizeLine == null || !sizeLine.startsWith(SEGMENT_SIZE_PREFIX)) {
+                throw new IllegalArgumentException("Invalid segment manifest header. Expected: " + MANIFEST_HEADER);
+            }
+            try {
+                segmentSize = Integer.parseInt(sizeLine.substring(SEGMENT_SIZE_PREFIX.length()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        segments.add(Integer.parseInt(line.trim()));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid segment manifest: " + manifest, e);
+            }
+        }
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    int segmentOf(int id) {
+        return id / segmentSize;
+    }
+
+    /**
+     * Paths of existing segments in ID order
+     */
+    List<Path> getSegmentPaths() {
+        List<Path> paths = new ArrayList<>(segments.size());
+        segments.forEach(segment -> paths.add(getSegmentPath(segment)));
+        return paths;
+    }
+
+    NavigableSet<Integer> getSegments() {
+        return Collections.unmodifiableNavigableSet(segments);
+    }
+
+    Path getSegmentPath(int segment) {
+        return manifest.resolveSibling(manifest.getFileName() + SEGMENT_SUFFIX + segment);
+    }
+
+    /**
+     * Rewrites the segment, a segment without records is removed
+     */
+    void write(int segment, SegmentContent content) throws IOException {
+        Path segmentPath = getSegmentPath(segment);
+        Path tempFile = segmentPath.resolveSibling(segmentPath.getFileName() + TEMP_SUFFIX);
+        int firstId = segment * segmentSize;
+        int recordCount;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            recordCount = content.write(writer, firstId, firstId + segmentSize - 1);
+            writer.flush();
+            if (forced && recordCount > 0) {
+                channel.force(true);
+            }
+        }
+        if (recordCount == 0) {
+            Files.delete(tempFile);
+            if (segments.remove(segment)) {
+                writeManifest();
+                Files.deleteIfExists(segmentPath);
+            }
+            return;
+        }
+        Files.move(tempFile, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (segments.add(segment)) {
+            writeManifest();
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Path tempFile = manifest.resolveSibling(manifest.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            writer.write(MANIFEST_HEADER);
+            writer.write(System.lineSeparator());
+            writer.write(SEGMENT_SIZE_PREFIX + segmentSize);
+            writer.write(System.lineSeparator());
+            for (int segment : segments) {
+                writer.write(String.valueOf(segment));
+                writer.write(System.lineSeparator());
+            }
+            writer.flush();
+            if (forced) {
+                channel.force(true);
+            }
+        }
+        Files.move(tempFile, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.taskmanager.service;
+
+/**
+ * Snapshot file formats of FileBackedTaskManager
+ * <ul>
+ * <li>CSV - human-readable CSV file with header 'id,type,name,status,description,epic,start_time,duration'</li>
+ * <li>BINARY - compact versioned binary file, see BinarySnapshotCodec</li>
+ * </ul>
+ */
+public enum SnapshotFormat {
+    CSV,
+    BINARY,
+}
@@ -0,0 +1,226 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.service.exception.ManagerLoadException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Crash-safe snapshot files. A snapshot is written to the temporary file 'tasks.csv.tmp', which is forced
+ * if required and atomically renamed over the storage file, the replaced snapshot is kept as 'tasks.csv.prev'.
+ * Every snapshot file has a checksum file next to it ('tasks.csv.crc') with the line
+ * 'crc32c,generation,size,crc', the generation grows with every snapshot.
+ * <p>
+ * Recovery matches the snapshot files against all checksum files and picks the newest valid one,
+ * so a crash at any step of the rename sequence leaves either the new or the previous snapshot loadable.
+ * Snapshot data is never changed, so the storage file stays a plain CSV or binary file.
+ */
+class SnapshotStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREVIOUS_SUFFIX = ".prev";
+    private static final String CHECKSUM_SUFFIX = ".crc";
+    private static final String CHECKSUM_PREFIX = "crc32c";
+    private static final int CHECKSUM_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path storage;
+    private final Path temp;
+    private final Path previous;
+    private final boolean forced;
+
+    /**
+     * Checksum of the snapshot file of the given generation
+     */
+    record Checksum(long generation, long size, int crc) {
+
+        String format() {
+            return CHECKSUM_PREFIX + "," + generation + "," + size + "," + Integer.toHexString(crc);
+        }
+
+        static Checksum parse(String line) {
+            String[] fields = line.trim().split(",");
+            if (fields.length != 4 || !CHECKSUM_PREFIX.equals(fields[0])) {
+                return null;
+            }
+            try {
+                return new Checksum(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        Integer.parseUnsignedInt(fields[3], 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Snapshot file picked by recovery, generation is 0 for a storage file written without checksum.
+     * Stale storage file is complete but does not match its checksum, e.g. after a hand edit.
+     */
+    record Snapshot(Path path, long generation, boolean stale) {
+    }
+
+    SnapshotStore(Path storage, boolean forced) {
+        this.storage = storage;
+        this.forced = forced;
+        temp = storage.resolveSibling(storage.getFileName() + TEMP_SUFFIX);
+        previous = storage.resolveSibling(storage.getFileName() + PREVIOUS_SUFFIX);
+    }
+
+    Path getTempPath() {
+        return temp;
+    }
+
+    static Path getChecksumPath(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + CHECKSUM_SUFFIX);
+    }
+
+    /**
+     * Makes the completely written temporary file the current snapshot, keeping the replaced one as previous
+     */
+    void commit(Checksum checksum) throws IOException {
+        writeChecksum(getChecksumPath(temp), checksum);
+        if (Files.exists(storage)) {
+            Files.move(storage, previous, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(getChecksumPath(storage))) {
+            Files.move(getChecksumPath(storage), getChecksumPath(previous),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(temp, storage, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(getChecksumPath(temp), getChecksumPath(storage),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeChecksum(Path file, Checksum checksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap((checksum.format() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (forced) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Newest generation found in the checksum files without verifying snapshot files, 0 if there are none.
+     * Cheap enough to detect snapshots written by another process.
+     */
+    long readLatestGeneration() throws IOException {
+        long generation = 0;
+        for (Path file : List.of(storage, temp, previous)) {
+            try {
+                Checksum checksum = Checksum.parse(Files.readString(getChecksumPath(file), StandardCharsets.UTF_8));
+                if (checksum != null) {
+                    generation = Math.max(generation, checksum.generation());
+                }
+            } catch (NoSuchFileException e) {
+                // Not written yet or being renamed
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Newest snapshot file matching a checksum, checked from the newest checksum down, so normally
+     * only the storage file is read once. Storage file without any checksum files is taken unverified.
+     * A crash can only cut off the tail of the storage file, so other snapshot files are used only if the storage file
+     * is missing or shorter than the newest checksum records, a complete storage file is taken as stale.
+     * Returns null if there is no non-empty snapshot file, throws ManagerLoadException if no snapshot file is valid.
+     */
+    Snapshot recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path file : List.of(storage, temp, previous)) {
+            if (Files.exists(file) && Files.size(file) > 0) {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            return null;
+        }
+        List<Checksum> checksums = new ArrayList<>();
+        for (Path file : List.of(storage, temp, previous)) {
+            Path checksumFile = getChecksumPath(file);
+            if (Files.exists(checksumFile)) {
+                Checksum checksum = Checksum.parse(Files.readString(checksumFile, StandardCharsets.UTF_8));
+                if (checksum != null) {
+                    checksums.add(checksum);
+                }
+            }
+        }
+        if (checksums.isEmpty()) {
+            return files.contains(storage) ? new Snapshot(storage, 0, false) : null;
+        }
+        checksums.sort(Comparator.comparingLong(Checksum::generation).reversed());
+        Map<Path, Integer> fileCrcs = new HashMap<>();
+        for (Checksum checksum : checksums) {
+            if (files.contains(storage) && matches(storage, checksum, fileCrcs)) {
+                return new Snapshot(storage, checksum.generation(), false);
+            }
+        }
+        Checksum latest = checksums.get(0);
+        if (files.contains(storage) && Files.size(storage) >= latest.size()) {
+            return new Snapshot(storage, latest.generation(), true);
+        }
+        for (Checksum checksum : checksums) {
+            for (Path file : files) {
+                if (matches(file, checksum, fileCrcs)) {
+                    return new Snapshot(file, checksum.generation(), false);
+                }
+            }
+        }
+        throw new ManagerLoadException("Storage file is incomplete and no other snapshot file matches its checksum: "
+                + storage);
+    }
+
+    private boolean matches(Path file, Checksum checksum, Map<Path, Integer> fileCrcs) throws IOException {
+        if (Files.size(file) != checksum.size()) {
+            return false;
+        }
+        Integer crc = fileCrcs.get(file);
+        if (crc == null) {
+            crc = checksum(file);
+            fileCrcs.put(file, crc);
+        }
+        return crc == checksum.crc();
+    }
+
+    /**
+     * Writes the checksum of the stale storage file with the next generation, so it is verified on the next recovery
+     */
+    Snapshot acceptStale(Snapshot snapshot) throws IOException {
+        long generation = snapshot.generation() + 1;
+        writeChecksum(getChecksumPath(storage), new Checksum(generation, Files.size(storage), checksum(storage)));
+        return new Snapshot(storage, generation, false);
+    }
+
+    /**
+     * CRC32C of the whole file, read in large chunks to a direct buffer
+     */
+    static int checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
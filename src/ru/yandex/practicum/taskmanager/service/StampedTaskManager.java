@@ -0,0 +1,258 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe InMemoryTaskManager for read-heavy use, guarded by a StampedLock.
+ * Readers take an optimistic stamp, read and copy the result without locking and validate the stamp,
+ * only a read overlapping a write is repeated under the read lock. A racing read may see a half-changed
+ * structure and fail or return garbage, both are discarded as the stamp is invalid then.
+ * Mutations, including the time intersection check, take the write lock.
+ * History is changed by reads too, so it has its own lock, taken by readers after the read.
+ * Mutations hold it too, so a reader checks under it that the task is not deleted meanwhile before adding it to history.
+ */
+public class StampedTaskManager extends InMemoryTaskManager {
+
+    private final StampedLock lock = new StampedLock();
+    private final Object historyLock = new Object();
+    /**
+     * StampedLock is not reentrant, mutations of InMemoryTaskManager call other public mutations
+     * (e.g. deleteEpicById deletes Subtasks), they run under the write lock already held
+     */
+    private volatile Thread writer;
+
+    @FunctionalInterface
+    private interface Mutation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    public StampedTaskManager() {
+        super();
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Raced with a writer, read again under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T, E extends Exception> T write(Mutation<T, E> mutation) throws E {
+        if (writer == Thread.currentThread()) {
+            return mutation.run();
+        }
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        try {
+            synchronized (historyLock) {
+                return mutation.run();
+            }
+        } finally {
+            writer = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copy of the internal task made under the stamp, so a validated copy is consistent
+     */
+    private Task readCopy(Type type, int id) {
+        return read(() -> {
+            Task task = helper.getInternal(type, id);
+            return task != null ? task.copy() : null;
+        });
+    }
+
+    private <T extends Task> Optional<T> addToHistory(T task) {
+        if (task == null) {
+            return Optional.empty();
+        }
+        synchronized (historyLock) {
+            if (helper.getInternal(task.getType(), task.getId()) != null) {
+                helper.addToHistory(task);
+            }
+        }
+        return Optional.of(task);
+    }
+
+    @Override
+    public List<Task> getTasks() {
+        return read(super::getTasks);
+    }
+
+    @Override
+    public List<Subtask> getSubtasks() {
+        return read(super::getSubtasks);
+    }
+
+    @Override
+    public List<Epic> getEpics() {
+        return read(super::getEpics);
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        return addToHistory(readCopy(Type.TASK, id));
+    }
+
+    @Override
+    public Optional<Subtask> getSubtaskById(int id) {
+        return addToHistory((Subtask) readCopy(Type.SUBTASK, id));
+    }
+
+    @Override
+    public Optional<Epic> getEpicById(int id) {
+        return addToHistory((Epic) readCopy(Type.EPIC, id));
+    }
+
+    @Override
+    public Optional<Epic> getEpicBySubtask(Subtask subtask) {
+        return read(() -> super.getEpicBySubtask(subtask));
+    }
+
+    @Override
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        return read(() -> {
+            Task epic = helper.getInternal(Type.EPIC, epicId);
+            return epic != null ? new ArrayList<>(((Epic) epic).getSubtasksList()) : List.of();
+        });
+    }
+
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return read(helper::getPrioritizedTasksBounded);
+    }
+
+    @Override
+    public List<Task> getHistory() {
+        synchronized (historyLock) {
+            return super.getHistory();
+        }
+    }
+
+    @Override
+    public void deleteTasks() {
+        write(() -> {
+            super.deleteTasks();
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteSubtasks() {
+        write(() -> {
+            super.deleteSubtasks();
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteEpics() {
+        write(() -> {
+            super.deleteEpics();
+            return null;
+        });
+    }
+
+    @Override
+    public void clearAll() {
+        write(() -> {
+            super.clearAll();
+            return null;
+        });
+    }
+
+    @Override
+    public int addTask(Task task) throws InvalidManagerTaskException {
+        return write(() -> super.addTask(task));
+    }
+
+    @Override
+    public int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+        return write(() -> super.addSubtask(subtask, epic));
+    }
+
+    @Override
+    public int addEpic(Epic epic) throws InvalidManagerTaskException {
+        return write(() -> super.addEpic(epic));
+    }
+
+    @Override
+    public void updateTask(Task task) throws InvalidManagerTaskException {
+        write(() -> {
+            super.updateTask(task);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+        write(() -> {
+            super.updateSubtask(subtask);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateEpic(Epic epic) throws InvalidManagerTaskException {
+        write(() -> {
+            super.updateEpic(epic);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteTaskById(int id) {
+        write(() -> {
+            super.deleteTaskById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteSubtaskById(int id) {
+        write(() -> {
+            super.deleteSubtaskById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteEpicById(int id) {
+        write(() -> {
+            super.deleteEpicById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateEpicStatus(Epic internalEpic) {
+        write(() -> {
+            super.updateEpicStatus(internalEpic);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,334 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cross-process coordination of managers sharing a storage with FileChannel locks on the lock file
+ * next to the storage file ('tasks.csv.lock'). The storage file itself is replaced by rename on every snapshot,
+ * so it cannot hold a lock. The lock file header is 'magic, version stamp', 8 bytes each:
+ * <ul>
+ * <li>magic region - locked exclusively by the single writer for its whole life, a second writer fails to open</li>
+ * <li>stamp region - locked exclusively while the writer changes storage files and increments the stamp,
+ * shared while a reader reads them; a reader compares the stamp with the one it has read last
+ * and skips reloading when nothing was written</li>
+ * </ul>
+ * File locks are held by the whole JVM, so managers of one JVM share one open lock file and are coordinated
+ * by its read-write lock. A FileChannel is closed if a thread is interrupted while using it, which would release
+ * the file locks of all managers, so the lock file is used only by its own I/O thread, which is never interrupted.
+ * Callers wait for it uninterruptibly and keep their interrupt status.
+ */
+class StorageLock implements Closeable {
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final long MAGIC = 0x544d4c4f434b3031L;
+    private static final long MAGIC_POSITION = 0;
+    private static final long STAMP_POSITION = Long.BYTES;
+    private static final long HEADER_SIZE = 2 * Long.BYTES;
+    private static final Map<Path, LockFile> OPEN_FILES = new HashMap<>();
+
+    private final LockFile file;
+    private boolean writer;
+    private boolean closed;
+
+    /**
+     * Lock file opened once per JVM, every StorageLock holds a reference
+     */
+    private static class LockFile {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final ExecutorService io;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private int references;
+        private int sharedHolders;
+        private FileLock sharedFileLock;
+        private FileLock exclusiveFileLock;
+        private FileLock writerFileLock;
+
+        LockFile(Path path) throws IOException {
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            io = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-lock-" + path.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Runs the channel operation on the I/O thread and waits for it even if the caller is interrupted
+         */
+        <T> T run(ChannelOperation<T> operation) throws IOException {
+            Future<T> result = io.submit(() -> operation.run(channel));
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return result.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                switch (e.getCause()) {
+                    case IOException cause -> throw cause;
+                    case RuntimeException cause -> throw cause;
+                    case Error cause -> throw cause;
+                    default -> throw new IOException("Failed to use lock file: " + path, e.getCause());
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void close() throws IOException {
+            try {
+                run(channel -> {
+                    channel.close();
+                    return null;
+                });
+            } finally {
+                io.shutdown();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChannelOperation<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    private StorageLock(LockFile file) {
+        this.file = file;
+    }
+
+    static Path getLockPath(Path storage) {
+        return storage.resolveSibling(storage.getFileName() + LOCK_SUFFIX);
+    }
+
+    /**
+     * Opens the lock file of the storage, writing its header if the file is new
+     */
+    static StorageLock open(Path storage) throws IOException {
+        Path path = getLockPath(storage).toAbsolutePath().normalize();
+        LockFile file;
+        synchronized (OPEN_FILES) {
+            file = OPEN_FILES.get(path);
+            if (file == null) {
+                file = new LockFile(path);
+                OPEN_FILES.put(path, file);
+            }
+            file.references++;
+        }
+        StorageLock storageLock = new StorageLock(file);
+        try {
+            storageLock.lockExclusive();
+            try {
+                file.run(channel -> {
+                    if (channel.size() < HEADER_SIZE) {
+                        ByteBuffer header = ByteBuffer.allocate((int) HEADER_SIZE).putLong(MAGIC).putLong(0).flip();
+                        while (header.hasRemaining()) {
+                            channel.write(header, MAGIC_POSITION + header.position());
+                        }
+                    } else if (readLong(channel, MAGIC_POSITION) != MAGIC) {
+                        throw new IOException("Not a storage lock file: " + path);
+                    }
+                    return null;
+                });
+            } finally {
+                storageLock.unlockExclusive(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            storageLock.close();
+            throw e;
+        }
+        return storageLock;
+    }
+
+    /**
+     * Makes this manager the only writer of the storage until close()
+     */
+    void acquireWriter() throws IOException {
+        synchronized (file) {
+            if (writer) {
+                return;
+            }
+            FileLock writerLock = null;
+            if (file.writerFileLock == null) {
+                try {
+                    writerLock = file.run(channel -> channel.tryLock(MAGIC_POSITION, Long.BYTES, false));
+                } catch (OverlappingFileLockException e) {
+                    // Held by the writer of this JVM
+                }
+            }
+            if (writerLock == null) {
+                throw new ManagerSaveException("Storage is already opened by another writer: " + file.path);
+            }
+            file.writerFileLock = writerLock;
+            writer = true;
+        }
+    }
+
+    /**
+     * Blocks until no writer changes the storage, the lock is reentrant
+     */
+    void lockShared() throws IOException {
+        file.lock.readLock().lock();
+        synchronized (file) {
+            if (file.sharedHolders == 0 && file.exclusiveFileLock == null) {
+                try {
+                    file.sharedFileLock = file.run(channel -> channel.lock(STAMP_POSITION, Long.BYTES, true));
+                } catch (IOException | RuntimeException e) {
+                    file.lock.readLock().unlock();
+                    throw e;
+                }
+            }
+            file.sharedHolders++;
+        }
+    }
+
+    void unlockShared() throws IOException {
+        try {
+            synchronized (file) {
+                if (--file.sharedHolders == 0 && file.sharedFileLock != null) {
+                    FileLock sharedLock = file.sharedFileLock;
+                    file.sharedFileLock = null;
+                    release(sharedLock);
+                }
+            }
+        } finally {
+            file.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Blocks until no reader reads and no other writer changes the storage, the lock is reentrant
+     */
+    void lockExclusive() throws IOException {
+        file.lock.writeLock().lock();
+        if (file.lock.getWriteHoldCount() > 1) {
+            return;
+        }
+        try {
+            FileLock exclusiveLock = file.run(channel -> channel.lock(STAMP_POSITION, Long.BYTES, false));
+            synchronized (file) {
+                file.exclusiveFileLock = exclusiveLock;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.lock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Increments the version stamp once the outermost exclusive lock is released, as storage files were changed
+     */
+    void unlockExclusive() throws IOException {
+        unlockExclusive(true);
+    }
+
+    private void unlockExclusive(boolean changed) throws IOException {
+        try {
+            if (file.lock.getWriteHoldCount() == 1) {
+                FileLock exclusiveLock;
+                synchronized (file) {
+                    exclusiveLock = file.exclusiveFileLock;
+                    file.exclusiveFileLock = null;
+                }
+                try {
+                    if (changed) {
+                        file.run(channel -> {
+                            writeLong(channel, STAMP_POSITION, readLong(channel, STAMP_POSITION) + 1);
+                            return null;
+                        });
+                    }
+                } finally {
+                    release(exclusiveLock);
+                }
+            }
+        } finally {
+            file.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Version stamp of the storage, changes with every write of the writer
+     */
+    long readStamp() throws IOException {
+        lockShared();
+        try {
+            return file.run(channel -> readLong(channel, STAMP_POSITION));
+        } finally {
+            unlockShared();
+        }
+    }
+
+    private void release(FileLock fileLock) throws IOException {
+        file.run(channel -> {
+            fileLock.release();
+            return null;
+        });
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        return buffer.flip().getLong();
+    }
+
+    private static void writeLong(FileChannel channel, long position, long value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(value).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Releases the writer lock, the lock file is closed by the last StorageLock of the JVM
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_FILES) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (file) {
+                if (writer) {
+                    writer = false;
+                    FileLock writerLock = file.writerFileLock;
+                    file.writerFileLock = null;
+                    if (writerLock != null && writerLock.isValid()) {
+                        release(writerLock);
+                    }
+                }
+            }
+            if (--file.references == 0) {
+                OPEN_FILES.remove(file.path);
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.taskmanager.service;
+
+/**
+ * Persistence modes of FileBackedTaskManager
+ * <ul>
+ * <li>SNAPSHOT - every mutation rewrites the whole CSV file</li>
+ * <li>JOURNAL - every mutation appends one record to the journal file, the CSV file is the last snapshot</li>
+ * <li>BACKGROUND - mutations only mark the storage dirty, a background thread rewrites the CSV file
+ * with the latest state, collapsing consecutive mutations into one write</li>
+ * <li>SEGMENTED - tasks are split by ID range into segment files listed in the manifest (the storage file),
+ * every mutation rewrites only the segments of the changed tasks</li>
+ * </ul>
+ */
+public enum StorageMode {
+    SNAPSHOT,
+    JOURNAL,
+    BACKGROUND,
+    SEGMENTED,
+}
@@ -0,0 +1,108 @@
+package ru.yandex.practicum.taskmanager.service;
+
+/**
+ * Settings of FileBackedTaskManager storage.
+ * Journal is compacted into a new snapshot in background as soon as it reaches
+ * compactionRecords records or compactionBytes bytes, whichever comes first.
+ * With GROUP_COMMIT and ASYNC durability buffered journal records are written every flushIntervalMillis,
+ * other modes rewrite files and support FLUSH and FSYNC durability only.
+ * With loadParallelism greater than 1 the CSV file is parsed on that many threads on load.
+ * Snapshot file is written and read in snapshotFormat, the journal is always CSV.
+ * In SEGMENTED mode every segment file holds segmentSize consecutive task IDs, segments are always CSV.
+ * Snapshots and the journal are written with compression, segments are never compressed.
+ * With locking the storage is shared with managers of other processes: one writer and any number of
+ * read-only followers, coordinated by file locks on the lock file next to the storage file.
+ */
+public record StorageOptions(StorageMode mode, long compactionRecords, long compactionBytes,
+                             Durability durability, long flushIntervalMillis, int loadParallelism,
+                             SnapshotFormat snapshotFormat, int segmentSize, Compression compression,
+                             boolean locking) {
+
+    public static final long DEFAULT_COMPACTION_RECORDS = 100_000;
+    public static final long DEFAULT_COMPACTION_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+    public static final int DEFAULT_SEGMENT_SIZE = 10_000;
+
+    public StorageOptions {
+        if (mode == null) {
+            throw new IllegalArgumentException("Storage mode cannot be null.");
+        }
+        if (durability == null) {
+            throw new IllegalArgumentException("Durability cannot be null.");
+        }
+        if (mode != StorageMode.JOURNAL && durability != Durability.FLUSH && durability != Durability.FSYNC) {
+            throw new IllegalArgumentException(mode + " mode supports FLUSH and FSYNC durability only: " + durability);
+        }
+        if (compactionRecords <= 0 || compactionBytes <= 0) {
+            throw new IllegalArgumentException("Compaction thresholds must be positive.");
+        }
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive.");
+        }
+        if (loadParallelism <= 0) {
+            throw new IllegalArgumentException("Load parallelism must be positive.");
+        }
+        if (snapshotFormat == null) {
+            throw new IllegalArgumentException("Snapshot format cannot be null.");
+        }
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive.");
+        }
+        if (compression == null) {
+            throw new IllegalArgumentException("Compression cannot be null.");
+        }
+    }
+
+    public static StorageOptions of(StorageMode mode) {
+        return new StorageOptions(mode, DEFAULT_COMPACTION_RECORDS, DEFAULT_COMPACTION_BYTES,
+                Durability.FLUSH, DEFAULT_FLUSH_INTERVAL_MILLIS, 1, SnapshotFormat.CSV,
+                DEFAULT_SEGMENT_SIZE, Compression.NONE, false);
+    }
+
+    public StorageOptions withCompaction(long compactionRecords, long compactionBytes) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withDurability(Durability durability) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withDurability(Durability durability, long flushIntervalMillis) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withLoadParallelism(int loadParallelism) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withSnapshotFormat(SnapshotFormat snapshotFormat) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withSegmentSize(int segmentSize) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withCompression(Compression compression) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    public StorageOptions withLocking(boolean locking) {
+        return new StorageOptions(mode, compactionRecords, compactionBytes, durability, flushIntervalMillis,
+                loadParallelism, snapshotFormat, segmentSize, compression, locking);
+    }
+
+    /**
+     * Whether saved data is forced to the disk before the save is considered complete
+     */
+    boolean isForced() {
+        return durability == Durability.FSYNC || durability == Durability.GROUP_COMMIT;
+    }
+}
@@ -17,36 +17,47 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
 
 public class TaskDeserializer {
 
     private static final int CSV_FIELD_COUNT = 8;
 
     public static Task deserialize(String csvLine, TaskManager taskManager) throws TaskManagerException {
-        String[] fields = parseCsvLine(csvLine);
+        return deserialize(csvLine, epicId -> resolveEpic(epicId, taskManager));
+    }
+
+    /**
+     * Subtask Epic is looked up by its ID with epicResolver, which may return null for unknown Epic
+     */
+    public static Task deserialize(String csvLine, IntFunction<Epic> epicResolver) throws TaskManagerException {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        tokenizer.tokenize(csvLine);
+        if (tokenizer.getFieldCount() != CSV_FIELD_COUNT) {
+            throw new IllegalCsvFormatException("Invalid CSV format in line: " + csvLine);
+        }
+        return deserialize(tokenizer.getFields(), CSV_FIELD_COUNT, epicResolver);
+    }
 
+    /**
+     * Deserializes already tokenized CSV record, see CsvTokenizer
+     */
+    static Task deserialize(String[] fields, int fieldCount, IntFunction<Epic> epicResolver) throws TaskManagerException {
+        if (fieldCount != CSV_FIELD_COUNT) {
+            throw new IllegalCsvFormatException("Invalid CSV format in line: " + String.join(",", Arrays.copyOf(fields, fieldCount)));
+        }
         Type type = parseType(fields[1]);
 
         return switch (type) {
             case TASK -> createTask(fields);
-            case SUBTASK -> createSubtask(fields, taskManager);
+            case SUBTASK -> createSubtask(fields, epicResolver);
             case EPIC -> createEpic(fields);
         };
     }
 
     public static Task deserialize(String csvLine) throws TaskManagerException {
-        return deserialize(csvLine, null);
-    }
-
-    private static String[] parseCsvLine(String csvLine) {
-        String[] fields = csvLine.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", CSV_FIELD_COUNT);
-        if (fields.length != CSV_FIELD_COUNT) {
-            throw new IllegalCsvFormatException("Invalid CSV format in line: " + csvLine);
-        }
-        for (int i = 0; i < fields.length; i++) {
-            fields[i] = unescapeCsv(fields[i]);
-        }
-        return fields;
+        return deserialize(csvLine, (TaskManager) null);
     }
 
     public static String escapeCsv(String value) {
@@ -71,9 +82,9 @@ public class TaskDeserializer {
         return value;
     }
 
-    private static Type parseType(String typeField) {
+    static Type parseType(String typeField) {
         try {
-            return Type.valueOf(unescapeCsv(typeField));
+            return Type.valueOf(typeField);
         } catch (IllegalArgumentException e) {
             throw new IllegalTaskTypeException(String.format("Unknown task type '%s' in CSV line", typeField), e);
         }
@@ -97,13 +108,14 @@ public class TaskDeserializer {
         );
     }
 
-    private static Subtask createSubtask(String[] fields, TaskManager taskManager) {
+    private static Subtask createSubtask(String[] fields, IntFunction<Epic> epicResolver) {
+        int epicId = parseId(fields[5]);
         return Subtask.createForDeserialization(
                 parseId(fields[0]),
                 fields[2],
                 fields[4],
                 parseStatus(fields[3]),
-                resolveEpic(parseId(fields[5]), taskManager), // epic
+                epicId > 0 && epicResolver != null ? epicResolver.apply(epicId) : null, // epic
                 parseDateTime(fields[6]),   //startTime
                 parseDuration(fields[7])    //duration
         );
@@ -118,7 +130,7 @@ public class TaskDeserializer {
         );
     }
 
-    private static int parseId(String idStr) {
+    static int parseId(String idStr) {
         try {
             if (idStr == null || idStr.isEmpty()) {
                 return 0;
@@ -137,7 +149,7 @@ public class TaskDeserializer {
         }
     }
 
-    private static LocalDateTime parseDateTime(String dateTimeStr) {
+    static LocalDateTime parseDateTime(String dateTimeStr) {
         try {
             if (dateTimeStr == null || dateTimeStr.isEmpty()) {
                 return null;
@@ -148,7 +160,7 @@ public class TaskDeserializer {
         }
     }
 
-    private static Duration parseDuration(String durationStr) {
+    static Duration parseDuration(String durationStr) {
         try {
             if (durationStr == null || durationStr.isEmpty()) return Duration.ZERO;
             long minutes = Long.parseLong(durationStr);
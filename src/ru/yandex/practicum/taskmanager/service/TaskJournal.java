@@ -0,0 +1,579 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Type;
+import ru.yandex.practicum.taskmanager.service.exception.IllegalCsvFormatException;
+import ru.yandex.practicum.taskmanager.service.exception.IllegalTaskIdException;
+import ru.yandex.practicum.taskmanager.service.exception.IllegalTaskTypeException;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.TaskManagerException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+/**
+ * Append-only log of FileBackedTaskManager mutations, one CSV record per mutation:
+ * <ul>
+ * <li>'PUT,&lt;task CSV line&gt;' - task was added or updated</li>
+ * <li>'DEL,&lt;type&gt;,&lt;id&gt;' - task was deleted by ID</li>
+ * <li>'CLR,&lt;type&gt;' - all tasks of the type were deleted</li>
+ * </ul>
+ * Every record describes the resulting state rather than the operation, so replaying a record twice is harmless.
+ * On compaction the journal is rotated to the pending file ('tasks.csv.journal.pending'),
+ * which is deleted once the new snapshot is written. Replay reads the pending file first, then the journal.
+ * With GROUP_COMMIT and ASYNC durability records are buffered in memory and written by a background flusher
+ * once per flush interval, so a burst of mutations costs one write (and one fsync for GROUP_COMMIT).
+ * With GZIP compression every write is compressed separately, so it pays off with GROUP_COMMIT and ASYNC batches.
+ * A file is read in the format of its first bytes, so a journal written with another compression setting is
+ * rewritten in the current one before anything is appended to it.
+ * With a storage lock every write and rotation is made under its exclusive lock, so followers never read them half done.
+ */
+class TaskJournal implements Closeable {
+
+    static final String PUT = "PUT";
+    static final String DELETE = "DEL";
+    static final String CLEAR = "CLR";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final Path pendingPath;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+    private final Compression compression;
+    private final StorageLock lock;
+    private final StringBuilder buffer = new StringBuilder();
+    private FileChannel channel;
+    private boolean unforced;
+    private ScheduledExecutorService flusher;
+    private IOException flushError;
+    private long recordCount;
+    private long size;
+
+    TaskJournal(Path path) {
+        this(path, Durability.FLUSH, StorageOptions.DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    TaskJournal(Path path, Durability durability, long flushIntervalMillis) {
+        this(path, durability, flushIntervalMillis, Compression.NONE);
+    }
+
+    TaskJournal(Path path, Durability durability, long flushIntervalMillis, Compression compression) {
+        this(path, durability, flushIntervalMillis, compression, null);
+    }
+
+    TaskJournal(Path path, Durability durability, long flushIntervalMillis, Compression compression, StorageLock lock) {
+        this.path = path;
+        this.compression = compression;
+        this.lock = lock;
+        this.pendingPath = path.resolveSibling(path.getFileName() + PENDING_SUFFIX);
+        this.durability = durability;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    Path getPendingPath() {
+        return pendingPath;
+    }
+
+    /**
+     * Number of records not yet covered by a snapshot
+     */
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Approximate size in bytes of records not yet covered by a snapshot
+     */
+    long getSize() {
+        return size;
+    }
+
+    void appendPut(String taskCsvLine) throws IOException {
+        append(PUT + "," + taskCsvLine);
+    }
+
+    void appendDelete(Type type, int id) throws IOException {
+        append(DELETE + "," + type + "," + id);
+    }
+
+    void appendClear(Type type) throws IOException {
+        append(CLEAR + "," + type);
+    }
+
+    private synchronized void append(String record) throws IOException {
+        throwFlushError();
+        buffer.append(record).append('\n');
+        recordCount++;
+        size += record.length() + 1;
+        switch (durability) {
+            case FLUSH -> write(false);
+            case FSYNC -> write(true);
+            case GROUP_COMMIT, ASYNC -> {
+                if (buffer.length() >= MAX_BUFFER_SIZE) {
+                    write(false);
+                }
+                startFlusher();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces buffered records regardless of the durability mode
+     */
+    synchronized void sync() throws IOException {
+        throwFlushError();
+        write(true);
+    }
+
+    private void write(boolean force) throws IOException {
+        if (!buffer.isEmpty()) {
+            ByteBuffer bytes = compress(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buffer)));
+            lockExclusive();
+            try {
+                if (channel == null) {
+                    channel = openForAppend();
+                }
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } finally {
+                unlockExclusive();
+            }
+            buffer.setLength(0);
+            unforced = true;
+        }
+        if (force && unforced) {
+            channel.force(false);
+            unforced = false;
+        }
+    }
+
+    /**
+     * Cuts off the last record of an uncompressed journal torn by a crash, so new records do not continue it
+     */
+    private FileChannel openForAppend() throws IOException {
+        convertToCurrentCompression(path);
+        FileChannel appendChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            long fileSize = appendChannel.size();
+            if (fileSize > 0 && !Compression.isCompressed(path)) {
+                long end = completeRecordsEnd(path, fileSize);
+                if (end < fileSize) {
+                    appendChannel.truncate(end);
+                }
+            }
+            return appendChannel;
+        } catch (IOException e) {
+            appendChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Rewrites complete records of the file written with the other compression setting in the current one,
+     * through a temporary file renamed over it. Records of a write torn by a crash are dropped, as on replay.
+     * The journal is bounded by compaction, so it is converted in memory.
+     */
+    private void convertToCurrentCompression(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0
+                || Compression.isCompressed(file) == (compression != Compression.NONE)) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        try (InputStream in = Compression.decompress(Files.newInputStream(file))) {
+            in.transferTo(records);
+        } catch (EOFException | ZipException e) {
+            // The last compressed write torn by a crash, the bytes read before it are kept
+        }
+        byte[] bytes = records.toByteArray();
+        RecordBoundary boundary = new RecordBoundary();
+        boundary.scan(bytes, bytes.length, 0);
+        ByteBuffer converted = compress(ByteBuffer.wrap(bytes, 0, (int) boundary.end));
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (converted.hasRemaining()) {
+                out.write(converted);
+            }
+            out.force(false);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Every write is a complete GZIP member, so a crash may tear only the last one
+     */
+    private ByteBuffer compress(ByteBuffer bytes) throws IOException {
+        if (compression == Compression.NONE) {
+            return bytes;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.remaining() / 4 + 64);
+        OutputStream out = compression.compress(compressed);
+        out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        Compression.finish(out);
+        return ByteBuffer.wrap(compressed.toByteArray());
+    }
+
+    private void startFlusher() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-flusher-" + path.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInBackground, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void flushInBackground() {
+        if (flushError != null) {
+            return;
+        }
+        try {
+            write(durability == Durability.GROUP_COMMIT);
+        } catch (IOException e) {
+            // Reported to the caller by the next append, flush or close
+            flushError = e;
+        }
+    }
+
+    private void throwFlushError() throws IOException {
+        IOException error = flushError;
+        if (error != null) {
+            flushError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Moves all records appended so far to the pending file, so new records go to the empty journal
+     * while the snapshot covering the pending records is being written
+     */
+    synchronized void rotate() throws IOException {
+        lockExclusive();
+        try {
+            write(durability != Durability.ASYNC);
+            closeChannel();
+            if (Files.exists(path)) {
+                if (Files.exists(pendingPath)) {
+                    convertToCurrentCompression(pendingPath);
+                    convertToCurrentCompression(path);
+                    // Previous compaction did not finish, its records are still needed until the new snapshot is written
+                    try (InputStream in = Files.newInputStream(path);
+                         OutputStream out = Files.newOutputStream(pendingPath, StandardOpenOption.APPEND)) {
+                        in.transferTo(out);
+                    }
+                    Files.delete(path);
+                } else {
+                    Files.move(path, pendingPath, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } finally {
+            unlockExclusive();
+        }
+        recordCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Deletes the pending file once its records are covered by the written snapshot
+     */
+    void discardPending() throws IOException {
+        lockExclusive();
+        try {
+            Files.deleteIfExists(pendingPath);
+        } finally {
+            unlockExclusive();
+        }
+    }
+
+    private void lockExclusive() throws IOException {
+        if (lock != null) {
+            lock.lockExclusive();
+        }
+    }
+
+    private void unlockExclusive() throws IOException {
+        if (lock != null) {
+            lock.unlockExclusive();
+        }
+    }
+
+    /**
+     * Replays journal records in the order they were appended.
+     * A broken record does not stop the replay, it is returned in the error list. The last record of an uncompressed
+     * file torn by a crash (without its line break) is not replayed, as its fields may be cut
+     * (e.g. 'DEL,TASK,12' of 'DEL,TASK,123'), it is reported in the error list and cut off by the next write.
+     */
+    List<Exception> replay(Replayer replayer) throws IOException {
+        List<Exception> errors = new ArrayList<>();
+        recordCount = 0;
+        size = 0;
+        replayFile(pendingPath, replayer, errors);
+        replayFile(path, replayer, errors);
+        return errors;
+    }
+
+    private void replayFile(Path file, Replayer replayer, List<Exception> errors) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long fileSize = Files.size(file);
+        size += fileSize;
+        if (Compression.isCompressed(file)) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Compression.decompress(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                recordCount += replayRecords(reader, replayer, errors);
+            }
+            return;
+        }
+        long end = completeRecordsEnd(file, fileSize);
+        if (end < fileSize) {
+            errors.add(new IllegalCsvFormatException(String.format(
+                    "Incomplete last journal record of %d bytes is not replayed: %s", fileSize - end, file)));
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new BoundedInputStream(Files.newInputStream(file), end), StandardCharsets.UTF_8))) {
+            recordCount += replayRecords(reader, replayer, errors);
+        }
+    }
+
+    /**
+     * Reads at most limit bytes of the stream
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read();
+            if (read != -1) {
+                remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(bytes, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Returns the number of replayed records
+     */
+    private static long replayRecords(BufferedReader reader, Replayer replayer, List<Exception> errors) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        long count = 0;
+        while (true) {
+            try {
+                if (!tokenizer.next(reader)) {
+                    break;
+                }
+                if (tokenizer.getFieldCount() == 1 && tokenizer.getFields()[0].isBlank()) {
+                    continue;
+                }
+                count++;
+                replayRecord(tokenizer.getFields(), tokenizer.getFieldCount(), replayer);
+            } catch (TaskManagerException | InvalidManagerTaskException e) {
+                errors.add(e);
+            } catch (EOFException | ZipException e) {
+                // The last compressed write torn by a crash, records before it are already replayed
+                errors.add(e);
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replays complete records of the uncompressed journal file written after the offset, for a reader following
+     * the journal of another process. A record still being written is left for the next call.
+     * Returns the offset after the last replayed record.
+     */
+    static long replayTail(Path file, long offset, Replayer replayer, List<Exception> errors) throws IOException {
+        byte[] tail;
+        int length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= offset) {
+                return offset;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - offset));
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) != -1) {
+                // Read up to the size seen at open, later appends are left for the next call
+            }
+            tail = buffer.array();
+            length = buffer.position();
+        }
+        RecordBoundary boundary = new RecordBoundary();
+        boundary.scan(tail, length, 0);
+        int end = (int) boundary.end;
+        if (end > 0) {
+            replayRecords(new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(tail, 0, end), StandardCharsets.UTF_8)), replayer, errors);
+        }
+        return offset + end;
+    }
+
+    /**
+     * End of the last complete record of the uncompressed journal file within the first limit bytes
+     */
+    static long completeRecordsEnd(Path file, long limit) throws IOException {
+        RecordBoundary boundary = new RecordBoundary();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] chunk = new byte[64 * 1024];
+            long position = 0;
+            while (position < limit) {
+                int read = in.read(chunk, 0, (int) Math.min(chunk.length, limit - position));
+                if (read == -1) {
+                    break;
+                }
+                boundary.scan(chunk, read, position);
+                position += read;
+            }
+        }
+        return boundary.end;
+    }
+
+    /**
+     * Finds record ends in journal bytes: a line break outside of a quoted field, quotes inside a field are doubled
+     */
+    private static final class RecordBoundary {
+        private boolean quoted;
+        private long end;
+
+        private void scan(byte[] bytes, int length, long position) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '"') {
+                    quoted = !quoted;
+                } else if (bytes[i] == '\n' && !quoted) {
+                    end = position + i + 1;
+                }
+            }
+        }
+    }
+
+    private static void replayRecord(String[] fields, int fieldCount, Replayer replayer) throws InvalidManagerTaskException {
+        if (fieldCount < 2) {
+            throw new IllegalCsvFormatException("Invalid journal record: " + joinFields(fields, fieldCount));
+        }
+        switch (fields[0]) {
+            case PUT -> replayer.put(Arrays.copyOfRange(fields, 1, fieldCount));
+            case DELETE -> {
+                if (fieldCount != 3) {
+                    throw new IllegalCsvFormatException("Invalid journal record: " + joinFields(fields, fieldCount));
+                }
+                replayer.delete(parseType(fields[1]), parseId(fields[2]));
+            }
+            case CLEAR -> replayer.clear(parseType(fields[1]));
+            default -> throw new IllegalCsvFormatException("Unknown journal operation in record: " + joinFields(fields, fieldCount));
+        }
+    }
+
+    private static String joinFields(String[] fields, int fieldCount) {
+        return String.join(",", Arrays.copyOf(fields, fieldCount));
+    }
+
+    private static Type parseType(String typeField) {
+        try {
+            return Type.valueOf(typeField);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalTaskTypeException(String.format("Unknown task type '%s' in journal record", typeField), e);
+        }
+    }
+
+    private static int parseId(String idField) {
+        try {
+            return Integer.parseInt(idField);
+        } catch (NumberFormatException e) {
+            throw new IllegalTaskIdException("Invalid value of Task ID in journal record: " + idField, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService stoppedFlusher;
+        synchronized (this) {
+            stoppedFlusher = flusher;
+            flusher = null;
+        }
+        if (stoppedFlusher != null) {
+            stoppedFlusher.shutdown();
+            try {
+                stoppedFlusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                throwFlushError();
+                write(durability != Durability.ASYNC);
+            } finally {
+                closeChannel();
+            }
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            unforced = false;
+        }
+    }
+
+    interface Replayer {
+        void put(String[] taskFields) throws InvalidManagerTaskException;
+
+        void delete(Type type, int id);
+
+        void clear(Type type);
+    }
+
+}
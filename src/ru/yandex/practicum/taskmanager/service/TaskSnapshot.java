@@ -0,0 +1,150 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable point-in-time view of MvccTaskManager, see MvccTaskManager.snapshot().
+ * All reads of one snapshot are consistent with each other, whatever is changed in the manager meanwhile.
+ * Lists are unmodifiable views of persistent maps shared with later versions, a task is copied only when it is read,
+ * so callers never change the stored instances. Reads by ID return copies and are not added to history.
+ */
+public final class TaskSnapshot {
+
+    static final TaskSnapshot EMPTY = new TaskSnapshot(PersistentTreeMap.empty(), PersistentTreeMap.empty(),
+            PersistentTreeMap.empty(), PersistentTreeMap.empty(), 0);
+
+    private final PersistentTreeMap<Integer, Task> tasks;
+    private final PersistentTreeMap<Integer, Subtask> subtasks;
+    private final PersistentTreeMap<Integer, Epic> epics;
+    private final PersistentTreeMap<LocalDateTime, Task> tasksByTime;
+    private final long version;
+
+    private TaskSnapshot(PersistentTreeMap<Integer, Task> tasks, PersistentTreeMap<Integer, Subtask> subtasks,
+                         PersistentTreeMap<Integer, Epic> epics, PersistentTreeMap<LocalDateTime, Task> tasksByTime,
+                         long version) {
+        this.tasks = tasks;
+        this.subtasks = subtasks;
+        this.epics = epics;
+        this.tasksByTime = tasksByTime;
+        this.version = version;
+    }
+
+    /**
+     * The next version made of the changed maps, this snapshot is not changed
+     */
+    TaskSnapshot next(PersistentTreeMap<Integer, Task> tasks, PersistentTreeMap<Integer, Subtask> subtasks,
+                      PersistentTreeMap<Integer, Epic> epics, PersistentTreeMap<LocalDateTime, Task> tasksByTime) {
+        return new TaskSnapshot(tasks, subtasks, epics, tasksByTime, version + 1);
+    }
+
+    PersistentTreeMap<Integer, Task> tasks() {
+        return tasks;
+    }
+
+    PersistentTreeMap<Integer, Subtask> subtasks() {
+        return subtasks;
+    }
+
+    PersistentTreeMap<Integer, Epic> epics() {
+        return epics;
+    }
+
+    PersistentTreeMap<LocalDateTime, Task> tasksByTime() {
+        return tasksByTime;
+    }
+
+    /**
+     * Number of changes made in the manager before the snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Tasks in ID order
+     */
+    public List<Task> getTasks() {
+        return new CopyingList<>(tasks.values(), Task::copy);
+    }
+
+    public List<Subtask> getSubtasks() {
+        return new CopyingList<>(subtasks.values(), Subtask::copy);
+    }
+
+    public List<Epic> getEpics() {
+        return new CopyingList<>(epics.values(), Epic::copy);
+    }
+
+    /**
+     * Tasks and Subtasks with start time in start time order
+     */
+    public List<Task> getPrioritizedTasks() {
+        return new CopyingList<>(tasksByTime.values(), Task::copy);
+    }
+
+    public Optional<Task> getTaskById(int id) {
+        return Optional.ofNullable(tasks.get(id)).map(Task::copy);
+    }
+
+    public Optional<Subtask> getSubtaskById(int id) {
+        return Optional.ofNullable(subtasks.get(id)).map(Subtask::copy);
+    }
+
+    public Optional<Epic> getEpicById(int id) {
+        return Optional.ofNullable(epics.get(id)).map(Epic::copy);
+    }
+
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        Epic epic = epics.get(epicId);
+        return epic != null ? new CopyingList<>(epic.getSubtasksList(), Subtask::copy) : Collections.emptyList();
+    }
+
+    /**
+     * Unmodifiable view copying each task on read, iteration uses the iterator of the viewed list
+     */
+    private static final class CopyingList<T extends Task> extends AbstractList<T> {
+        private final List<T> tasks;
+        private final UnaryOperator<T> copy;
+
+        private CopyingList(List<T> tasks, UnaryOperator<T> copy) {
+            this.tasks = tasks;
+            this.copy = copy;
+        }
+
+        @Override
+        public T get(int index) {
+            return copy.apply(tasks.get(index));
+        }
+
+        @Override
+        public int size() {
+            return tasks.size();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> iterator = tasks.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return copy.apply(iterator.next());
+                }
+            };
+        }
+    }
+}
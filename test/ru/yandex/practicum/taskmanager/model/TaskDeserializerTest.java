@@ -1,8 +1,10 @@
 package ru.yandex.practicum.taskmanager.model;
 
 import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.service.exception.TaskManagerException;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static ru.yandex.practicum.taskmanager.service.TaskDeserializer.deserialize;
 import static ru.yandex.practicum.taskmanager.service.TaskDeserializer.escapeCsv;
 import static ru.yandex.practicum.taskmanager.service.TaskDeserializer.unescapeCsv;
 
@@ -28,4 +30,20 @@ class TaskDeserializerTest {
         );
     }
 
-}
\ No newline at end of file
+    @Test
+    void testDeserializeQuotedFields() {
+        final Task task = deserialize("1,TASK,\"Task, \"\"1\"\"\",NEW,\"Line 1\nLine 2\",,,");
+
+        assertAll("Quoted fields should be parsed in a single pass",
+                () -> assertEquals("Task, \"1\"", task.getName(), "Comma and doubled quotes should be unescaped"),
+                () -> assertEquals("Line 1\nLine 2", task.getDescription(), "Line break inside quotes should be kept")
+        );
+    }
+
+    @Test
+    void testDeserializeUnterminatedQuote() {
+        assertThrows(TaskManagerException.class, () -> deserialize("1,TASK,\"Task 1,NEW,Description,,,"),
+                "Unterminated quoted field should be rejected");
+    }
+
+}
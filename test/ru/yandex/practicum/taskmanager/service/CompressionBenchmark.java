@@ -0,0 +1,81 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot size and load time of FileBackedTaskManager with GZIP compression against raw CSV.
+ * Not a test, run with main(): the same board is written with every Compression setting,
+ * the result is the snapshot size and the average time of loadFromFile().
+ */
+public class CompressionBenchmark {
+
+    private static final int TASKS = 50_000;
+    private static final int EPICS = 5_000;
+    private static final int SUBTASKS_PER_EPIC = 10;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("compression-benchmark");
+        try {
+            System.out.printf("%-12s %14s %14s%n", "compression", "snapshot bytes", "load ms");
+            for (Compression compression : Compression.values()) {
+                Path storage = directory.resolve("tasks-" + compression.name().toLowerCase() + ".csv");
+                write(storage, compression);
+                StorageOptions options = StorageOptions.of(StorageMode.SNAPSHOT).withCompression(compression);
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    FileBackedTaskManager.loadFromFile(storage, options);
+                }
+                long totalNanos = 0;
+                for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    FileBackedTaskManager.loadFromFile(storage, options);
+                    totalNanos += System.nanoTime() - start;
+                }
+                System.out.printf("%-12s %14d %14.1f%n", compression, Files.size(storage),
+                        totalNanos / 1_000_000.0 / MEASURE_ROUNDS);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the board through the journal and compacts it into one snapshot
+     */
+    private static void write(Path storage, Compression compression) throws InvalidManagerTaskException, IOException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withCompression(compression)
+                .withDurability(Durability.GROUP_COMMIT);
+        try (FileBackedTaskManager taskManager = new FileBackedTaskManager(storage, options)) {
+            LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+            for (int i = 0; i < TASKS; i++) {
+                taskManager.addTask(new Task("Task " + i, "Description of Task " + i));
+            }
+            for (int i = 0; i < EPICS; i++) {
+                int epicId = taskManager.addEpic(new Epic("Epic " + i, "Description of Epic " + i));
+                Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+                for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+                    taskManager.addSubtask(new Subtask("Subtask " + j, "Description of Subtask " + j,
+                            start.plusHours((long) i * SUBTASKS_PER_EPIC + j), Duration.ofMinutes(30)), epic);
+                }
+            }
+            taskManager.compact();
+        }
+        Files.deleteIfExists(FileBackedTaskManager.getJournalPath(storage));
+    }
+}
@@ -0,0 +1,198 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentTaskManagerTest extends TaskManagerTest<ConcurrentTaskManager> {
+
+    private static final int THREADS = 8;
+
+    @Override
+    protected ConcurrentTaskManager createTaskManager() {
+        return new ConcurrentTaskManager();
+    }
+
+    @Test
+    void concurrentAdd_ShouldAllocateUniqueIdsAndRejectIntersections() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 0, 0);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Integer> ids = runConcurrently(thread -> {
+            List<Integer> threadIds = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                // Every thread tries the same 200 slots, only one task per slot may be indexed
+                try {
+                    threadIds.add(taskManager.addTask(new Task("Task " + i, null,
+                            start.plusHours(i), Duration.ofMinutes(30))));
+                } catch (InvalidManagerTaskException e) {
+                    rejected.incrementAndGet();
+                }
+                threadIds.add(taskManager.addTask(new Task("Untimed " + i, null)));
+            }
+            return threadIds;
+        });
+
+        List<Task> prioritized = taskManager.getPrioritizedTasks();
+        boolean ordered = true;
+        for (int i = 1; i < prioritized.size(); i++) {
+            ordered &= prioritized.get(i - 1).getEndTime().isBefore(prioritized.get(i).getStartTime());
+        }
+        boolean isOrdered = ordered;
+        assertAll("Concurrent additions should keep IDs unique and the time index free of intersections",
+                () -> assertEquals(ids.size(), new HashSet<>(ids).size(), "IDs should be unique"),
+                () -> assertEquals(200, prioritized.size(), "One task per slot should be indexed"),
+                () -> assertEquals(200 * (THREADS - 1), rejected.get(), "Other tasks of a slot should be rejected"),
+                () -> assertTrue(isOrdered, "Indexed tasks should not intersect"),
+                () -> assertEquals(200 * (THREADS + 1), taskManager.getTasks().size())
+        );
+    }
+
+    @Test
+    void concurrentSubtaskUpdates_ShouldKeepEpicAggregates() throws Exception {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 0, 0);
+        List<Integer> subtaskIds = runConcurrently(thread -> {
+            List<Integer> threadIds = new ArrayList<>();
+            Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+            for (int i = 0; i < 50; i++) {
+                int id = taskManager.addSubtask(new Subtask("Subtask " + i, null,
+                        start.plusHours(thread * 100L + i), Duration.ofMinutes(10)), epic);
+                Subtask subtask = taskManager.getSubtaskById(id).orElseThrow();
+                taskManager.updateSubtask(subtask.copyWith(null, null, Status.DONE, null, null, null));
+                threadIds.add(id);
+            }
+            return threadIds;
+        });
+
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        Set<Integer> linkedIds = new HashSet<>();
+        epic.getSubtasksList().forEach(subtask -> linkedIds.add(subtask.getId()));
+        assertAll("Epic should reflect all concurrently changed Subtasks",
+                () -> assertEquals(new HashSet<>(subtaskIds), linkedIds, "All Subtasks should be linked to the Epic"),
+                () -> assertEquals(Status.DONE, epic.getStatus()),
+                () -> assertEquals(Duration.ofMinutes(10L * 50 * THREADS), epic.getDuration()),
+                () -> assertEquals(start, epic.getStartTime())
+        );
+    }
+
+    @Test
+    void subtaskMutations_ShouldWaitOnlyForLockOfTheirEpic() throws Exception {
+        Epic epic1 = taskManager.getEpicById(taskManager.addEpic(new Epic("Epic 1", null))).orElseThrow();
+        Epic epic2 = taskManager.getEpicById(taskManager.addEpic(new Epic("Epic 2", null))).orElseThrow();
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 0, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Lock epic1Lock = taskManager.epicLock(epic1.getId());
+        epic1Lock.lock();
+        boolean locked = true;
+        try {
+            Future<Integer> blocked = executor.submit(() -> taskManager.addSubtask(
+                    new Subtask("Subtask 1", null, start, Duration.ofMinutes(10)), epic1));
+            // Epic 2 is on another stripe, its Subtasks are changed while Epic 1 is locked
+            int subtaskId = executor.submit(() -> taskManager.addSubtask(
+                    new Subtask("Subtask 2", null, start.plusHours(1), Duration.ofMinutes(10)), epic2))
+                    .get(10, TimeUnit.SECONDS);
+            Subtask subtask = taskManager.getSubtaskById(subtaskId).orElseThrow();
+            executor.submit(() -> {
+                taskManager.updateSubtask(subtask.copyWith(null, null, Status.DONE, null, null, null));
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+            assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS),
+                    "Subtask of the locked Epic should wait for its lock");
+            epic1Lock.unlock();
+            locked = false;
+            blocked.get(10, TimeUnit.SECONDS);
+        } finally {
+            if (locked) {
+                epic1Lock.unlock();
+            }
+            executor.shutdownNow();
+        }
+
+        assertAll("Both Epics should be updated",
+                () -> assertEquals(Status.NEW, taskManager.getEpicById(epic1.getId()).orElseThrow().getStatus()),
+                () -> assertEquals(1, taskManager.getSubtasksByEpicId(epic1.getId()).size()),
+                () -> assertEquals(Status.DONE, taskManager.getEpicById(epic2.getId()).orElseThrow().getStatus())
+        );
+    }
+
+    @Test
+    void readsRacingWithDeleter_ShouldNotKeepDeletedTasksInHistory() throws Exception {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        List<Integer> taskIds = new ArrayList<>();
+        List<Integer> subtaskIds = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            taskIds.add(taskManager.addTask(new Task("Task " + i, null)));
+            subtaskIds.add(taskManager.addSubtask(new Subtask("Subtask " + i, null), epic));
+        }
+        AtomicBoolean deleted = new AtomicBoolean();
+        runConcurrently(thread -> {
+            if (thread == 0) {
+                for (int i = 0; i < taskIds.size(); i++) {
+                    taskManager.deleteTaskById(taskIds.get(i));
+                    taskManager.deleteSubtaskById(subtaskIds.get(i));
+                }
+                taskManager.deleteEpicById(epicId);
+                deleted.set(true);
+            } else {
+                while (!deleted.get()) {
+                    for (int i = 0; i < taskIds.size(); i++) {
+                        taskManager.getTaskById(taskIds.get(i));
+                        taskManager.getSubtaskById(subtaskIds.get(i));
+                        taskManager.getEpicById(epicId);
+                    }
+                }
+            }
+            return List.of();
+        });
+
+        assertEquals(List.of(), taskManager.getHistory(), "Deleted tasks should not stay in history");
+    }
+
+    @FunctionalInterface
+    private interface Worker {
+        List<Integer> run(int thread) throws Exception;
+    }
+
+    private static List<Integer> runConcurrently(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadNumber = thread;
+                futures.add(executor.submit((Callable<List<Integer>>) () -> worker.run(threadNumber)));
+            }
+            List<Integer> results = new ArrayList<>();
+            for (Future<List<Integer>> future : futures) {
+                results.addAll(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -7,17 +7,26 @@ import ru.yandex.practicum.taskmanager.model.Status;
 import ru.yandex.practicum.taskmanager.model.Subtask;
 import ru.yandex.practicum.taskmanager.model.Task;
 import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+import ru.yandex.practicum.taskmanager.service.exception.ManagerSaveException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
@@ -32,7 +41,15 @@ class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
 
     @AfterEach
     void tearDown() throws Exception {
-        Files.deleteIfExists(tempFile);
+        for (String suffix : List.of("", ".tmp", ".prev")) {
+            Path snapshot = Path.of(tempFile + suffix);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(SnapshotStore.getChecksumPath(snapshot));
+        }
+        Files.deleteIfExists(FileBackedTaskManager.getJournalPath(tempFile));
+        Files.deleteIfExists(Path.of(FileBackedTaskManager.getJournalPath(tempFile) + ".pending"));
+        Files.deleteIfExists(StorageLock.getLockPath(tempFile));
+        Files.deleteIfExists(FileBackedTaskManager.getIdMarkPath(tempFile));
     }
 
     @Test
@@ -153,6 +170,37 @@ class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
         );
     }
 
+    @Test
+    void loadFromFile_ShouldRebuildTimeIndexAndEpicAggregates() throws IOException {
+        String testCsvData = """
+                id,type,name,status,description,epic,start_time,duration
+                1,TASK,Task 1,NEW,,,2025-04-08T12:00:00,30
+                2,EPIC,Epic 1,NEW,,,,
+                3,SUBTASK,Subtask 1,DONE,,2,2025-04-08T09:00:00,60
+                4,SUBTASK,Subtask 2,IN_PROGRESS,,2,2025-04-08T10:30:00,15
+                5,TASK,Task 2,NEW,,,,
+                6,TASK,Task 3,NEW,,,2025-04-08T12:10:00,5
+                """;
+        Files.writeString(tempFile, testCsvData);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+        Epic epic = loaded.getEpicById(2).orElseThrow();
+        IndexRebuildReport report = loaded.getIndexRebuildReport().orElseThrow();
+
+        assertAll("Loaded manager should have time index and Epic aggregates",
+                () -> assertEquals(List.of(3, 4, 1, 6), loaded.getPrioritizedTasks().stream().map(Task::getId).toList(),
+                        "Prioritized tasks should be ordered by start time"),
+                () -> assertEquals(4, report.indexedTasks()),
+                () -> assertEquals(1, report.intersectingTasks(), "Task 3 intersects Task 1 in the file"),
+                () -> assertEquals(Status.IN_PROGRESS, epic.getStatus()),
+                () -> assertEquals(LocalDateTime.of(2025, 4, 8, 9, 0), epic.getStartTime()),
+                () -> assertEquals(LocalDateTime.of(2025, 4, 8, 10, 45), epic.getEndTime()),
+                () -> assertEquals(Duration.ofMinutes(75), epic.getDuration()),
+                () -> assertThrows(InvalidManagerTaskException.class, () -> loaded.addTask(new Task("Task 4", null,
+                        LocalDateTime.of(2025, 4, 8, 9, 30), Duration.ofMinutes(10))), "Intersection with loaded Subtask")
+        );
+    }
+
     /**
      * Additional test (Sprint 7) instead of User scenario in static void main(String[] args) at FileBackedTaskManager class
      * * <li>Create multiple tasks, epics, and subtasks.</li>
@@ -190,4 +238,675 @@ class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
         assertEquals(taskManager.getEpics(), taskManagerLoaded.getEpics());
     }
 
-}
\ No newline at end of file
+    @Test
+    void journalMode_ShouldAppendRecordsAndKeepSnapshotUntouched() throws IOException, InvalidManagerTaskException {
+        Files.writeString(tempFile, "id,type,name,status,description,epic,start_time,duration\n");
+        Path journalFile = FileBackedTaskManager.getJournalPath(tempFile);
+
+        try (FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL)) {
+            int taskId = journaled.addTask(new Task("Task 1", "Description of Task 1"));
+            int epicId = journaled.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+            Epic epic = journaled.getEpicById(epicId).orElseThrow();
+            journaled.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1"), epic);
+            journaled.deleteTaskById(taskId);
+        }
+
+        List<String> journalLines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        List<String> csvLines = Files.readAllLines(tempFile, StandardCharsets.UTF_8);
+        assertAll("Mutations should be appended to journal only",
+                () -> assertEquals(1, csvLines.size(), "Snapshot should contain only header"),
+                () -> assertEquals(4, journalLines.size(), "Journal should contain one record per mutation"),
+                () -> assertEquals("PUT,1,TASK,Task 1,NEW,Description of Task 1,,,", journalLines.get(0)),
+                () -> assertEquals("PUT,3,SUBTASK,Subtask 1,NEW,Description of Subtask 1,2,,", journalLines.get(2)),
+                () -> assertEquals("DEL,TASK,1", journalLines.get(3))
+        );
+    }
+
+    @Test
+    void journalMode_ShouldReplayJournalOnTopOfSnapshot() throws IOException, InvalidManagerTaskException {
+        String testCsvData = """
+                id,type,name,status,description,epic,start_time,duration
+                1,TASK,Task 1,NEW,Description of Task 1,,,
+                2,EPIC,Epic 1,NEW,Description of Epic 1,,,
+                3,SUBTASK,Subtask 1,NEW,Description of Subtask 1,2,,
+                """;
+        Files.writeString(tempFile, testCsvData);
+
+        try (FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL)) {
+            Subtask subtask = journaled.getSubtaskById(3).orElseThrow();
+            journaled.updateSubtask(subtask.copyWith(null, null, Status.DONE, null, null, null));
+            journaled.deleteTaskById(1);
+            journaled.addTask(new Task("Task 4", "Description of Task 4"));
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+
+        assertAll("Task manager state should be restored from snapshot and journal",
+                () -> assertTrue(reloaded.getLoadErrorList().isEmpty(), "Load error should be empty"),
+                () -> assertTrue(reloaded.getTaskById(1).isEmpty(), "Deleted task should not be restored"),
+                () -> assertEquals("Task 4", reloaded.getTaskById(4).orElseThrow().getName(), "Added task should be restored"),
+                () -> assertEquals(Status.DONE, reloaded.getSubtaskById(3).orElseThrow().getStatus(), "Subtask update should be restored"),
+                () -> assertEquals(Status.DONE, reloaded.getEpicById(2).orElseThrow().getStatus(), "Epic status should follow its subtasks"),
+                () -> assertEquals(4 + IdAllocator.DEFAULT_BLOCK_SIZE, reloaded.addTask(new Task("Task 5", "Description of Task 5")),
+                        "ID counter should continue after the ID block reserved before the restart")
+        );
+    }
+
+    @Test
+    void journalMode_ShouldReplayClearAll() throws IOException, InvalidManagerTaskException {
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(tempFile, StorageMode.JOURNAL)) {
+            journaled.addTask(new Task("Task A", null));
+            int epicId = journaled.addEpic(new Epic("Epic B", null));
+            journaled.addSubtask(new Subtask("Subtask B", null), journaled.getEpicById(epicId).orElseThrow());
+            journaled.clearAll();
+            journaled.addTask(new Task("Task C", null));
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+
+        assertAll("Only tasks added after clearAll should be restored",
+                () -> assertTrue(reloaded.getLoadErrorList().isEmpty(), "Load error should be empty"),
+                () -> assertEquals(List.of("Task C"), reloaded.getTasks().stream().map(Task::getName).toList()),
+                () -> assertTrue(reloaded.getEpics().isEmpty(), "Epics should stay cleared"),
+                () -> assertTrue(reloaded.getSubtasks().isEmpty(), "Subtasks should stay cleared")
+        );
+    }
+
+    @Test
+    void journalMode_ShouldNotReplayTornLastRecord() throws IOException, InvalidManagerTaskException {
+        Files.writeString(tempFile, """
+                id,type,name,status,description,epic,start_time,duration
+                12,TASK,Task 12,NEW,Description of Task 12,,,
+                """);
+        Path journalFile = FileBackedTaskManager.getJournalPath(tempFile);
+        // 'DEL,TASK,123' torn by a crash before its line break
+        Files.writeString(journalFile, "PUT,13,TASK,Task 13,NEW,Description of Task 13,,,\nDEL,TASK,12");
+
+        try (FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL)) {
+            assertAll("Torn record should be reported and not replayed",
+                    () -> assertEquals(1, journaled.getLoadErrorList().size()),
+                    () -> assertTrue(journaled.getTaskById(12).isPresent(), "Task of the torn record should not be deleted"),
+                    () -> assertTrue(journaled.getTaskById(13).isPresent(), "Complete record should be replayed")
+            );
+            journaled.addTask(new Task("Task 14", null));
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+
+        assertAll("Next write should cut off the torn record",
+                () -> assertTrue(reloaded.getLoadErrorList().isEmpty(), "Load error should be empty"),
+                () -> assertEquals(3, reloaded.getTasks().size()),
+                () -> assertFalse(Files.readString(journalFile).contains("DEL"), "Torn record should be cut off")
+        );
+    }
+
+    @Test
+    void journalMode_ShouldCompactJournalToSnapshotByRecordCount() throws IOException, InvalidManagerTaskException {
+        Files.writeString(tempFile, "id,type,name,status,description,epic,start_time,duration\n");
+        Path journalFile = FileBackedTaskManager.getJournalPath(tempFile);
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withCompaction(3, Long.MAX_VALUE);
+
+        try (FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(tempFile, options)) {
+            journaled.addTask(new Task("Task 1", "Description of Task 1"));
+            journaled.addTask(new Task("Task 2", "Description of Task 2"));
+            journaled.addTask(new Task("Task 3", "Description of Task 3"));
+        }
+
+        List<String> csvLines = Files.readAllLines(tempFile, StandardCharsets.UTF_8);
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, options);
+        assertAll("Journal should be compacted into snapshot",
+                () -> assertEquals(4, csvLines.size(), "Snapshot should contain header and 3 tasks"),
+                () -> assertTrue(!Files.exists(journalFile) || Files.size(journalFile) == 0, "Journal should be truncated"),
+                () -> assertEquals(3, reloaded.getTasks().size(), "All tasks should be restored")
+        );
+    }
+
+    @Test
+    void journalMode_ShouldReplayOnlyJournalTailAfterCompact() throws IOException, InvalidManagerTaskException {
+        Files.writeString(tempFile, "id,type,name,status,description,epic,start_time,duration\n");
+        Path journalFile = FileBackedTaskManager.getJournalPath(tempFile);
+
+        try (FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL)) {
+            journaled.addTask(new Task("Task 1", "Description of Task 1"));
+            journaled.addTask(new Task("Task 2", "Description of Task 2"));
+            journaled.compact();
+            journaled.deleteTaskById(1);
+        }
+
+        List<String> csvLines = Files.readAllLines(tempFile, StandardCharsets.UTF_8);
+        List<String> journalLines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+        assertAll("Snapshot should hold compacted state and journal only the tail",
+                () -> assertEquals(3, csvLines.size(), "Snapshot should contain header and 2 tasks"),
+                () -> assertEquals(List.of("DEL,TASK,1"), journalLines, "Journal should contain only records after compaction"),
+                () -> assertEquals(1, reloaded.getTasks().size(), "Tail should be replayed on top of snapshot"),
+                () -> assertTrue(reloaded.getTaskById(2).isPresent(), "Task 2 should be restored")
+        );
+    }
+
+    @Test
+    void groupCommit_ShouldWriteBufferedRecordsOnFlush() throws IOException, InvalidManagerTaskException {
+        Path journalFile = FileBackedTaskManager.getJournalPath(tempFile);
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withDurability(Durability.GROUP_COMMIT, 60_000);
+
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(tempFile, options)) {
+            for (int i = 1; i <= 100; i++) {
+                journaled.addTask(new Task("Task " + i, "Description of Task " + i));
+            }
+            assertTrue(!Files.exists(journalFile) || Files.size(journalFile) == 0,
+                    "Records should stay buffered within the flush interval");
+
+            journaled.flush();
+
+            assertEquals(100, Files.readAllLines(journalFile, StandardCharsets.UTF_8).size(),
+                    "All buffered records should be written on flush");
+        }
+    }
+
+    @Test
+    void asyncDurability_ShouldWriteBufferedRecordsOnClose() throws IOException, InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withDurability(Durability.ASYNC, 60_000);
+
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(tempFile, options)) {
+            journaled.addTask(new Task("Task 1", "Description of Task 1"));
+            journaled.addTask(new Task("Task 2", "Description of Task 2"));
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+        assertEquals(2, reloaded.getTasks().size(), "Buffered records should be written on close");
+    }
+
+    @Test
+    void storageOptions_ShouldRejectBufferedDurabilityWithoutJournal() {
+        for (StorageMode mode : List.of(StorageMode.SNAPSHOT, StorageMode.BACKGROUND, StorageMode.SEGMENTED)) {
+            for (Durability durability : List.of(Durability.GROUP_COMMIT, Durability.ASYNC)) {
+                assertThrows(IllegalArgumentException.class, () -> StorageOptions.of(mode).withDurability(durability),
+                        mode + " mode should reject " + durability + " durability");
+            }
+            assertEquals(Durability.FSYNC, StorageOptions.of(mode).withDurability(Durability.FSYNC).durability());
+        }
+    }
+
+    @Test
+    void backgroundMode_ShouldSaveLatestStateOnFlush() throws IOException, InvalidManagerTaskException {
+        try (FileBackedTaskManager background = new FileBackedTaskManager(tempFile, StorageMode.BACKGROUND)) {
+            int epicId = background.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+            Epic epic = background.getEpicById(epicId).orElseThrow();
+            for (int i = 1; i <= 100; i++) {
+                background.addSubtask(new Subtask("Subtask " + i, "Description of Subtask " + i), epic);
+            }
+
+            background.flush();
+
+            assertEquals(102, Files.readAllLines(tempFile, StandardCharsets.UTF_8).size(),
+                    "Header, epic and all subtasks should be saved after flush");
+        }
+    }
+
+    @Test
+    void backgroundMode_ShouldSaveOnClose() throws IOException, InvalidManagerTaskException {
+        FileBackedTaskManager background = new FileBackedTaskManager(tempFile, StorageMode.BACKGROUND);
+        background.addTask(new Task("Task 1", "Description of Task 1"));
+        background.addTask(new Task("Task 2", "Description of Task 2"));
+        background.close();
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile);
+        assertEquals(background.getTasks(), reloaded.getTasks(), "Saved state should match manager state after close");
+    }
+
+    @Test
+    void loadFromFile_ShouldLinkSubtasksPrecedingTheirEpic() throws IOException {
+        String testCsvData = """
+                id,type,name,status,description,epic,start_time,duration
+                3,SUBTASK,Subtask 1,DONE,Description of Subtask 1,2,,
+                1,TASK,Task 1,NEW,Description of Task 1,,,
+                2,EPIC,Epic 1,DONE,Description of Epic 1,,,
+                4,SUBTASK,Subtask 2,DONE,Description of Subtask 2,2,,
+                """;
+        Files.writeString(tempFile, testCsvData);
+
+        FileBackedTaskManager taskManagerLoad = FileBackedTaskManager.loadFromFile(tempFile);
+
+        assertAll("Subtasks should be linked to Epic regardless of line order",
+                () -> assertTrue(taskManagerLoad.getHistory().isEmpty(), "Loading should not add tasks to history"),
+                () -> assertEquals(2, taskManagerLoad.getSubtasksByEpicId(2).size(), "Epic with ID=2 should have 2 subtasks"),
+                () -> assertEquals(2, taskManagerLoad.getSubtaskById(3).orElseThrow().getEpic().getId(),
+                        "Subtask with ID=3 should be linked to epic with ID=2")
+        );
+    }
+
+    @Test
+    void loadFromFile_ShouldLoadSameStateInParallel() throws IOException {
+        StringBuilder testCsvData = new StringBuilder("id,type,name,status,description,epic,start_time,duration\n");
+        int id = 1;
+        for (int i = 0; i < 2_000; i++) {
+            int epicId = id++;
+            testCsvData.append(epicId).append(",EPIC,Epic ").append(epicId).append(",NEW,\"Description, of Epic\",,,\n");
+            for (int j = 0; j < 5; j++) {
+                int subtaskId = id++;
+                testCsvData.append(subtaskId).append(",SUBTASK,Subtask ").append(subtaskId)
+                        .append(",DONE,Description of Subtask,").append(epicId).append(",,\n");
+            }
+            testCsvData.append(id).append(",TASK,Task ").append(id++).append(",NEW,Description of Task,,,\n");
+        }
+        Files.writeString(tempFile, testCsvData);
+        final int nextId = id;
+
+        FileBackedTaskManager sequential = FileBackedTaskManager.loadFromFile(tempFile);
+        FileBackedTaskManager parallel = FileBackedTaskManager.loadFromFile(tempFile,
+                StorageOptions.of(StorageMode.SNAPSHOT).withLoadParallelism(4));
+
+        assertAll("Parallel load should restore the same state as sequential load",
+                () -> assertEquals(sequential.getTasks(), parallel.getTasks()),
+                () -> assertEquals(sequential.getEpics(), parallel.getEpics()),
+                () -> assertEquals(sequential.getSubtasks(), parallel.getSubtasks()),
+                () -> assertEquals(5, parallel.getSubtasksByEpicId(nextId - 7).size(), "Last Epic should have 5 subtasks"),
+                () -> assertEquals(nextId, parallel.addTask(new Task("Task", "Description")), "ID counter should follow max ID")
+        );
+    }
+
+    @Test
+    void loadFromFile_ShouldLoadLineBreaksInQuotedFieldsInParallel() throws IOException {
+        StringBuilder testCsvData = new StringBuilder("id,type,name,status,description,epic,start_time,duration\n");
+        int count = 2_000;
+        for (int id = 1; id <= count; id++) {
+            String description = ("Line of Task " + id + ",\n").repeat(20) + "\"quoted\"\n" + id + ",TASK,Not a record,NEW,,,,";
+            testCsvData.append(id).append(",TASK,Task ").append(id).append(",NEW,")
+                    .append(TaskDeserializer.escapeCsv(description)).append(",,,\n");
+        }
+        Files.writeString(tempFile, testCsvData);
+
+        FileBackedTaskManager sequential = FileBackedTaskManager.loadFromFile(tempFile);
+        FileBackedTaskManager parallel = FileBackedTaskManager.loadFromFile(tempFile,
+                StorageOptions.of(StorageMode.SNAPSHOT).withLoadParallelism(4));
+
+        assertAll("Ranges should not split records inside quoted fields",
+                () -> assertTrue(testCsvData.length() > 2 * 256 * 1024, "File should be split into several ranges"),
+                () -> assertEquals(count, parallel.getTasks().size()),
+                () -> assertEquals(sequential.getTasks().stream().map(Task::getDescription).toList(),
+                        parallel.getTasks().stream().map(Task::getDescription).toList()),
+                () -> assertTrue(parallel.getTaskById(count).orElseThrow().getDescription().endsWith("Not a record,NEW,,,,"))
+        );
+    }
+
+    @Test
+    void loadFromFile_ShouldSkipEmptyLinesSequentiallyAndInParallel() throws IOException {
+        Files.writeString(tempFile, """
+                id,type,name,status,description,epic,start_time,duration
+                1,TASK,Task 1,NEW,Description of Task 1,,,
+
+                2,EPIC,Epic 1,NEW,Description of Epic 1,,,
+                3,SUBTASK,Subtask 1,NEW,Description of Subtask 1,2,,
+
+                """);
+
+        for (int parallelism : List.of(1, 4)) {
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile,
+                    StorageOptions.of(StorageMode.SNAPSHOT).withLoadParallelism(parallelism));
+            assertAll("Empty lines should be skipped with load parallelism " + parallelism,
+                    () -> assertEquals(1, loaded.getTasks().size()),
+                    () -> assertEquals(1, loaded.getEpics().size()),
+                    () -> assertEquals(List.of(3), loaded.getSubtasksByEpicId(2).stream().map(Task::getId).toList())
+            );
+        }
+    }
+
+    @Test
+    void saveAndLoad_ShouldKeepLineBreaksAndQuotesInFields() throws IOException, InvalidManagerTaskException {
+        final String description = "Line 1, \"quoted\"\nLine 2";
+        taskManager.addTask(new Task("Task, 1", description));
+        try (FileBackedTaskManager journaled = new FileBackedTaskManager(tempFile, StorageMode.JOURNAL)) {
+            journaled.addTask(new Task("Task, 2", description));
+        }
+
+        FileBackedTaskManager snapshotLoaded = FileBackedTaskManager.loadFromFile(tempFile);
+        Files.delete(tempFile);
+        FileBackedTaskManager journalLoaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+
+        assertAll("Quoted fields with line breaks should survive save and load",
+                () -> assertEquals("Task, 1", snapshotLoaded.getTaskById(1).orElseThrow().getName()),
+                () -> assertEquals(description, snapshotLoaded.getTaskById(1).orElseThrow().getDescription()),
+                () -> assertTrue(journalLoaded.getLoadErrorList().isEmpty(), "Journal should be replayed without errors"),
+                () -> assertEquals(description, journalLoaded.getTaskById(1).orElseThrow().getDescription())
+        );
+    }
+
+    @Test
+    void exportCsv_ShouldStreamSameContentAsSavedFile() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description, of Task 1"));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+        taskManager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1"), taskManager.getEpicById(epicId).orElseThrow());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        taskManager.exportCsv(out);
+
+        assertEquals(Files.readString(tempFile, StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8),
+                "Exported CSV should match the storage file");
+    }
+
+    @Test
+    void binaryFormat_ShouldSaveAndLoadSameState() throws IOException, InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.SNAPSHOT).withSnapshotFormat(SnapshotFormat.BINARY);
+        try (FileBackedTaskManager binary = new FileBackedTaskManager(tempFile, options)) {
+            binary.addTask(new Task("Task, 1", "Описание\n\"quoted\"",
+                    LocalDateTime.of(2024, 5, 1, 10, 30), Duration.ofMinutes(45)));
+            int epicId = binary.addEpic(new Epic("Epic 1", null));
+            binary.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1",
+                    LocalDateTime.of(2024, 5, 2, 9, 0), Duration.ofMinutes(90)), binary.getEpicById(epicId).orElseThrow());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, options);
+        Task task = loaded.getTaskById(1).orElseThrow();
+        Subtask subtask = loaded.getSubtaskById(3).orElseThrow();
+
+        assertAll("Binary snapshot should keep all task fields",
+                () -> assertEquals("Task, 1", task.getName()),
+                () -> assertEquals("Описание\n\"quoted\"", task.getDescription()),
+                () -> assertEquals(LocalDateTime.of(2024, 5, 1, 10, 30), task.getStartTime()),
+                () -> assertEquals(Duration.ofMinutes(45), task.getDuration()),
+                () -> assertEquals(2, subtask.getEpic().getId(), "Subtask should be linked to its Epic"),
+                () -> assertEquals(Duration.ofMinutes(90), subtask.getDuration()),
+                () -> assertEquals(1, loaded.getEpicById(2).orElseThrow().getSubtasksList().size()),
+                () -> assertEquals(1 + IdAllocator.DEFAULT_BLOCK_SIZE, loaded.addTask(new Task("Task 2", "Description of Task 2")),
+                        "ID counter should continue after the ID block reserved before the restart")
+        );
+    }
+
+    @Test
+    void binaryFormat_ShouldKeepStartTimeNanosAndTimesBeforeEpoch() throws IOException, InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.SNAPSHOT).withSnapshotFormat(SnapshotFormat.BINARY);
+        LocalDateTime beforeEpoch = LocalDateTime.of(1969, 12, 31, 23, 59, 59);
+        LocalDateTime withNanos = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_456_789);
+        try (FileBackedTaskManager binary = new FileBackedTaskManager(tempFile, options)) {
+            binary.addTask(new Task("Task 1", null, beforeEpoch, Duration.ofMinutes(1)));
+            binary.addTask(new Task("Task 2", null, withNanos, Duration.ofMinutes(1)));
+            binary.addTask(new Task("Task 3", null));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, options);
+
+        assertAll("Binary snapshot should keep start times exactly",
+                () -> assertEquals(beforeEpoch, loaded.getTaskById(1).orElseThrow().getStartTime()),
+                () -> assertEquals(withNanos, loaded.getTaskById(2).orElseThrow().getStartTime()),
+                () -> assertNull(loaded.getTaskById(3).orElseThrow().getStartTime())
+        );
+    }
+
+    @Test
+    void binaryFormat_ShouldLoadVersion1Snapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(new byte[]{'T', 'K', 'S', 'B', 1});
+        // Task ID=1, NEW, name "A", no description, start time 1970-01-01T00:01 as (epoch second + 1), 30 minutes
+        bytes.writeBytes(new byte[]{1, 1, 0, 2, 'A', 0, 61, 30});
+        bytes.write(0);
+        Files.write(tempFile, bytes.toByteArray());
+
+        Task task = FileBackedTaskManager.loadFromFile(tempFile,
+                StorageOptions.of(StorageMode.SNAPSHOT).withSnapshotFormat(SnapshotFormat.BINARY)).getTaskById(1).orElseThrow();
+
+        assertAll("Version 1 binary snapshot should still be read",
+                () -> assertEquals("A", task.getName()),
+                () -> assertEquals(LocalDateTime.of(1970, 1, 1, 0, 1), task.getStartTime()),
+                () -> assertEquals(Duration.ofMinutes(30), task.getDuration())
+        );
+    }
+
+    @Test
+    void convertSnapshot_ShouldConvertCsvToBinaryAndBack() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description, of Task 1"));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+        taskManager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1"), taskManager.getEpicById(epicId).orElseThrow());
+        Path binaryFile = Files.createTempFile("tasks", ".bin");
+        Path csvFile = Files.createTempFile("tasks", ".csv");
+        try {
+            FileBackedTaskManager.convertSnapshot(tempFile, SnapshotFormat.CSV, binaryFile, SnapshotFormat.BINARY);
+            FileBackedTaskManager.convertSnapshot(binaryFile, SnapshotFormat.BINARY, csvFile, SnapshotFormat.CSV);
+
+            assertAll("CSV file converted to binary and back should not change",
+                    () -> assertTrue(Files.size(binaryFile) < Files.size(tempFile), "Binary snapshot should be smaller"),
+                    () -> assertEquals(Files.readString(tempFile), Files.readString(csvFile))
+            );
+        } finally {
+            Files.deleteIfExists(binaryFile);
+            Files.deleteIfExists(csvFile);
+        }
+    }
+
+    @Test
+    void save_ShouldWriteChangedRecordsAfterUpdates() throws IOException, InvalidManagerTaskException {
+        int taskId = taskManager.addTask(new Task("Task 1", "Description of Task 1"));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+        int subtaskId = taskManager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1"),
+                taskManager.getEpicById(epicId).orElseThrow());
+        Subtask subtask = taskManager.getSubtaskById(subtaskId).orElseThrow();
+        taskManager.updateSubtask(subtask.copyWith(null, "Updated", Status.DONE, null, null, null));
+        Task task = taskManager.getTaskById(taskId).orElseThrow();
+        taskManager.updateTask(task.copyWith("Task 1 Updated", null, null, null, null));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+        assertAll("Saved file should contain the latest state of changed records",
+                () -> assertEquals("Task 1 Updated", loaded.getTaskById(taskId).orElseThrow().getName()),
+                () -> assertEquals("Updated", loaded.getSubtaskById(subtaskId).orElseThrow().getDescription()),
+                () -> assertEquals(Status.DONE, loaded.getEpicById(epicId).orElseThrow().getStatus(),
+                        "Epic record should follow its Subtask"),
+                () -> assertEquals(Files.readString(tempFile), exportToString(taskManager))
+        );
+    }
+
+    @Test
+    void segmentedMode_ShouldRewriteOnlyChangedSegments() throws IOException, InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.SEGMENTED).withSegmentSize(2);
+        SegmentStore store = new SegmentStore(tempFile, 2, false);
+        try (FileBackedTaskManager segmented = new FileBackedTaskManager(tempFile, options)) {
+            for (int i = 1; i <= 5; i++) {
+                segmented.addTask(new Task("Task " + i, "Description of Task " + i));
+            }
+            Object untouchedSegmentKey = fileKey(store.getSegmentPath(2));
+            segmented.updateTask(segmented.getTaskById(1).orElseThrow().copyWith("Task 1 Updated", null, null, null, null));
+            assertEquals(untouchedSegmentKey, fileKey(store.getSegmentPath(2)), "Segment of unchanged tasks should not be rewritten");
+
+            segmented.deleteTaskById(4);
+            segmented.deleteTaskById(5);
+            store.load();
+            assertAll("Empty segment should be removed from the manifest",
+                    () -> assertEquals(List.of(0, 1), List.copyOf(store.getSegments())),
+                    () -> assertTrue(Files.notExists(store.getSegmentPath(2)))
+            );
+
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, options);
+            assertAll("Segmented storage should load the same state",
+                    () -> assertEquals(3, loaded.getTasks().size()),
+                    () -> assertEquals("Task 1 Updated", loaded.getTaskById(1).orElseThrow().getName())
+            );
+        } finally {
+            for (int segment = 0; segment <= 2; segment++) {
+                Files.deleteIfExists(store.getSegmentPath(segment));
+            }
+        }
+    }
+
+    @Test
+    void loadFromFile_ShouldRecoverPreviousSnapshotWhenStorageFileIsTruncated() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description of Task 1"));
+        taskManager.addTask(new Task("Task 2", "Description of Task 2"));
+        byte[] content = Files.readAllBytes(tempFile);
+        Files.write(tempFile, Arrays.copyOf(content, content.length / 2));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+
+        assertAll("Previous snapshot should be loaded instead of the truncated one",
+                () -> assertEquals(1, loaded.getTasks().size()),
+                () -> assertEquals(1, loaded.getLoadErrorList().size(), "Recovery should be reported")
+        );
+    }
+
+    @Test
+    void loadFromFile_ShouldLoadAndChecksumHandEditedStorageFile() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description of Task 1"));
+        taskManager.addTask(new Task("Task 2", "Description of Task 2"));
+        Files.writeString(tempFile, Files.readString(tempFile).replace("Task 2,", "Task 2 Edited,"));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile);
+
+        assertAll("Edited storage file should be loaded instead of the previous snapshot",
+                () -> assertEquals(2, loaded.getTasks().size()),
+                () -> assertEquals("Task 2 Edited", loaded.getTaskById(2).orElseThrow().getName()),
+                () -> assertTrue(loaded.getLoadErrorList().isEmpty(), "Load error should be empty"),
+                () -> assertFalse(new SnapshotStore(tempFile, false).recover().stale(), "Storage file should be checksummed"),
+                () -> assertEquals("Task 2 Edited", reloaded.getTaskById(2).orElseThrow().getName())
+        );
+    }
+
+    @Test
+    void loadFromFile_ShouldLoadHandEditedStorageFileWithoutPreviousSnapshot() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description of Task 1"));
+        Files.deleteIfExists(Path.of(tempFile + ".prev"));
+        Files.deleteIfExists(SnapshotStore.getChecksumPath(Path.of(tempFile + ".prev")));
+        Files.writeString(tempFile, Files.readString(tempFile).replace("Task 1,", "Task 1 Edited,"));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+
+        assertEquals("Task 1 Edited", loaded.getTaskById(1).orElseThrow().getName(), "Edited storage file should be loaded");
+    }
+
+    @Test
+    void loadFromFile_ShouldRecoverNewSnapshotNotRenamedBeforeCrash() throws IOException, InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task 1", "Description of Task 1"));
+        taskManager.addTask(new Task("Task 2", "Description of Task 2"));
+        // Crash after the storage file was moved to the previous one, before the temporary file was renamed
+        Path tempSnapshot = Path.of(tempFile + ".tmp");
+        Files.move(tempFile, tempSnapshot);
+        Files.move(SnapshotStore.getChecksumPath(tempFile), SnapshotStore.getChecksumPath(tempSnapshot));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+
+        assertEquals(2, loaded.getTasks().size(), "Newest valid snapshot should be loaded");
+    }
+
+    @Test
+    void gzipCompression_ShouldSaveAndLoadSnapshotAndJournal() throws IOException, InvalidManagerTaskException {
+        for (int i = 1; i <= 100; i++) {
+            taskManager.addTask(new Task("Task " + i, "Description of Task " + i));
+        }
+        long rawSize = Files.size(tempFile);
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withCompression(Compression.GZIP);
+        try (FileBackedTaskManager compressed = FileBackedTaskManager.loadFromFile(tempFile, options)) {
+            compressed.compact();
+            compressed.updateTask(compressed.getTaskById(1).orElseThrow().copyWith("Task 1 Updated", null, null, null, null));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+        assertAll("Compressed files should be recognized on load",
+                () -> assertTrue(Files.size(tempFile) < rawSize / 2, "Compressed snapshot should be smaller"),
+                () -> assertTrue(loaded.getLoadErrorList().isEmpty(), "Compressed journal should be replayed without errors"),
+                () -> assertEquals(100, loaded.getTasks().size()),
+                () -> assertEquals("Task 1 Updated", loaded.getTaskById(1).orElseThrow().getName())
+        );
+    }
+
+    @Test
+    void compressionChange_ShouldNotMixFormatsInJournal() throws IOException, InvalidManagerTaskException {
+        StorageOptions gzipOptions = StorageOptions.of(StorageMode.JOURNAL).withCompression(Compression.GZIP);
+        try (FileBackedTaskManager plain = new FileBackedTaskManager(tempFile, StorageMode.JOURNAL)) {
+            plain.addTask(new Task("Task 1", null));
+        }
+        try (FileBackedTaskManager compressed = FileBackedTaskManager.loadFromFile(tempFile, gzipOptions)) {
+            compressed.addTask(new Task("Task 2", null));
+        }
+        boolean compressedJournal = Compression.isCompressed(FileBackedTaskManager.getJournalPath(tempFile));
+        try (FileBackedTaskManager plain = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL)) {
+            plain.addTask(new Task("Task 3", null));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, StorageMode.JOURNAL);
+        assertAll("Journal should be rewritten in the new format on a compression change",
+                () -> assertTrue(compressedJournal, "Journal should be compressed after the GZIP write"),
+                () -> assertFalse(Compression.isCompressed(FileBackedTaskManager.getJournalPath(tempFile))),
+                () -> assertTrue(loaded.getLoadErrorList().isEmpty(), "Journal should be replayed without errors"),
+                () -> assertEquals(List.of("Task 1", "Task 2", "Task 3"),
+                        loaded.getTasks().stream().map(Task::getName).toList())
+        );
+    }
+
+    @Test
+    void locking_ShouldAllowSingleWriter() throws IOException, InvalidManagerTaskException {
+        Files.writeString(tempFile, "id,type,name,status,description,epic,start_time,duration\n");
+        StorageOptions options = StorageOptions.of(StorageMode.SNAPSHOT).withLocking(true);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(tempFile, options)) {
+            writer.addTask(new Task("Task 1", null));
+
+            assertThrows(ManagerSaveException.class, () -> new FileBackedTaskManager(tempFile, options),
+                    "Second writer should not open the locked storage");
+        }
+
+        try (FileBackedTaskManager nextWriter = FileBackedTaskManager.loadFromFile(tempFile, options)) {
+            assertEquals(1, nextWriter.getTasks().size(), "Storage should be writable after the writer is closed");
+        }
+    }
+
+    @Test
+    void storageLock_ShouldStayUsableAfterInterruptedCaller() throws IOException {
+        try (StorageLock interruptedLock = StorageLock.open(tempFile);
+             StorageLock otherLock = StorageLock.open(tempFile)) {
+            otherLock.acquireWriter();
+            boolean interrupted;
+            Thread.currentThread().interrupt();
+            try {
+                interruptedLock.lockExclusive();
+                interruptedLock.unlockExclusive();
+            } finally {
+                interrupted = Thread.interrupted();
+            }
+            otherLock.lockExclusive();
+            otherLock.unlockExclusive();
+            boolean keptInterrupt = interrupted;
+
+            assertAll("Interrupted caller should not close the lock file shared by the JVM",
+                    () -> assertTrue(keptInterrupt, "Interrupt status should be kept"),
+                    () -> assertEquals(2, otherLock.readStamp()),
+                    () -> assertThrows(ManagerSaveException.class, () -> new FileBackedTaskManager(tempFile,
+                            StorageOptions.of(StorageMode.SNAPSHOT).withLocking(true)), "Writer lock should be kept")
+            );
+        }
+    }
+
+    @Test
+    void idMark_ShouldPreventReuseOfDeletedIdsAfterRestart() throws IOException, InvalidManagerTaskException {
+        Path idMarkPath = FileBackedTaskManager.getIdMarkPath(tempFile);
+        try (FileBackedTaskManager writer = new FileBackedTaskManager(tempFile)) {
+            for (int i = 0; i < IdAllocator.DEFAULT_BLOCK_SIZE; i++) {
+                writer.addTask(new Task("Task " + i, null));
+            }
+            String markOfFirstBlock = Files.readString(idMarkPath).trim();
+            int lastId = writer.addTask(new Task("Task of the next block", null));
+            writer.deleteTaskById(lastId);
+
+            assertAll("Mark should be saved once per ID block, before its IDs are used",
+                    () -> assertEquals(String.valueOf(1 + IdAllocator.DEFAULT_BLOCK_SIZE), markOfFirstBlock),
+                    () -> assertEquals(String.valueOf(1 + 2 * IdAllocator.DEFAULT_BLOCK_SIZE),
+                            Files.readString(idMarkPath).trim())
+            );
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile);
+        int loadedCount = reloaded.getTasks().size();
+        int newId = reloaded.addTask(new Task("Task after restart", null));
+
+        assertAll("Restarted manager should continue after the persisted mark",
+                () -> assertEquals(IdAllocator.DEFAULT_BLOCK_SIZE, loadedCount),
+                () -> assertEquals(1 + 2 * IdAllocator.DEFAULT_BLOCK_SIZE, newId, "Deleted ID should not be reused")
+        );
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private static String exportToString(FileBackedTaskManager manager) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manager.exportCsv(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+}
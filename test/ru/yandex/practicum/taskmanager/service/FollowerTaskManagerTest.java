@@ -0,0 +1,183 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FollowerTaskManagerTest {
+
+    private Path tempDirectory;
+    private Path storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDirectory = Files.createTempDirectory("tasks-follower");
+        storage = tempDirectory.resolve("tasks.csv");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void journalMode_ShouldApplyAppendedRecords() throws InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(storage, options);
+             FollowerTaskManager follower = new FollowerTaskManager(storage, options)) {
+            int taskId = writer.addTask(new Task("Task 1", "Description of Task 1"));
+            follower.load();
+            follower.getTaskById(taskId);
+
+            int epicId = writer.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+            int subtaskId = writer.addSubtask(new Subtask("Subtask 1", null, LocalDateTime.of(2025, 4, 8, 9, 0),
+                    Duration.ofMinutes(30)), writer.getEpicById(epicId).orElseThrow());
+            Subtask subtask = writer.getSubtaskById(subtaskId).orElseThrow();
+            writer.updateSubtask(subtask.copyWith(subtask.getName(), null, Status.DONE,
+                    subtask.getStartTime(), subtask.getDuration(), subtask.getEpic()));
+            int deletedId = writer.addTask(new Task("Task 2", null));
+            writer.deleteTaskById(deletedId);
+
+            boolean changed = follower.refresh();
+
+            assertAll("Follower should apply journal records appended by the writer",
+                    () -> assertTrue(changed, "Refresh should report changes"),
+                    () -> assertFalse(follower.refresh(), "Nothing should be applied twice"),
+                    () -> assertEquals(Status.DONE, follower.getEpicById(epicId).orElseThrow().getStatus()),
+                    () -> assertEquals(1, follower.getPrioritizedTasks().size()),
+                    () -> assertTrue(follower.getTaskById(deletedId).isEmpty(), "Deleted task should be removed"),
+                    () -> assertEquals(taskId, follower.getHistory().getFirst().getId(), "History should be kept")
+            );
+        }
+    }
+
+    @Test
+    void journalMode_ShouldFollowJournalAfterCompaction() throws InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(storage, options);
+             FollowerTaskManager follower = new FollowerTaskManager(storage, options)) {
+            writer.addTask(new Task("Task 1", null));
+            follower.load();
+
+            writer.addTask(new Task("Task 2", null));
+            writer.compact();
+            writer.deleteTaskById(1);
+            follower.refresh();
+            writer.addTask(new Task("Task 3", null));
+            follower.refresh();
+
+            assertEquals(List.of(2, 3), follower.getTasks().stream().map(Task::getId).toList(),
+                    "Follower should have the state of the writer");
+        }
+    }
+
+    @Test
+    void snapshotMode_ShouldApplyChangedRecords() throws IOException, InvalidManagerTaskException {
+        Files.writeString(storage, "id,type,name,status,description,epic,start_time,duration\n");
+        StorageOptions options = StorageOptions.of(StorageMode.SNAPSHOT);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(storage, options);
+             FollowerTaskManager follower = new FollowerTaskManager(storage, options)) {
+            int keptId = writer.addTask(new Task("Task 1", null));
+            int updatedId = writer.addTask(new Task("Task 2", null));
+            int deletedId = writer.addTask(new Task("Task 3", null));
+            follower.load();
+            follower.getTaskById(keptId);
+            follower.getTaskById(updatedId);
+
+            Task task = writer.getTaskById(updatedId).orElseThrow();
+            writer.updateTask(task.copyWith("Updated", null, Status.IN_PROGRESS, null, null));
+            writer.deleteTaskById(deletedId);
+            int epicId = writer.addEpic(new Epic("Epic 1", null));
+            writer.addSubtask(new Subtask("Subtask 1", null), writer.getEpicById(epicId).orElseThrow());
+
+            boolean changed = follower.refresh();
+
+            assertAll("Follower should apply changes of the snapshot",
+                    () -> assertTrue(changed, "Refresh should report changes"),
+                    () -> assertFalse(follower.refresh(), "Unchanged snapshot should not be applied"),
+                    () -> assertEquals("Updated", follower.getTaskById(updatedId).orElseThrow().getName()),
+                    () -> assertTrue(follower.getTaskById(deletedId).isEmpty(), "Deleted task should be removed"),
+                    () -> assertEquals(1, follower.getSubtasksByEpicId(epicId).size()),
+                    () -> assertEquals(keptId, follower.getHistory().getFirst().getId(), "History should be kept")
+            );
+        }
+    }
+
+    @Test
+    void locking_ShouldSkipRefreshUntilWriterWrites() throws IOException, InvalidManagerTaskException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL).withLocking(true);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(storage, options);
+             FollowerTaskManager follower = new FollowerTaskManager(storage, options)) {
+            writer.addTask(new Task("Task 1", null));
+            follower.load();
+            // Not written by the writer, so the version stamp does not change
+            Files.writeString(FileBackedTaskManager.getJournalPath(storage), "DEL,TASK,1\n",
+                    StandardOpenOption.APPEND);
+
+            boolean changedWithoutStamp = follower.refresh();
+            writer.addTask(new Task("Task 2", null));
+            boolean changed = follower.refresh();
+
+            assertAll("Follower should read the storage only after the stamp changes",
+                    () -> assertFalse(changedWithoutStamp, "Unchanged stamp should skip reading the storage"),
+                    () -> assertTrue(changed, "Write of the writer should change the stamp"),
+                    () -> assertEquals(List.of(2), follower.getTasks().stream().map(Task::getId).toList())
+            );
+        }
+    }
+
+    @Test
+    void mutations_ShouldBeRejected() {
+        try (FollowerTaskManager follower = new FollowerTaskManager(storage, StorageOptions.of(StorageMode.JOURNAL))) {
+            follower.load();
+
+            assertAll("Follower should be read-only",
+                    () -> assertThrows(UnsupportedOperationException.class, () -> follower.addTask(new Task("Task 1", null))),
+                    () -> assertThrows(UnsupportedOperationException.class, () -> follower.deleteEpicById(1)),
+                    () -> assertThrows(UnsupportedOperationException.class, follower::clearAll)
+            );
+        }
+    }
+
+    @Test
+    void follow_ShouldApplyChangesOnFileEvents() throws InvalidManagerTaskException, InterruptedException {
+        StorageOptions options = StorageOptions.of(StorageMode.JOURNAL);
+        try (FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(storage, options);
+             FollowerTaskManager follower = FollowerTaskManager.follow(storage, options)) {
+            int taskId = writer.addTask(new Task("Task 1", null));
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (follower.getTasks().isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertEquals(List.of(taskId), follower.getTasks().stream().map(Task::getId).toList(),
+                    "Watcher should apply the appended record");
+        }
+    }
+}
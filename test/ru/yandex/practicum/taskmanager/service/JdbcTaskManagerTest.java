@@ -0,0 +1,140 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against an embedded H2 database, skipped when the H2 driver (com.h2database:h2:2.2.224) is not on the classpath
+ */
+class JdbcTaskManagerTest extends TaskManagerTest<JdbcTaskManager> {
+
+    private Path tempDirectory;
+    private String url;
+
+    private static boolean isH2Available() {
+        try {
+            DriverManager.getDriver("jdbc:h2:mem:");
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected JdbcTaskManager createTaskManager() throws IOException {
+        assumeTrue(isH2Available(), "H2 driver is not on the classpath");
+        tempDirectory = Files.createTempDirectory("tasks-jdbc");
+        url = "jdbc:h2:" + tempDirectory.resolve("tasks").toAbsolutePath();
+        return new JdbcTaskManager(url);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (taskManager != null) {
+            taskManager.close();
+        }
+        if (tempDirectory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void reopen_ShouldLoadSameStateFromDatabase() throws InvalidManagerTaskException {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+        int subtaskId = taskManager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1",
+                LocalDateTime.of(2025, 4, 8, 9, 0), Duration.ofMinutes(15)), taskManager.getEpicById(epicId).orElseThrow());
+        Subtask subtask = taskManager.getSubtaskById(subtaskId).orElseThrow();
+        taskManager.updateSubtask(subtask.copyWith(subtask.getName(), "Updated", Status.DONE,
+                subtask.getStartTime(), subtask.getDuration(), subtask.getEpic()));
+        taskManager.deleteTaskById(taskManager.addTask(new Task("Deleted task", null)));
+        taskManager.close();
+
+        try (JdbcTaskManager reopened = new JdbcTaskManager(url)) {
+            Epic epic = reopened.getEpicById(epicId).orElseThrow();
+            Subtask loadedSubtask = reopened.getSubtaskById(subtaskId).orElseThrow();
+            int newTaskId = reopened.addTask(new Task("New task", null));
+            assertAll("Reopened manager should have the same state",
+                    () -> assertEquals("Updated", loadedSubtask.getDescription()),
+                    () -> assertEquals(epicId, loadedSubtask.getEpic().getId(), "Subtask should be linked to its Epic"),
+                    () -> assertEquals(Status.DONE, epic.getStatus(), "Epic status should follow its Subtask"),
+                    () -> assertEquals(LocalDateTime.of(2025, 4, 8, 9, 15), epic.getEndTime()),
+                    () -> assertEquals(Duration.ofMinutes(15), epic.getDuration()),
+                    () -> assertEquals(1 + IdAllocator.DEFAULT_BLOCK_SIZE, newTaskId, "ID of the deleted task should not be reused")
+            );
+        }
+    }
+
+    @Test
+    void importTasks_ShouldCopyTasksWithIdsAndEpicAggregates() throws InvalidManagerTaskException {
+        InMemoryTaskManager source = new InMemoryTaskManager();
+        int epicId = source.addEpic(new Epic("Epic 1", null));
+        for (int i = 0; i < 30; i++) {
+            source.addSubtask(new Subtask("Subtask " + i, null, LocalDateTime.of(2025, 4, 8, 0, 0).plusHours(i),
+                    Duration.ofMinutes(30)), source.getEpicById(epicId).orElseThrow());
+            source.addTask(new Task("Task " + i, null));
+        }
+
+        taskManager.importTasks(source);
+
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        assertAll("Imported tasks should keep IDs and links",
+                () -> assertEquals(source.getTasks().size(), taskManager.getTasks().size()),
+                () -> assertEquals(30, epic.getSubtasksList().size()),
+                () -> assertEquals(LocalDateTime.of(2025, 4, 8, 0, 0), epic.getStartTime()),
+                () -> assertEquals(Duration.ofMinutes(900), epic.getDuration()),
+                () -> assertEquals(30, taskManager.getPrioritizedTasks().size()),
+                () -> assertTrue(taskManager.addTask(new Task("New task", null)) > 60, "IDs should continue after imported ones")
+        );
+    }
+
+    @Test
+    void timeIntersection_ShouldCheckNearestTasksOnly() throws InvalidManagerTaskException {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 9, 0);
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        taskManager.addSubtask(new Subtask("Subtask 1", null, start, Duration.ofMinutes(10)), epic);
+        taskManager.addSubtask(new Subtask("Subtask 2", null, start.plusHours(3), Duration.ofMinutes(10)), epic);
+        int taskId = taskManager.addTask(new Task("Task 1", null, start.plusHours(1), Duration.ofMinutes(30)));
+        Task task = taskManager.getTaskById(taskId).orElseThrow();
+
+        taskManager.updateTask(task.copyWith(null, null, null, start.plusHours(1).plusMinutes(10), null));
+        int gapTaskId = taskManager.addTask(new Task("Task 2", null, start.plusHours(2), Duration.ofMinutes(30)));
+
+        assertAll("Only stored Tasks and Subtasks next to the task should be checked",
+                () -> assertEquals(4, taskManager.getPrioritizedTasks().size(), "Epic spanning the gap should not intersect"),
+                () -> assertThrows(InvalidManagerTaskException.class, () -> taskManager.addTask(
+                        new Task("Task 3", null, start.plusHours(2).plusMinutes(30), Duration.ofMinutes(5))),
+                        "End of the earlier task should intersect"),
+                () -> assertThrows(InvalidManagerTaskException.class, () -> taskManager.addTask(
+                        new Task("Task 4", null, start.plusHours(2).plusMinutes(40), Duration.ofMinutes(20))),
+                        "Start of the later Subtask should intersect"),
+                () -> assertEquals(start.plusHours(2), taskManager.getTaskById(gapTaskId).orElseThrow().getStartTime())
+        );
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyFileBackedTaskManagerTest extends TaskManagerTest<LazyFileBackedTaskManager> {
+
+    private Path tempFile;
+
+    @Override
+    protected LazyFileBackedTaskManager createTaskManager() throws IOException {
+        tempFile = Files.createTempFile("tasks", ".csv");
+        return LazyFileBackedTaskManager.loadLazily(tempFile);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        taskManager.close();
+        for (String suffix : List.of("", ".tmp", ".prev")) {
+            Path snapshot = Path.of(tempFile + suffix);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(SnapshotStore.getChecksumPath(snapshot));
+        }
+        Files.deleteIfExists(FileBackedTaskManager.getIdMarkPath(tempFile));
+    }
+
+    /**
+     * Saves Task 1 (10:00), Epic with Subtask 1 (09:00) and Subtask 2, returns their IDs
+     */
+    private int[] saveBoard() throws InvalidManagerTaskException {
+        FileBackedTaskManager writer = new FileBackedTaskManager(tempFile);
+        int taskId = writer.addTask(new Task("Task 1", "Line 1\nLine 2, \"quoted\"",
+                LocalDateTime.of(2025, 4, 8, 10, 0), Duration.ofMinutes(30)));
+        int epicId = writer.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+        Epic epic = writer.getEpicById(epicId).orElseThrow();
+        int subtaskId1 = writer.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1",
+                LocalDateTime.of(2025, 4, 8, 9, 0), Duration.ofMinutes(15)), epic);
+        int subtaskId2 = writer.addSubtask(new Subtask("Subtask 2", "Description of Subtask 2"), epic);
+        Subtask subtask = writer.getSubtaskById(subtaskId1).orElseThrow();
+        writer.updateSubtask(subtask.copyWith(subtask.getName(), subtask.getDescription(), Status.DONE,
+                subtask.getStartTime(), subtask.getDuration(), subtask.getEpic()));
+        return new int[]{taskId, epicId, subtaskId1, subtaskId2};
+    }
+
+    @Test
+    void getEpicById_ShouldReturnSameAggregatesAsFullLoad() throws InvalidManagerTaskException {
+        int[] ids = saveBoard();
+        Epic loadedEpic = FileBackedTaskManager.loadFromFile(tempFile).getEpicById(ids[1]).orElseThrow();
+
+        try (LazyFileBackedTaskManager lazy = LazyFileBackedTaskManager.loadLazily(tempFile)) {
+            Epic lazyEpic = lazy.getEpicById(ids[1]).orElseThrow();
+            assertAll("Lazily read Epic should follow its Subtasks like a loaded one",
+                    () -> assertFalse(lazy.isMaterialized()),
+                    () -> assertEquals(LocalDateTime.of(2025, 4, 8, 9, 0), lazyEpic.getStartTime()),
+                    () -> assertEquals(loadedEpic.getStartTime(), lazyEpic.getStartTime()),
+                    () -> assertEquals(loadedEpic.getEndTime(), lazyEpic.getEndTime()),
+                    () -> assertEquals(loadedEpic.getDuration(), lazyEpic.getDuration()),
+                    () -> assertEquals(loadedEpic.getStatus(), lazyEpic.getStatus())
+            );
+        }
+    }
+
+    @Test
+    void getById_ShouldReadRecordsWithoutLoadingFile() throws InvalidManagerTaskException {
+        int[] ids = saveBoard();
+
+        try (LazyFileBackedTaskManager lazy = LazyFileBackedTaskManager.loadLazily(tempFile,
+                StorageOptions.of(StorageMode.SNAPSHOT), 10)) {
+            Task task = lazy.getTaskById(ids[0]).orElseThrow();
+            Epic epic = lazy.getEpicById(ids[1]).orElseThrow();
+            Subtask subtask = lazy.getSubtaskById(ids[2]).orElseThrow();
+            assertAll("Records should be read by their index entries",
+                    () -> assertEquals("Line 1\nLine 2, \"quoted\"", task.getDescription()),
+                    () -> assertEquals(Duration.ofMinutes(30), task.getDuration()),
+                    () -> assertEquals(2, epic.getSubtasksList().size(), "Epic should be read with its Subtasks"),
+                    () -> assertEquals(Status.DONE, subtask.getStatus()),
+                    () -> assertEquals(ids[1], subtask.getEpic().getId(), "Subtask should be linked to its Epic"),
+                    () -> assertTrue(lazy.getTaskById(ids[1]).isEmpty(), "Epic ID should not be found as Task"),
+                    () -> assertTrue(lazy.getSubtaskById(100).isEmpty()),
+                    () -> assertEquals(2, lazy.getSubtasksByEpicId(ids[1]).size()),
+                    () -> assertEquals(3, lazy.getHistory().size(), "Read records should be added to history"),
+                    () -> assertFalse(lazy.isMaterialized(), "Lookups by ID should not load the whole file")
+            );
+        }
+    }
+
+    @Test
+    void getById_ShouldEvictLeastRecentlyUsedRecords() throws InvalidManagerTaskException {
+        int[] ids = saveBoard();
+
+        try (LazyFileBackedTaskManager lazy = LazyFileBackedTaskManager.loadLazily(tempFile,
+                StorageOptions.of(StorageMode.SNAPSHOT), 2)) {
+            lazy.getTaskById(ids[0]);
+            lazy.getSubtaskById(ids[2]);
+            lazy.getSubtaskById(ids[3]);
+            lazy.getTaskById(ids[0]);
+
+            assertAll("Cache should be bounded",
+                    () -> assertEquals(2, lazy.getCachedRecordCount()),
+                    () -> assertEquals("Subtask 1", lazy.getSubtaskById(ids[2]).orElseThrow().getName(),
+                            "Evicted record should be read again")
+            );
+        }
+    }
+
+    @Test
+    void getPrioritizedTasks_ShouldFollowTimeIndex() throws InvalidManagerTaskException {
+        int[] ids = saveBoard();
+
+        try (LazyFileBackedTaskManager lazy = LazyFileBackedTaskManager.loadLazily(tempFile)) {
+            List<Task> prioritizedTasks = lazy.getPrioritizedTasks();
+            assertAll("Prioritized tasks should be ordered by start time",
+                    () -> assertEquals(2, prioritizedTasks.size(), "Tasks without start time should be skipped"),
+                    () -> assertEquals(ids[2], prioritizedTasks.get(0).getId()),
+                    () -> assertEquals(ids[0], prioritizedTasks.get(1).getId()),
+                    () -> assertFalse(lazy.isMaterialized())
+            );
+        }
+    }
+
+    @Test
+    void mutation_ShouldLoadFileAndSaveAllRecords() throws InvalidManagerTaskException {
+        int[] ids = saveBoard();
+
+        try (LazyFileBackedTaskManager lazy = LazyFileBackedTaskManager.loadLazily(tempFile)) {
+            lazy.getEpicById(ids[1]);
+            int newTaskId = lazy.addTask(new Task("Task 2", "Description of Task 2"));
+
+            assertAll("Mutation should load the whole file",
+                    () -> assertTrue(lazy.isMaterialized()),
+                    () -> assertEquals(IdAllocator.DEFAULT_BLOCK_SIZE + 1, newTaskId,
+                            "New ID should follow the ID block reserved before the restart"),
+                    () -> assertEquals(2, lazy.getTasks().size())
+            );
+        }
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile);
+        assertAll("Saved file should keep all records",
+                () -> assertEquals(2, reloaded.getTasks().size()),
+                () -> assertEquals(2, reloaded.getSubtasks().size()),
+                () -> assertEquals(1, reloaded.getEpics().size())
+        );
+    }
+}
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LsmTaskManagerTest extends TaskManagerTest<LsmTaskManager> {
+
+    private Path tempDirectory;
+
+    @Override
+    protected LsmTaskManager createTaskManager() throws IOException {
+        tempDirectory = Files.createTempDirectory("tasks-lsm");
+        return new LsmTaskManager(tempDirectory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        taskManager.close();
+        try (Stream<Path> files = Files.walk(tempDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void reopen_ShouldLoadSameStateFromLogAndRuns() throws InvalidManagerTaskException {
+        taskManager.close();
+        try (LsmTaskManager manager = new LsmTaskManager(tempDirectory, 4, 3)) {
+            int epicId = manager.addEpic(new Epic("Epic 1", "Description of Epic 1"));
+            int subtaskId = manager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1",
+                    LocalDateTime.of(2025, 4, 8, 9, 0), Duration.ofMinutes(15)), manager.getEpicById(epicId).orElseThrow());
+            for (int i = 0; i < 20; i++) {
+                manager.addTask(new Task("Task " + i, "Description of Task " + i));
+            }
+            Subtask subtask = manager.getSubtaskById(subtaskId).orElseThrow();
+            manager.updateSubtask(subtask.copyWith(subtask.getName(), "Updated", Status.DONE,
+                    subtask.getStartTime(), subtask.getDuration(), subtask.getEpic()));
+            manager.deleteTaskById(epicId + 2);
+            manager.deleteTaskById(manager.addTask(new Task("Deleted task", null)));
+        }
+
+        try (LsmTaskManager reopened = new LsmTaskManager(tempDirectory, 4, 3)) {
+            Epic epic = reopened.getEpics().getFirst();
+            Subtask subtask = reopened.getSubtasksByEpicId(epic.getId()).getFirst();
+            int taskCount = reopened.getTasks().size();
+            int newTaskId = reopened.addTask(new Task("New task", null));
+            assertAll("Reopened manager should have the same state",
+                    () -> assertEquals(19, taskCount, "Deleted tasks should not be loaded"),
+                    () -> assertTrue(reopened.getTaskById(epic.getId() + 2).isEmpty()),
+                    () -> assertEquals("Updated", subtask.getDescription()),
+                    () -> assertEquals(LocalDateTime.of(2025, 4, 8, 9, 0), subtask.getStartTime()),
+                    () -> assertEquals(epic.getId(), subtask.getEpic().getId(), "Subtask should be linked to its Epic"),
+                    () -> assertEquals(Status.DONE, epic.getStatus(), "Epic status should follow its Subtask"),
+                    () -> assertEquals(1 + IdAllocator.DEFAULT_BLOCK_SIZE, newTaskId, "IDs of deleted tasks should not be reused")
+            );
+        }
+    }
+
+    @Test
+    void merge_ShouldKeepNewestRecordsAndDropDeletedOnes() throws IOException {
+        taskManager.close();
+        try (LsmStore store = new LsmStore(tempDirectory, 2, 100, false)) {
+            store.open();
+            store.put(1, new byte[]{1});
+            store.put(2, new byte[]{2});
+            store.put(1, new byte[]{10});
+            store.delete(2);
+            store.put(3, new byte[]{3});
+            store.flush();
+            assertEquals(3, store.getRunCount(), "Every full memtable should be written as a run");
+
+            store.merge();
+
+            assertAll("Merged run should keep only the newest live records",
+                    () -> assertEquals(1, store.getRunCount()),
+                    () -> assertEquals(10, store.get(1)[0]),
+                    () -> assertNull(store.get(2), "Deleted key should stay deleted"),
+                    () -> assertEquals(3, store.get(3)[0]),
+                    () -> assertNull(store.get(4))
+            );
+        }
+    }
+
+    @Test
+    void manyWrites_ShouldKeepRunCountBoundedByMerges() throws InvalidManagerTaskException {
+        taskManager.close();
+        try (LsmTaskManager manager = new LsmTaskManager(tempDirectory, 8, 2)) {
+            for (int i = 0; i < 200; i++) {
+                manager.addTask(new Task("Task " + i, null));
+            }
+            manager.merge();
+            assertTrue(manager.getRunCount() <= 2, "Runs should be merged, found: " + manager.getRunCount());
+        }
+        try (LsmTaskManager reopened = new LsmTaskManager(tempDirectory, 8, 2)) {
+            assertEquals(200, reopened.getTasks().size());
+        }
+    }
+
+    @Test
+    void lookups_ShouldBeReadFromStoreIntoBoundedCache() throws InvalidManagerTaskException {
+        taskManager.close();
+        try (LsmTaskManager manager = new LsmTaskManager(tempDirectory, 16, 4, Durability.FSYNC, 10)) {
+            int epicId = manager.addEpic(new Epic("Epic 1", null));
+            for (int i = 0; i < 100; i++) {
+                manager.addTask(new Task("Task " + i, null));
+            }
+            manager.addSubtask(new Subtask("Subtask 1", null), manager.getEpicById(epicId).orElseThrow());
+        }
+        try (LsmTaskManager reopened = new LsmTaskManager(tempDirectory, 16, 4, Durability.FSYNC, 10)) {
+            assertEquals(0, reopened.getCachedRecordCount(), "Records should not be loaded on open");
+            for (int id = 2; id <= 101; id++) {
+                assertEquals("Task " + (id - 2), reopened.getTaskById(id).orElseThrow().getName());
+            }
+            Epic epic = reopened.getEpicById(1).orElseThrow();
+            assertAll("Records should be read by ID with a bounded cache",
+                    () -> assertEquals(10, reopened.getCachedRecordCount()),
+                    () -> assertEquals("Subtask 1", epic.getSubtasksList().getFirst().getName()),
+                    () -> assertEquals(100, reopened.getTasks().size()),
+                    () -> assertEquals(10, reopened.getCachedRecordCount(), "Scans should not fill the cache")
+            );
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new LsmTaskManager(tempDirectory, 16, 4, Durability.GROUP_COMMIT, 10));
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedTaskManagerTest extends TaskManagerTest<MappedTaskManager> {
+
+    private Path tempFile;
+
+    @Override
+    protected MappedTaskManager createTaskManager() throws IOException {
+        tempFile = Files.createTempFile("tasks", ".map");
+        return new MappedTaskManager(tempFile);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        taskManager.close();
+        Files.deleteIfExists(tempFile);
+    }
+
+    @Test
+    void reopen_ShouldLoadSameState() throws InvalidManagerTaskException {
+        int taskId = taskManager.addTask(new Task("Task 1", "Description of Task 1",
+                LocalDateTime.of(2025, 4, 8, 15, 47), Duration.ofMinutes(31)));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        int subtaskId = taskManager.addSubtask(new Subtask("Subtask 1", "Description of Subtask 1"),
+                taskManager.getEpicById(epicId).orElseThrow());
+        Subtask subtask = taskManager.getSubtaskById(subtaskId).orElseThrow();
+        taskManager.updateSubtask(subtask.copyWith(subtask.getName(), "Updated", Status.DONE, null, null, subtask.getEpic()));
+        int deletedId = taskManager.addTask(new Task("Task 2", "Description of Task 2"));
+        taskManager.deleteTaskById(deletedId);
+        taskManager.close();
+
+        try (MappedTaskManager reopened = new MappedTaskManager(tempFile)) {
+            Task task = reopened.getTaskById(taskId).orElseThrow();
+            Epic epic = reopened.getEpicById(epicId).orElseThrow();
+            assertAll("Reopened manager should have the same state",
+                    () -> assertEquals(1, reopened.getTasks().size(), "Deleted task should not be loaded"),
+                    () -> assertEquals("Description of Task 1", task.getDescription()),
+                    () -> assertEquals(LocalDateTime.of(2025, 4, 8, 15, 47), task.getStartTime()),
+                    () -> assertEquals(Duration.ofMinutes(31), task.getDuration()),
+                    () -> assertEquals(null, epic.getDescription()),
+                    () -> assertEquals(Status.DONE, epic.getStatus(), "Epic status should follow its Subtask"),
+                    () -> assertEquals("Updated", reopened.getSubtasksByEpicId(epicId).getFirst().getDescription()),
+                    () -> assertEquals(1 + IdAllocator.DEFAULT_BLOCK_SIZE, reopened.addTask(new Task("Task 3", "Description of Task 3")),
+                            "ID counter should continue after the ID block reserved before the deleted task")
+            );
+        }
+    }
+
+    @Test
+    void reopen_ShouldNotLoadTasksClearedByClearAll() throws InvalidManagerTaskException {
+        taskManager.addTask(new Task("Task A", null));
+        int epicId = taskManager.addEpic(new Epic("Epic B", null));
+        taskManager.addSubtask(new Subtask("Subtask B", null), taskManager.getEpicById(epicId).orElseThrow());
+        taskManager.clearAll();
+        int taskId = taskManager.addTask(new Task("Task C", null));
+        taskManager.close();
+
+        try (MappedTaskManager reopened = new MappedTaskManager(tempFile)) {
+            assertAll("Only tasks added after clearAll should be loaded",
+                    () -> assertEquals(List.of(taskId), reopened.getTasks().stream().map(Task::getId).toList()),
+                    () -> assertTrue(reopened.getEpics().isEmpty(), "Epics should stay cleared"),
+                    () -> assertTrue(reopened.getSubtasks().isEmpty(), "Subtasks should stay cleared")
+            );
+        }
+    }
+
+    @Test
+    void manyUpdates_ShouldGrowFileAndReclaimReplacedStrings() throws IOException, InvalidManagerTaskException {
+        final int count = 3000;
+        for (int i = 0; i < count; i++) {
+            taskManager.addTask(new Task("Task " + i, "Description " + i));
+        }
+        long sizeAfterAdd = Files.size(tempFile);
+        for (int round = 0; round < 10; round++) {
+            for (Task task : taskManager.getTasks()) {
+                taskManager.updateTask(task.copyWith(task.getName(), "Description " + round + " " + task.getId(),
+                        Status.IN_PROGRESS, null, null));
+            }
+        }
+        taskManager.close();
+
+        try (MappedTaskManager reopened = new MappedTaskManager(tempFile)) {
+            assertAll("All tasks should survive growth and heap compaction",
+                    () -> assertEquals(count, reopened.getTasks().size()),
+                    () -> assertEquals("Description 9 1", reopened.getTaskById(1).orElseThrow().getDescription()),
+                    () -> assertTrue(Files.size(tempFile) <= 2 * sizeAfterAdd, "Replaced strings should be reclaimed"),
+                    () -> assertFalse(Files.exists(tempFile.resolveSibling(tempFile.getFileName() + ".redo")),
+                            "Redo file should be deleted once the heap is rewritten")
+            );
+        }
+    }
+
+    @Test
+    void reopen_ShouldKeepSubSecondStartTime() throws InvalidManagerTaskException {
+        LocalDateTime startTime = LocalDateTime.of(2025, 4, 8, 15, 47, 12, 345_678_900);
+        int taskId = taskManager.addTask(new Task("Task 1", null, startTime, Duration.ofMinutes(31)));
+        taskManager.close();
+
+        try (MappedTaskManager reopened = new MappedTaskManager(tempFile)) {
+            assertEquals(startTime, reopened.getTaskById(taskId).orElseThrow().getStartTime(),
+                    "Start time should keep seconds and nanoseconds like the CSV format");
+        }
+    }
+
+}
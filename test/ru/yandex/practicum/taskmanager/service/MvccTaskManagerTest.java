@@ -0,0 +1,222 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MvccTaskManagerTest extends TaskManagerTest<MvccTaskManager> {
+
+    @Override
+    protected MvccTaskManager createTaskManager() {
+        return new MvccTaskManager();
+    }
+
+    @Test
+    void snapshot_ShouldStayUnchangedAfterMutations() throws InvalidManagerTaskException {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 10, 0);
+        int taskId = taskManager.addTask(new Task("Task 1", null, start, Duration.ofMinutes(30)));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        int subtaskId = taskManager.addSubtask(new Subtask("Subtask 1", null, start.plusHours(1), Duration.ofMinutes(30)),
+                taskManager.getEpicById(epicId).orElseThrow());
+        TaskSnapshot snapshot = taskManager.snapshot();
+
+        taskManager.updateSubtask(taskManager.getSubtaskById(subtaskId).orElseThrow()
+                .copyWith(null, null, Status.DONE, start.plusHours(2), null, null));
+        taskManager.deleteTaskById(taskId);
+        taskManager.addTask(new Task("Task 2", null));
+        assertThrows(InvalidManagerTaskException.class, () -> taskManager.addTask(
+                new Task("Intersecting task", null, start.plusHours(2), Duration.ofMinutes(10))));
+        TaskSnapshot latest = taskManager.snapshot();
+
+        assertAll("Old snapshot should keep its version, new one should have all changes",
+                () -> assertEquals(List.of(taskId), snapshot.getTasks().stream().map(Task::getId).toList()),
+                () -> assertEquals(List.of(taskId, subtaskId),
+                        snapshot.getPrioritizedTasks().stream().map(Task::getId).toList()),
+                () -> assertEquals(Status.NEW, snapshot.getEpicById(epicId).orElseThrow().getStatus()),
+                () -> assertEquals(start.plusHours(1), snapshot.getSubtasksByEpicId(epicId).getFirst().getStartTime()),
+                () -> assertEquals(List.of(subtaskId), latest.getPrioritizedTasks().stream().map(Task::getId).toList()),
+                () -> assertEquals(Status.DONE, latest.getEpicById(epicId).orElseThrow().getStatus()),
+                () -> assertEquals(snapshot.getVersion() + 3, latest.getVersion(), "Rejected addition should not make a version"),
+                () -> assertSame(latest, taskManager.snapshot(), "Snapshot should not be copied"),
+                () -> assertThrows(UnsupportedOperationException.class, () -> latest.getTasks().clear())
+        );
+    }
+
+    @Test
+    void readTasks_ShouldNotChangeManagerOrSnapshotsWhenChanged() throws InvalidManagerTaskException {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 10, 0);
+        int taskId = taskManager.addTask(new Task("Task 1", null, start, Duration.ofMinutes(30)));
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        int subtaskId = taskManager.addSubtask(new Subtask("Subtask 1", null),
+                taskManager.getEpicById(epicId).orElseThrow());
+        TaskSnapshot snapshot = taskManager.snapshot();
+
+        taskManager.getTasks().getFirst().setStatus(Status.DONE);
+        taskManager.getPrioritizedTasks().getFirst().setStatus(Status.DONE);
+        taskManager.getSubtasks().forEach(subtask -> subtask.setStatus(Status.DONE));
+        taskManager.getSubtasksByEpicId(epicId).getFirst().setStatus(Status.DONE);
+        taskManager.getEpics().getFirst().setStatus(Status.DONE);
+        snapshot.getTaskById(taskId).orElseThrow().setStatus(Status.DONE);
+        snapshot.getSubtaskById(subtaskId).orElseThrow().setStatus(Status.DONE);
+        snapshot.getEpicById(epicId).orElseThrow().setStatus(Status.DONE);
+
+        assertAll("Changes of read tasks should not reach the manager and its snapshots",
+                () -> assertEquals(Status.NEW, taskManager.getTaskById(taskId).orElseThrow().getStatus()),
+                () -> assertEquals(Status.NEW, taskManager.getSubtaskById(subtaskId).orElseThrow().getStatus()),
+                () -> assertEquals(Status.NEW, taskManager.getEpicById(epicId).orElseThrow().getStatus()),
+                () -> assertEquals(Status.NEW, taskManager.getSubtasksByEpicId(epicId).getFirst().getStatus()),
+                () -> assertEquals(Status.NEW, snapshot.getTasks().getFirst().getStatus()),
+                () -> assertEquals(Status.NEW, snapshot.getPrioritizedTasks().getFirst().getStatus()),
+                () -> assertEquals(Status.NEW, snapshot.getSubtasks().getFirst().getStatus()),
+                () -> assertEquals(Status.NEW, snapshot.getEpics().getFirst().getStatus())
+        );
+    }
+
+    @Test
+    void randomMutations_ShouldKeepTasksInIdOrder() throws InvalidManagerTaskException {
+        Random random = new Random(42);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                String name = "Task " + i;
+                expected.put(taskManager.addTask(new Task(name, null)), name);
+            } else {
+                int id = expected.ceilingKey(random.nextInt(expected.lastKey() + 1));
+                taskManager.deleteTaskById(id);
+                expected.remove(id);
+            }
+        }
+        List<Task> tasks = taskManager.getTasks();
+        List<String> indexedNames = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            indexedNames.add(tasks.get(i).getName());
+        }
+
+        assertAll("Tasks should follow the ID order after additions and deletions",
+                () -> assertEquals(List.copyOf(expected.keySet()), tasks.stream().map(Task::getId).toList()),
+                () -> assertEquals(List.copyOf(expected.values()), indexedNames, "Indexed access should match iteration")
+        );
+    }
+
+    @Test
+    void readsRacingWithDeleter_ShouldNotKeepDeletedTasksInHistory() throws Exception {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        List<Integer> taskIds = new ArrayList<>();
+        List<Integer> subtaskIds = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            taskIds.add(taskManager.addTask(new Task("Task " + i, null)));
+            subtaskIds.add(taskManager.addSubtask(new Subtask("Subtask " + i, null), epic));
+        }
+        AtomicBoolean deleted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    while (!deleted.get()) {
+                        for (int j = 0; j < taskIds.size(); j++) {
+                            taskManager.getTaskById(taskIds.get(j));
+                            taskManager.getSubtaskById(subtaskIds.get(j));
+                            taskManager.getEpicById(epicId);
+                        }
+                    }
+                }));
+            }
+            executor.submit(() -> {
+                for (int i = 0; i < taskIds.size(); i++) {
+                    taskManager.deleteTaskById(taskIds.get(i));
+                    taskManager.deleteSubtaskById(subtaskIds.get(i));
+                }
+                taskManager.deleteEpicById(epicId);
+                deleted.set(true);
+            }).get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(), taskManager.getHistory(), "Deleted tasks should not stay in history");
+    }
+
+    @Test
+    void readsRacingWithWriter_ShouldSeeConsistentSnapshots() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 0, 0);
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    int subtaskId = taskManager.addSubtask(new Subtask("Subtask " + i, null,
+                            start.plusHours(i), Duration.ofMinutes(30)), epic);
+                    taskManager.addTask(new Task("Task " + i, null));
+                    if (i % 2 == 0) {
+                        taskManager.deleteSubtaskById(subtaskId);
+                    }
+                }
+                stopped.set(true);
+                return null;
+            });
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (!stopped.get()) {
+                        TaskSnapshot snapshot = taskManager.snapshot();
+                        List<Subtask> subtasks = snapshot.getSubtasks();
+                        List<Task> prioritized = snapshot.getPrioritizedTasks();
+                        if (subtasks.size() != snapshot.getSubtasksByEpicId(epicId).size()
+                                || subtasks.size() != prioritized.size()) {
+                            throw new AssertionError("Collections of one snapshot should match");
+                        }
+                        for (int j = 1; j < prioritized.size(); j++) {
+                            if (!prioritized.get(j - 1).getStartTime().isBefore(prioritized.get(j).getStartTime())) {
+                                throw new AssertionError("Prioritized tasks should be ordered");
+                            }
+                        }
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            writer.get();
+            int reads = 0;
+            for (Future<Integer> reader : readers) {
+                reads += reader.get();
+            }
+            int totalReads = reads;
+
+            assertAll("Readers should see only consistent snapshots",
+                    () -> assertTrue(totalReads > 0, "Readers should have read"),
+                    () -> assertEquals(250, taskManager.getSubtasksByEpicId(epicId).size()),
+                    () -> assertEquals(500, taskManager.getTasks().size())
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
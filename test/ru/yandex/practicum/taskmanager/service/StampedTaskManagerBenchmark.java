@@ -0,0 +1,230 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Read throughput of StampedTaskManager against InMemoryTaskManager behind a synchronized wrapper.
+ * Not a test, run with main(): the workload is 95% reads (getTaskById, getSubtasksByEpicId,
+ * getPrioritizedTasks) and 5% updateTask, the result is operations per second by the number of threads.
+ */
+public class StampedTaskManagerBenchmark {
+
+    private static final int TASKS = 1_000;
+    private static final int EPICS = 100;
+    private static final int SUBTASKS_PER_EPIC = 10;
+    private static final long WARMUP_MILLIS = 1_000;
+    private static final long MEASURE_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        System.out.printf("%-8s %18s %18s%n", "threads", "synchronized op/s", "stamped op/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double synchronizedRate = measure(() -> new SynchronizedTaskManager(new InMemoryTaskManager()), threads);
+            double stampedRate = measure(StampedTaskManager::new, threads);
+            System.out.printf("%-8d %18.0f %18.0f%n", threads, synchronizedRate, stampedRate);
+        }
+    }
+
+    private static double measure(Supplier<TaskManager> factory, int threads) throws Exception {
+        TaskManager taskManager = factory.get();
+        List<Integer> taskIds = new ArrayList<>();
+        List<Integer> epicIds = new ArrayList<>();
+        fill(taskManager, taskIds, epicIds);
+        run(taskManager, taskIds, epicIds, threads, WARMUP_MILLIS);
+        return run(taskManager, taskIds, epicIds, threads, MEASURE_MILLIS) * 1000.0 / MEASURE_MILLIS;
+    }
+
+    private static void fill(TaskManager taskManager, List<Integer> taskIds, List<Integer> epicIds)
+            throws InvalidManagerTaskException {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (int i = 0; i < TASKS; i++) {
+            taskIds.add(taskManager.addTask(new Task("Task " + i, "Description of Task " + i)));
+        }
+        for (int i = 0; i < EPICS; i++) {
+            int epicId = taskManager.addEpic(new Epic("Epic " + i, null));
+            Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+            for (int j = 0; j < SUBTASKS_PER_EPIC; j++) {
+                taskManager.addSubtask(new Subtask("Subtask " + j, null,
+                        start.plusHours((long) i * SUBTASKS_PER_EPIC + j), Duration.ofMinutes(30)), epic);
+            }
+            epicIds.add(epicId);
+        }
+    }
+
+    private static long run(TaskManager taskManager, List<Integer> taskIds, List<Integer> epicIds, int threads,
+                            long millis) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        AtomicBoolean stopped = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    while (!stopped.get()) {
+                        int operation = random.nextInt(100);
+                        if (operation < 50) {
+                            taskManager.getTaskById(taskIds.get(random.nextInt(taskIds.size())));
+                        } else if (operation < 90) {
+                            taskManager.getSubtasksByEpicId(epicIds.get(random.nextInt(epicIds.size())));
+                        } else if (operation < 95) {
+                            taskManager.getPrioritizedTasks();
+                        } else {
+                            int id = taskIds.get(random.nextInt(taskIds.size()));
+                            taskManager.updateTask(Task.createForDeserialization(id, "Task " + id, "Updated",
+                                    Status.IN_PROGRESS, null, Duration.ZERO));
+                        }
+                        count++;
+                    }
+                } catch (InvalidManagerTaskException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    operations.add(count);
+                    finished.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread.sleep(millis);
+        stopped.set(true);
+        finished.await();
+        return operations.sum();
+    }
+
+    /**
+     * Every method synchronized on the wrapper, as a coarse-grained baseline
+     */
+    private static final class SynchronizedTaskManager implements TaskManager {
+        private final TaskManager delegate;
+
+        private SynchronizedTaskManager(TaskManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized List<Task> getTasks() {
+            return delegate.getTasks();
+        }
+
+        @Override
+        public synchronized List<Subtask> getSubtasks() {
+            return delegate.getSubtasks();
+        }
+
+        @Override
+        public synchronized List<Epic> getEpics() {
+            return delegate.getEpics();
+        }
+
+        @Override
+        public synchronized void deleteTasks() {
+            delegate.deleteTasks();
+        }
+
+        @Override
+        public synchronized void deleteSubtasks() {
+            delegate.deleteSubtasks();
+        }
+
+        @Override
+        public synchronized void deleteEpics() {
+            delegate.deleteEpics();
+        }
+
+        @Override
+        public synchronized Optional<Task> getTaskById(int id) {
+            return delegate.getTaskById(id);
+        }
+
+        @Override
+        public synchronized Optional<Subtask> getSubtaskById(int id) {
+            return delegate.getSubtaskById(id);
+        }
+
+        @Override
+        public synchronized Optional<Epic> getEpicById(int id) {
+            return delegate.getEpicById(id);
+        }
+
+        @Override
+        public synchronized Optional<Epic> getEpicBySubtask(Subtask subtask) {
+            return delegate.getEpicBySubtask(subtask);
+        }
+
+        @Override
+        public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+            return delegate.getSubtasksByEpicId(epicId);
+        }
+
+        @Override
+        public synchronized int addTask(Task task) throws InvalidManagerTaskException {
+            return delegate.addTask(task);
+        }
+
+        @Override
+        public synchronized int addSubtask(Subtask subtask, Epic epic) throws InvalidManagerTaskException {
+            return delegate.addSubtask(subtask, epic);
+        }
+
+        @Override
+        public synchronized int addEpic(Epic epic) throws InvalidManagerTaskException {
+            return delegate.addEpic(epic);
+        }
+
+        @Override
+        public synchronized void updateTask(Task task) throws InvalidManagerTaskException {
+            delegate.updateTask(task);
+        }
+
+        @Override
+        public synchronized void updateSubtask(Subtask subtask) throws InvalidManagerTaskException {
+            delegate.updateSubtask(subtask);
+        }
+
+        @Override
+        public synchronized void updateEpic(Epic epic) throws InvalidManagerTaskException {
+            delegate.updateEpic(epic);
+        }
+
+        @Override
+        public synchronized void deleteTaskById(int id) {
+            delegate.deleteTaskById(id);
+        }
+
+        @Override
+        public synchronized void deleteSubtaskById(int id) {
+            delegate.deleteSubtaskById(id);
+        }
+
+        @Override
+        public synchronized void deleteEpicById(int id) {
+            delegate.deleteEpicById(id);
+        }
+
+        @Override
+        public synchronized List<Task> getHistory() {
+            return delegate.getHistory();
+        }
+
+        @Override
+        public synchronized List<Task> getPrioritizedTasks() {
+            return delegate.getPrioritizedTasks();
+        }
+    }
+}
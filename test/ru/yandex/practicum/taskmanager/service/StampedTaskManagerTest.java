@@ -0,0 +1,145 @@
+package ru.yandex.practicum.taskmanager.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.taskmanager.model.Epic;
+import ru.yandex.practicum.taskmanager.model.Status;
+import ru.yandex.practicum.taskmanager.model.Subtask;
+import ru.yandex.practicum.taskmanager.model.Task;
+import ru.yandex.practicum.taskmanager.service.exception.InvalidManagerTaskException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StampedTaskManagerTest extends TaskManagerTest<StampedTaskManager> {
+
+    @Override
+    protected StampedTaskManager createTaskManager() {
+        return new StampedTaskManager();
+    }
+
+    @Test
+    void readsRacingWithWriter_ShouldReturnConsistentResults() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 8, 0, 0);
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        List<Integer> subtaskIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            subtaskIds.add(taskManager.addSubtask(new Subtask("Subtask " + i, null,
+                    start.plusHours(i), Duration.ofMinutes(30)), epic));
+        }
+        AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int round = 1; round <= 200; round++) {
+                    Status status = round % 2 == 0 ? Status.NEW : Status.DONE;
+                    for (int id : subtaskIds) {
+                        Subtask subtask = taskManager.getSubtaskById(id).orElseThrow();
+                        // Moves every Subtask by a minute, so the time index is rebuilt all the time
+                        taskManager.updateSubtask(subtask.copyWith(null, null, status,
+                                subtask.getStartTime().plusMinutes(1), null, null));
+                    }
+                }
+                stopped.set(true);
+                return null;
+            });
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (!stopped.get()) {
+                        List<Task> prioritized = taskManager.getPrioritizedTasks();
+                        for (int j = 1; j < prioritized.size(); j++) {
+                            if (!prioritized.get(j - 1).getStartTime().isBefore(prioritized.get(j).getStartTime())) {
+                                throw new AssertionError("Prioritized tasks should be ordered");
+                            }
+                        }
+                        if (prioritized.size() != 100 || taskManager.getSubtasksByEpicId(epicId).size() != 100) {
+                            throw new AssertionError("No Subtask should be missing");
+                        }
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            writer.get();
+            int reads = 0;
+            for (Future<Integer> reader : readers) {
+                reads += reader.get();
+            }
+            int totalReads = reads;
+
+            Epic updatedEpic = taskManager.getEpicById(epicId).orElseThrow();
+            assertAll("Readers should see only consistent states",
+                    () -> assertTrue(totalReads > 0, "Readers should have read"),
+                    () -> assertEquals(Status.NEW, updatedEpic.getStatus()),
+                    () -> assertEquals(start.plusMinutes(200), updatedEpic.getStartTime())
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void readsRacingWithDeleter_ShouldNotKeepDeletedTasksInHistory() throws Exception {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        Epic epic = taskManager.getEpicById(epicId).orElseThrow();
+        List<Integer> taskIds = new ArrayList<>();
+        List<Integer> subtaskIds = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            taskIds.add(taskManager.addTask(new Task("Task " + i, null)));
+            subtaskIds.add(taskManager.addSubtask(new Subtask("Subtask " + i, null), epic));
+        }
+        AtomicBoolean deleted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    while (!deleted.get()) {
+                        for (int j = 0; j < taskIds.size(); j++) {
+                            taskManager.getTaskById(taskIds.get(j));
+                            taskManager.getSubtaskById(subtaskIds.get(j));
+                            taskManager.getEpicById(epicId);
+                        }
+                    }
+                }));
+            }
+            executor.submit(() -> {
+                for (int i = 0; i < taskIds.size(); i++) {
+                    taskManager.deleteTaskById(taskIds.get(i));
+                    taskManager.deleteSubtaskById(subtaskIds.get(i));
+                }
+                taskManager.deleteEpicById(epicId);
+                deleted.set(true);
+            }).get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(), taskManager.getHistory(), "Deleted tasks should not stay in history");
+    }
+
+    @Test
+    void deleteEpicById_ShouldDeleteSubtasksUnderHeldWriteLock() throws InvalidManagerTaskException {
+        int epicId = taskManager.addEpic(new Epic("Epic 1", null));
+        taskManager.addSubtask(new Subtask("Subtask 1", null), taskManager.getEpicById(epicId).orElseThrow());
+
+        taskManager.deleteEpicById(epicId);
+
+        assertTrue(taskManager.getSubtasks().isEmpty(), "Subtasks should be deleted with their Epic");
+    }
+}
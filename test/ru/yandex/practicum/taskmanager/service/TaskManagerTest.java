@@ -498,4 +498,22 @@ public abstract class TaskManagerTest<T extends TaskManager> {
         );
     }
 
+    @Test
+    void testUpdatedTaskShouldLeaveOnlyNewTimeInPrioritizedTasks() throws InvalidManagerTaskException {
+        final LocalDateTime oldStartTime = LocalDateTime.of(2025, 4, 8, 10, 0);
+        final LocalDateTime newStartTime = LocalDateTime.of(2025, 4, 8, 12, 0);
+        final Duration duration = Duration.ofMinutes(30);
+        final int task1Id = taskManager.addTask(new Task("Task 1", "Description of Task 1", oldStartTime, duration));
+        final Task task1 = taskManager.getTaskById(task1Id).orElseThrow();
+
+        taskManager.updateTask(task1.copyWith(null, null, null, newStartTime, null));
+        final int task2Id = taskManager.addTask(new Task("Task 2", "Description of Task 2", oldStartTime, duration));
+        final List<Task> prioritizedTasks = taskManager.getPrioritizedTasks();
+
+        assertAll("Old start time of the updated task should be free",
+                () -> assertEquals(List.of(task2Id, task1Id), prioritizedTasks.stream().map(Task::getId).toList(),
+                        "Updated task should be indexed once, at its new start time"),
+                () -> assertEquals(newStartTime, prioritizedTasks.getLast().getStartTime())
+        );
+    }
 }